@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Ticker;
+import com.google.common.io.Files;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays an access trace against cache configurations and reports their hit rates and evictions,
+ * so that settings such as {@code maximumSize}, {@code concurrencyLevel} or expiration can be
+ * evaluated against production traffic before they are changed.
+ *
+ * <p>Usage: {@code CacheTraceSimulator <trace file> <spec>...}, where each spec is a {@link
+ * CacheBuilderSpec}, optionally followed by {@code ,windowTinyLfu}. Each line of the trace is a
+ * request, made of whitespace-separated fields:
+ *
+ * <ul>
+ *   <li>{@code key}
+ *   <li>{@code timestampMillis key}
+ *   <li>{@code timestampMillis key weight}
+ * </ul>
+ *
+ * <p>Timestamps drive the cache's ticker, so that expiration and refresh behave as they did when
+ * the trace was recorded; without them, time does not advance. Weights are only used by specs with
+ * a {@code maximumWeight}, and default to one. Blank lines and lines starting with {@code #} are
+ * ignored. Requests are replayed on a single thread through {@link LoadingCache#getUnchecked}, with
+ * a loader that counts misses, so that results are deterministic.
+ */
+public final class CacheTraceSimulator {
+  private static final String WINDOW_TINY_LFU = "windowTinyLfu";
+
+  /** A single request of a trace. */
+  static final class Request {
+    final long timeNanos;
+    final String key;
+    final int weight;
+
+    Request(long timeNanos, String key, int weight) {
+      this.timeNanos = timeNanos;
+      this.key = key;
+      this.weight = weight;
+    }
+  }
+
+  /** The outcome of replaying a trace against one configuration. */
+  static final class Result {
+    final String spec;
+    final CacheStats stats;
+    final Map<RemovalCause, Long> removals;
+    final long finalSize;
+
+    Result(String spec, CacheStats stats, Map<RemovalCause, Long> removals, long finalSize) {
+      this.spec = spec;
+      this.stats = stats;
+      this.removals = removals;
+      this.finalSize = finalSize;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%-50s requests=%d hitRate=%.4f loads=%d evicted=%d expired=%d collected=%d size=%d",
+          spec,
+          stats.requestCount(),
+          stats.hitRate(),
+          stats.loadCount(),
+          removals.getOrDefault(RemovalCause.SIZE, 0L),
+          removals.getOrDefault(RemovalCause.EXPIRED, 0L),
+          removals.getOrDefault(RemovalCause.COLLECTED, 0L),
+          finalSize);
+    }
+  }
+
+  /** A ticker advanced to the timestamp of each replayed request. */
+  static final class TraceTicker extends Ticker {
+    long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  private CacheTraceSimulator() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: CacheTraceSimulator <trace file> <spec>...");
+      System.exit(1);
+    }
+    List<Request> trace = readTrace(new File(args[0]));
+    for (int i = 1; i < args.length; i++) {
+      System.out.println(simulate(trace, args[i]));
+    }
+  }
+
+  static List<Request> readTrace(File file) throws IOException {
+    List<Request> trace = new ArrayList<>();
+    Splitter splitter = Splitter.on(' ').trimResults().omitEmptyStrings();
+    try (BufferedReader reader = Files.newReader(file, UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.replace('\t', ' ').trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        List<String> fields = splitter.splitToList(line);
+        switch (fields.size()) {
+          case 1:
+            trace.add(new Request(0, fields.get(0), 1));
+            break;
+          case 2:
+            trace.add(new Request(millisToNanos(fields.get(0)), fields.get(1), 1));
+            break;
+          case 3:
+            trace.add(
+                new Request(
+                    millisToNanos(fields.get(0)), fields.get(1), Integer.parseInt(fields.get(2))));
+            break;
+          default:
+            throw new IOException("Malformed trace line: " + line);
+        }
+      }
+    }
+    return trace;
+  }
+
+  private static long millisToNanos(String millis) {
+    return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(millis));
+  }
+
+  /** Replays {@code trace} against a cache configured by {@code spec}. */
+  static Result simulate(List<Request> trace, String spec) {
+    String cacheBuilderSpec = spec;
+    boolean windowTinyLfu = false;
+    List<String> options = new ArrayList<>(Splitter.on(',').trimResults().splitToList(spec));
+    if (options.remove(WINDOW_TINY_LFU)) {
+      windowTinyLfu = true;
+      cacheBuilderSpec = String.join(",", options);
+    }
+
+    TraceTicker ticker = new TraceTicker();
+    Map<String, Integer> weights = new HashMap<>();
+    Map<RemovalCause, Long> removals = new EnumMap<>(RemovalCause.class);
+    CacheBuilder<Object, Object> builder =
+        CacheBuilder.from(cacheBuilderSpec).ticker(ticker).recordStats();
+    if (windowTinyLfu) {
+      builder.windowTinyLfu();
+    }
+    if (CacheBuilderSpec.parse(cacheBuilderSpec).maximumWeight != null) {
+      builder.weigher((Object key, Object value) -> weights.getOrDefault(key, 1));
+    }
+    LoadingCache<String, String> cache =
+        builder
+            .removalListener(
+                (RemovalNotification<String, String> notification) ->
+                    removals.merge(notification.getCause(), 1L, Long::sum))
+            .build(CacheLoader.from(key -> key));
+
+    for (Request request : trace) {
+      if (request.timeNanos > ticker.nanos) {
+        ticker.nanos = request.timeNanos;
+      }
+      if (request.weight == 1) {
+        weights.remove(request.key); // the default, which also replaces an earlier weight
+      } else {
+        weights.put(request.key, request.weight);
+      }
+      cache.getUnchecked(request.key);
+    }
+    cache.cleanUp();
+    return new Result(spec, cache.stats(), removals, cache.size());
+  }
+}
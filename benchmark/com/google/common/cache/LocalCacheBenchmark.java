@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of {@link LocalCache} reads, writes and computations for a mix of
+ * operations on keys following an approximately Zipfian distribution. Run {@link #main} to measure
+ * each configuration with 1, 2, 4, 8 and 16 threads, or pass {@code -t} to the JMH runner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalCacheBenchmark {
+  private static final int KEY_COUNT = 1 << 20;
+  private static final int MASK = KEY_COUNT - 1;
+
+  @Param({"4", "64"})
+  int concurrencyLevel;
+
+  @Param({"10000", "1000000"})
+  int maximumSize;
+
+  LoadingCache<Integer, Integer> cache;
+  ConcurrentMap<Integer, Integer> map;
+  Integer[] keys;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    cache =
+        CacheBuilder.newBuilder()
+            .concurrencyLevel(concurrencyLevel)
+            .maximumSize(maximumSize)
+            .build(CacheLoader.from(key -> key));
+    map = cache.asMap();
+
+    // log-uniform ranks approximate a Zipf distribution with an exponent of one
+    Random random = new Random(42);
+    keys = new Integer[KEY_COUNT];
+    for (int i = 0; i < KEY_COUNT; i++) {
+      int rank = (int) Math.exp(random.nextDouble() * Math.log(maximumSize * 4L));
+      keys[i] = rank * 0x9E3779B9;
+    }
+    for (int i = 0; i < maximumSize; i++) {
+      cache.getUnchecked(keys[i & MASK]);
+    }
+  }
+
+  /** The position of a thread in the shared key sequence. */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int index = ThreadLocalRandom.current().nextInt();
+  }
+
+  /** The key sequence of a thread running {@link #readWrite}, which alone varies the read mix. */
+  @State(Scope.Thread)
+  public static class ReadWriteState extends ThreadState {
+    /** The percentage of operations that are reads rather than puts. */
+    @Param({"100", "95", "75", "50"})
+    int readPercentage;
+  }
+
+  @Benchmark
+  public Integer get(ThreadState state) {
+    return cache.getUnchecked(keys[state.index++ & MASK]);
+  }
+
+  @Benchmark
+  public Integer put(ThreadState state) {
+    Integer key = keys[state.index++ & MASK];
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public Integer readWrite(ReadWriteState state) {
+    int index = state.index++;
+    Integer key = keys[index & MASK];
+    if (Math.floorMod(index * 0x9E3779B9, 100) < state.readPercentage) {
+      return cache.getUnchecked(key);
+    }
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public Integer compute(ThreadState state) {
+    return map.compute(keys[state.index++ & MASK], (key, value) -> (value == null) ? 1 : value + 1);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : new int[] {1, 2, 4, 8, 16}) {
+      Options options =
+          new OptionsBuilder()
+              .include(LocalCacheBenchmark.class.getSimpleName())
+              .threads(threads)
+              .build();
+      new Runner(options).run();
+    }
+  }
+}
@@ -187,6 +187,29 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
      */
     void recordEviction();
 
+    /**
+     * Records the eviction of an entry from the cache for the given cause. The cache calls this
+     * method instead of {@link #recordEviction()}, whose implementation it defaults to.
+     *
+     * @param cause the reason for the eviction, for which {@link RemovalCause#wasEvicted} is true
+     * @since 32.0
+     */
+    default void recordEviction(RemovalCause cause) {
+      recordEviction();
+    }
+
+    /**
+     * Records that a thread had to wait to acquire the lock of one of the cache's segments, because
+     * another thread held it. This is only called for caches that {@linkplain
+     * CacheBuilder#recordDetailedStats record detailed statistics}. The default implementation does
+     * nothing.
+     *
+     * @param waitTime the number of nanoseconds the thread waited for the lock
+     * @since 32.0
+     */
+    @SuppressWarnings("GoodTime") // should accept a java.time.Duration
+    default void recordLockWait(long waitTime) {}
+
     /**
      * Returns a snapshot of this counter's values. Note that this may be an inconsistent view, as
      * it may be interleaved with update operations.
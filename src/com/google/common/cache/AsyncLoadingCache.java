@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A semi-persistent mapping from keys to values whose loading never blocks the caller. Values are
+ * automatically loaded by the cache on an {@link Executor}, and are stored in the cache until
+ * either evicted or manually invalidated. Instances are built using {@link
+ * CacheBuilder#buildAsync(CacheLoader, Executor)}.
+ *
+ * <p>Implementations of this interface are expected to be thread-safe, and can be safely accessed
+ * by multiple concurrent threads.
+ *
+ * @param <K> the type of the cache's keys, which are not permitted to be null
+ * @param <V> the type of the cache's values, which are not permitted to be null
+ * @since 32.0
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+public interface AsyncLoadingCache<K, V> {
+
+  /**
+   * Returns a future of the value associated with {@code key} in this cache, first loading that
+   * value if necessary. The returned future is already complete if the value is present.
+   *
+   * <p>If another call to {@link #get} or {@link LoadingCache#get} is currently loading the value
+   * for {@code key}, the returned future completes when that load completes, without starting
+   * another load. Otherwise {@link CacheLoader#load} is invoked on the cache's executor. Newly
+   * loaded values are added to the cache as described for {@link LoadingCache#get}.
+   *
+   * <p>The returned future fails with the exception thrown by the {@code CacheLoader}, or with an
+   * {@link CacheLoader.InvalidCacheLoadException} if it returned {@code null}. Cancelling the
+   * returned future does not cancel the load, which may be shared with other callers.
+   */
+  ListenableFuture<V> get(K key);
+
+  /**
+   * Returns a future of a map of the values associated with {@code keys}, loading the values that
+   * are not present. They are loaded on the cache's executor by a single call to {@link
+   * CacheLoader#loadAll}, or, if the loader doesn't implement {@code loadAll}, individually as
+   * described for {@link #get}. The returned map contains entries that were already cached,
+   * combined with newly loaded entries; it will never contain null keys or values. If any of the
+   * loads fail, the returned future fails as well.
+   */
+  ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys);
+
+  /**
+   * Returns a view of this cache as a {@link LoadingCache}, whose blocking methods wait for loads
+   * started by this cache and vice versa. Modifications made through the view are reflected in this
+   * cache.
+   */
+  LoadingCache<K, V> synchronous();
+}
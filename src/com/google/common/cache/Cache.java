@@ -149,6 +149,22 @@ public interface Cache<K, V> {
   /** Discards all entries in the cache. */
   void invalidateAll();
 
+  /**
+   * Discards all entries tagged with {@code tag} by the cache's {@linkplain CacheBuilder#tagger
+   * tagger}. As with {@link #invalidate}, values that are being loaded are not discarded, and
+   * entries tagged concurrently may or may not be discarded.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}. Caches built with
+   * a tagger find the tagged entries through an index, so this takes time proportional to their
+   * number rather than to the size of the cache.
+   *
+   * @throws UnsupportedOperationException if this cache doesn't support tags
+   * @since 32.0
+   */
+  default void invalidateByTag(Object tag) {
+    throw new UnsupportedOperationException();
+  }
+
   /** Returns the approximate number of entries in this cache. */
   @CheckReturnValue
   long size();
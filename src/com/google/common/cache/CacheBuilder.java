@@ -32,10 +32,12 @@ import com.google.common.cache.LocalCache.Strength;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.google.j2objc.annotations.J2ObjCIncompatible;
+import java.io.File;
 import java.util.ConcurrentModificationException;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -173,8 +175,14 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * #weakValues weakValues}, or {@linkplain #softValues softValues} perform periodic maintenance.
  *
  * <p>The caches produced by {@code CacheBuilder} are serializable, and the deserialized caches
- * retain all the configuration properties of the original cache. Note that the serialized form does
- * <i>not</i> include cache contents, but only configuration.
+ * retain the configuration properties of the original cache, with these exceptions: {@linkplain
+ * #refreshAfterWrite refreshAfterWrite} and the options refining it ({@linkplain #earlyRefresh
+ * earlyRefresh}, {@linkplain #refreshJitter refreshJitter} and {@linkplain #batchRefreshes
+ * batchRefreshes}), {@linkplain #recordStats recordStats} and {@linkplain #recordDetailedStats
+ * recordDetailedStats}, {@linkplain #spillover spillover}, whose file belongs to the original
+ * cache, and {@linkplain #weightBudget weightBudget}, whose budget is shared with other caches of
+ * the original process. Note that the serialized form does <i>not</i> include cache contents, but
+ * only configuration.
  *
  * <p>See the Guava User Guide article on <a
  * href="https://github.com/google/guava/wiki/CachesExplained">caching</a> for a higher-level
@@ -269,9 +277,12 @@ public final class CacheBuilder<K, V> {
 
   int initialCapacity = UNSET_INT;
   int concurrencyLevel = UNSET_INT;
+  boolean adaptiveConcurrency;
   long maximumSize = UNSET_INT;
   long maximumWeight = UNSET_INT;
   @Nullable Weigher<? super K, ? super V> weigher;
+  boolean windowTinyLfu;
+  boolean memoryPressureEviction;
 
   @Nullable Strength keyStrength;
   @Nullable Strength valueStrength;
@@ -285,6 +296,37 @@ public final class CacheBuilder<K, V> {
   @SuppressWarnings("GoodTime") // should be a java.time.Duration
   long refreshNanos = UNSET_INT;
 
+  @Nullable Expiry<? super K, ? super V> expiry;
+
+  double earlyRefreshBeta = UNSET_INT;
+
+  int maxBatchSize = UNSET_INT;
+
+  @SuppressWarnings("GoodTime") // should be a java.time.Duration
+  long batchDelayNanos = UNSET_INT;
+
+  double refreshJitter = UNSET_INT;
+
+  int maxRefreshBatchSize = UNSET_INT;
+
+  @SuppressWarnings("GoodTime") // should be a java.time.Duration
+  long refreshBatchDelayNanos = UNSET_INT;
+
+  @Nullable Executor refreshExecutor;
+
+  @Nullable Executor getAllExecutor;
+  int getAllParallelism = UNSET_INT;
+
+  @Nullable Executor maintenanceExecutor;
+
+  @Nullable File spilloverFile;
+  long spilloverMaxBytes = UNSET_INT;
+  @Nullable SpilloverCodec<?> spilloverCodec;
+
+  @Nullable WeightBudget weightBudget;
+
+  @Nullable Tagger<? super K, ? super V> tagger;
+
   @Nullable Equivalence<Object> keyEquivalence;
   @Nullable Equivalence<Object> valueEquivalence;
 
@@ -292,6 +334,7 @@ public final class CacheBuilder<K, V> {
   @Nullable Ticker ticker;
 
   Supplier<? extends StatsCounter> statsCounterSupplier = NULL_STATS_COUNTER;
+  boolean detailedStats;
 
   private CacheBuilder() {}
 
@@ -429,7 +472,8 @@ public final class CacheBuilder<K, V> {
    * granularity. For example, access queues and write queues are kept per segment when they are
    * required by the selected eviction algorithm. As such, when writing unit tests it is not
    * uncommon to specify {@code concurrencyLevel(1)} in order to achieve more deterministic eviction
-   * behavior.
+   * behavior. See {@link #adaptiveConcurrency} for adjusting the number of segments to the
+   * contention observed at runtime.
    *
    * <p>Note that future implementations may abandon segment locking in favor of more advanced
    * concurrency controls.
@@ -452,6 +496,42 @@ public final class CacheBuilder<K, V> {
     return (concurrencyLevel == UNSET_INT) ? DEFAULT_CONCURRENCY_LEVEL : concurrencyLevel;
   }
 
+  /**
+   * Specifies that the cache should adjust its number of hashtable segments to the contention it
+   * observes, rather than keeping the number derived from {@link #concurrencyLevel} for its whole
+   * lifetime. The concurrency level, or its default, then only determines the initial number of
+   * segments.
+   *
+   * <p>The cache counts how often a thread has to wait for a segment lock. About once per second,
+   * the number of segments is doubled if more than one in 32 lock acquisitions had to wait, up to
+   * four segments per available processor, and halved if fewer than one in 1024 did for half a
+   * minute, down to a single segment. Caches bounded by {@link #maximumSize} or {@link
+   * #maximumWeight} keep at least 10 entries per segment, as with a fixed concurrency level.
+   *
+   * <p>Changing the number of segments moves all entries into new segments while holding every
+   * segment lock, so writes to the cache are briefly blocked, for a time proportional to the number
+   * of entries; reads proceed meanwhile. The move is performed by the cache's {@linkplain
+   * #executor executor} if it has one, and otherwise by a thread that has just written to the
+   * cache. Statistics of the replaced segments are retained.
+   *
+   * <p>This can not be combined with {@link #windowTinyLfu} or {@link #expireAfter}, whose
+   * per-segment state is not moved.
+   *
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if adaptive concurrency was already enabled
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> adaptiveConcurrency() {
+    checkState(!adaptiveConcurrency, "adaptiveConcurrency was already set");
+    adaptiveConcurrency = true;
+    return this;
+  }
+
+  boolean adaptsConcurrency() {
+    return adaptiveConcurrency;
+  }
+
   /**
    * Specifies the maximum number of entries the cache may contain.
    *
@@ -573,6 +653,17 @@ public final class CacheBuilder<K, V> {
     return me;
   }
 
+  /**
+   * Returns the maximum number of entries set by {@link #maximumSize}, {@code 0} if entries expire
+   * immediately, or {@link #UNSET_INT} if there is no such bound.
+   */
+  long getMaximumSize() {
+    if (expireAfterWriteNanos == 0 || expireAfterAccessNanos == 0) {
+      return 0;
+    }
+    return maximumSize;
+  }
+
   long getMaximumWeight() {
     if (expireAfterWriteNanos == 0 || expireAfterAccessNanos == 0) {
       return 0;
@@ -586,6 +677,70 @@ public final class CacheBuilder<K, V> {
     return (Weigher<K1, V1>) MoreObjects.firstNonNull(weigher, OneWeigher.INSTANCE);
   }
 
+  /**
+   * Specifies that size-based eviction should use the W-TinyLFU policy instead of approximate LRU.
+   * This requires a corresponding call to {@link #maximumSize(long)} or {@link
+   * #maximumWeight(long)} prior to calling {@link #build}.
+   *
+   * <p>W-TinyLFU keeps a compact, aging frequency sketch of recently requested keys. New entries
+   * first enter a small admission window; when the window overflows, its least recently used entry
+   * is only retained in the main region of the cache if it is estimated to be more popular than the
+   * entry that would be evicted in its place. This makes the cache resistant to one-hit wonders and
+   * scans, which would otherwise flush frequently used entries out of an LRU cache, and typically
+   * yields a noticeably higher hit rate for skewed workloads. The additional bookkeeping is
+   * performed under the segment lock, alongside the existing LRU maintenance.
+   *
+   * <p>As with LRU, eviction is performed independently in each segment, and entries with zero
+   * weight are never chosen for size-based eviction.
+   *
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if W-TinyLFU was already enabled
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> windowTinyLfu() {
+    checkState(!windowTinyLfu, "windowTinyLfu was already set");
+    windowTinyLfu = true;
+    return this;
+  }
+
+  boolean usesWindowTinyLfu() {
+    return windowTinyLfu;
+  }
+
+  /**
+   * Specifies that the cache's {@linkplain #maximumSize maximum size} or {@linkplain #maximumWeight
+   * maximum weight} should shrink while the heap is under pressure, and grow back once the pressure
+   * subsides. This requires a corresponding call to {@link #maximumSize(long)} or {@link
+   * #maximumWeight(long)} prior to calling {@link #build}. Unlike {@link #softValues}, which leaves
+   * the choice of entries to evict to the garbage collector, this evicts the cache's least recently
+   * used entries before the heap runs out, so that memory is released predictably and without
+   * soft references.
+   *
+   * <p>Heap pressure is measured by the occupancy of the heap pools holding long-lived objects
+   * after a garbage collection, as reported by their {@link java.lang.management.MemoryPoolMXBean
+   * MemoryPoolMXBean}s. When a pool is more than 85% full, all caches evicting on memory pressure
+   * halve their current maximum, down to a sixteenth of the configured one, and evict the entries
+   * beyond it at once, on the cache's {@linkplain #executor executor} if it has one. Once all
+   * pools are less than 70% full, the maximum grows back by an eighth of the configured one per
+   * second. If a pool has no collection usage threshold yet, one is set at 85% of its maximum size
+   * so that the JVM notifies the cache promptly.
+   *
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if eviction on memory pressure was already enabled
+   * @since 32.0
+   */
+  @GwtIncompatible // java.lang.management
+  public CacheBuilder<K, V> evictOnMemoryPressure() {
+    checkState(!memoryPressureEviction, "evictOnMemoryPressure was already set");
+    memoryPressureEviction = true;
+    return this;
+  }
+
+  boolean evictsOnMemoryPressure() {
+    return memoryPressureEviction;
+  }
+
   /**
    * Specifies that each key (not value) stored in the cache should be wrapped in a {@link
    * WeakReference} (by default, strong references are used).
@@ -729,6 +884,7 @@ public final class CacheBuilder<K, V> {
         expireAfterWriteNanos == UNSET_INT,
         "expireAfterWrite was already set to %s ns",
         expireAfterWriteNanos);
+    checkState(expiry == null, "expireAfterWrite can not be combined with expireAfter");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterWriteNanos = unit.toNanos(duration);
     return this;
@@ -804,6 +960,7 @@ public final class CacheBuilder<K, V> {
         expireAfterAccessNanos == UNSET_INT,
         "expireAfterAccess was already set to %s ns",
         expireAfterAccessNanos);
+    checkState(expiry == null, "expireAfterAccess can not be combined with expireAfter");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterAccessNanos = unit.toNanos(duration);
     return this;
@@ -816,6 +973,52 @@ public final class CacheBuilder<K, V> {
         : expireAfterAccessNanos;
   }
 
+  /**
+   * Specifies that each entry should be automatically removed from the cache once a duration
+   * computed by {@code expiry} has elapsed after the entry's creation, the most recent replacement
+   * of its value, or its last read. This allows each entry to have its own lifetime, for example
+   * one derived from a time-to-live carried by the value.
+   *
+   * <p>Expiration is tracked by a hierarchical timer wheel in each segment, so that caches holding
+   * many entries with mixed lifetimes pay amortized constant time per entry, rather than requiring
+   * the entries to be ordered. Expired entries are never visible to read or write operations, but
+   * they may be counted in {@link Cache#size} for a short while (typically about a second) before
+   * being cleaned up as part of the routine maintenance described in the class javadoc.
+   *
+   * <p><b>Important note:</b> Instead of returning <em>this</em> as a {@code CacheBuilder}
+   * instance, this method returns {@code CacheBuilder<K1, V1>}, as described for {@link
+   * #weigher(Weigher)}.
+   *
+   * @param expiry the expiry to use in calculating the expiration time of cache entries
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if an expiry was already set, or if {@link #expireAfterWrite} or
+   *     {@link #expireAfterAccess} was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> expireAfter(
+      Expiry<? super K1, ? super V1> expiry) {
+    checkState(this.expiry == null, "expiry was already set to %s", this.expiry);
+    checkState(
+        expireAfterWriteNanos == UNSET_INT,
+        "expireAfter can not be combined with expireAfterWrite");
+    checkState(
+        expireAfterAccessNanos == UNSET_INT,
+        "expireAfter can not be combined with expireAfterAccess");
+
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.expiry = checkNotNull(expiry);
+    return me;
+  }
+
+  // Make a safe contravariant cast now so we don't have to do it over and over.
+  @SuppressWarnings("unchecked")
+  <K1 extends K, V1 extends V> @Nullable Expiry<K1, V1> getExpiry() {
+    return (Expiry<K1, V1>) expiry;
+  }
+
   /**
    * Specifies that active entries are eligible for automatic refresh once a fixed duration has
    * elapsed after the entry's creation, or the most recent replacement of its value. The semantics
@@ -895,6 +1098,457 @@ public final class CacheBuilder<K, V> {
     return (refreshNanos == UNSET_INT) ? DEFAULT_REFRESH_NANOS : refreshNanos;
   }
 
+  /**
+   * Specifies that entries should be refreshed probabilistically ahead of their expiration, so that
+   * the reads of a frequently requested key rarely find it expired and all wait for the same load.
+   * Each read of an entry triggers a refresh with a probability that rises towards one as the
+   * entry's remaining lifetime approaches the time it takes to load a value, following the XFetch
+   * algorithm of Vattani, Chierichetti and Lowenstein (<a
+   * href="https://cseweb.ucsd.edu/~avattani/papers/cache_stampede.pdf">Optimal Probabilistic Cache
+   * Stampede Prevention</a>): a read at time {@code now} refreshes the entry if {@code now - delta
+   * * beta * ln(random()) >= expirationTime}, where {@code delta} is a moving average of the time
+   * the cache's segment took to load values and {@code random()} is uniform in (0, 1].
+   *
+   * <p>The expiration time is the earliest of the times configured by {@link #expireAfterWrite},
+   * {@link #expireAfterAccess} and {@link #expireAfter(Expiry)}. Refreshes are performed as
+   * described for {@link #refreshAfterWrite(long, TimeUnit)}, including its advice to override
+   * {@link CacheLoader#reload} with an asynchronous implementation, and may be combined with it.
+   * Until the cache has loaded a value, no entry is refreshed early.
+   *
+   * @param beta how eagerly to refresh; {@code 1.0} is a good default, values above one refresh
+   *     earlier, and values below one refresh later
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code beta} is not positive
+   * @throws IllegalStateException if early refresh was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> earlyRefresh(double beta) {
+    checkState(
+        earlyRefreshBeta == UNSET_INT, "earlyRefresh was already set to %s", earlyRefreshBeta);
+    checkArgument(beta > 0, "beta must be positive: %s", beta);
+    this.earlyRefreshBeta = beta;
+    return this;
+  }
+
+  /**
+   * Returns the early refresh factor, or a non-positive value if entries aren't refreshed early.
+   */
+  double getEarlyRefreshBeta() {
+    return earlyRefreshBeta;
+  }
+
+  /**
+   * Specifies that concurrent misses on distinct keys should be grouped into a single call to
+   * {@link CacheLoader#loadAll}. The first miss waits up to {@code maxDelay} for other misses to
+   * join it, or until {@code maxBatchSize} keys have been collected, and then loads the batch on
+   * its own thread; every caller waiting on a key of the batch is completed from its result. This
+   * is useful when the loader's backend is considerably cheaper per key in bulk.
+   *
+   * <p>Batching only applies to loads performed by the {@code CacheLoader} passed to {@link
+   * #build(CacheLoader)}. If the loader does not override {@link CacheLoader#loadAll}, the keys of
+   * a batch are loaded individually. Note that a miss may be delayed by up to {@code maxDelay}
+   * even when no other miss occurs.
+   *
+   * @param maxBatchSize the maximum number of keys to load in a single batch
+   * @param maxDelay the maximum length of time to wait for a batch to fill
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maxBatchSize} is not positive or {@code maxDelay}
+   *     is negative
+   * @throws IllegalStateException if batching was already set
+   * @throws ArithmeticException for durations greater than +/- approximately 292 years
+   * @since 32.0
+   */
+  @J2ObjCIncompatible
+  @GwtIncompatible // java.time.Duration
+  @SuppressWarnings("GoodTime") // java.time.Duration decomposition
+  public CacheBuilder<K, V> batchLoads(int maxBatchSize, java.time.Duration maxDelay) {
+    return batchLoads(maxBatchSize, toNanosSaturated(maxDelay), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Specifies that concurrent misses on distinct keys should be grouped into a single call to
+   * {@link CacheLoader#loadAll}. The first miss waits up to {@code maxDelay} for other misses to
+   * join it, or until {@code maxBatchSize} keys have been collected, and then loads the batch on
+   * its own thread; every caller waiting on a key of the batch is completed from its result. This
+   * is useful when the loader's backend is considerably cheaper per key in bulk.
+   *
+   * <p>Batching only applies to loads performed by the {@code CacheLoader} passed to {@link
+   * #build(CacheLoader)}. If the loader does not override {@link CacheLoader#loadAll}, the keys of
+   * a batch are loaded individually. Note that a miss may be delayed by up to {@code maxDelay}
+   * even when no other miss occurs.
+   *
+   * <p>If you can represent the duration as a {@link java.time.Duration} (which should be preferred
+   * when feasible), use {@link #batchLoads(int, Duration)} instead.
+   *
+   * @param maxBatchSize the maximum number of keys to load in a single batch
+   * @param maxDelay the maximum length of time to wait for a batch to fill
+   * @param unit the unit that {@code maxDelay} is expressed in
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maxBatchSize} is not positive or {@code maxDelay}
+   *     is negative
+   * @throws IllegalStateException if batching was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  @SuppressWarnings("GoodTime") // should accept a java.time.Duration
+  public CacheBuilder<K, V> batchLoads(int maxBatchSize, long maxDelay, TimeUnit unit) {
+    checkState(
+        this.maxBatchSize == UNSET_INT,
+        "batchLoads was already set to %s keys",
+        this.maxBatchSize);
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be positive: %s", maxBatchSize);
+    checkArgument(maxDelay >= 0, "maxDelay cannot be negative: %s %s", maxDelay, unit);
+    this.maxBatchSize = maxBatchSize;
+    this.batchDelayNanos = unit.toNanos(maxDelay);
+    return this;
+  }
+
+  boolean batchesLoads() {
+    return maxBatchSize != UNSET_INT;
+  }
+
+  int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  @SuppressWarnings("GoodTime") // nanos internally, should be Duration
+  long getBatchDelayNanos() {
+    return batchDelayNanos;
+  }
+
+  /**
+   * Specifies that the refresh time of each entry should be chosen at random, so that entries
+   * written together don't all become due for refresh at the same moment and flood the loader's
+   * backend with reloads. Each write draws a refresh time uniformly between {@code (1 - jitter)}
+   * times the duration passed to {@link #refreshAfterWrite(long, TimeUnit)} and that duration
+   * itself; the draw is fixed for the written value, so repeated reads don't make a refresh more
+   * likely.
+   *
+   * @param jitter the fraction of the refresh duration over which refreshes are spread, between
+   *     zero and one
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code jitter} is not between zero and one
+   * @throws IllegalStateException if the refresh jitter was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> refreshJitter(double jitter) {
+    checkState(refreshJitter == UNSET_INT, "refreshJitter was already set to %s", refreshJitter);
+    checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1: %s", jitter);
+    this.refreshJitter = jitter;
+    return this;
+  }
+
+  /** Returns the refresh jitter, or zero if refresh times aren't randomized. */
+  double getRefreshJitter() {
+    return (refreshJitter == UNSET_INT) ? 0 : refreshJitter;
+  }
+
+  /**
+   * Specifies that the entries due for refresh should be reloaded in batches, through a single call
+   * to {@link CacheLoader#reloadAll} per batch, rather than one {@link CacheLoader#reload} call per
+   * entry. The first entry found due opens a batch and schedules it on {@code executor}; the task
+   * waits up to {@code maxDelay} for other entries to join, or until {@code maxBatchSize} entries
+   * have been collected, and then reloads the whole batch. Reads keep returning the old values in
+   * the meantime, and the values of a batch are stored as soon as they are reloaded. Combined with
+   * {@link #refreshJitter}, this turns the refreshes of entries written together into a few bulk
+   * calls to the loader's backend.
+   *
+   * <p>Batching only applies to the refreshes triggered by {@link #refreshAfterWrite} and {@link
+   * #earlyRefresh} that are performed by the {@code CacheLoader} passed to {@link
+   * #build(CacheLoader)}; {@link LoadingCache#refresh} still reloads its key on its own. If the
+   * loader implements neither {@code reloadAll} nor {@link CacheLoader#loadAll}, the entries of a
+   * batch are reloaded individually. Each pending batch occupies a thread of {@code executor} for
+   * up to {@code maxDelay}; if the executor rejects a batch, it is reloaded at once on the thread
+   * that opened it.
+   *
+   * @param maxBatchSize the maximum number of entries to reload in a single batch
+   * @param maxDelay the maximum length of time to wait for a batch to fill
+   * @param executor the executor on which batches are collected and reloaded
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maxBatchSize} is not positive or {@code maxDelay}
+   *     is negative
+   * @throws IllegalStateException if refresh batching was already set
+   * @throws ArithmeticException for durations greater than +/- approximately 292 years
+   * @since 32.0
+   */
+  @J2ObjCIncompatible
+  @GwtIncompatible // java.time.Duration
+  @SuppressWarnings("GoodTime") // java.time.Duration decomposition
+  public CacheBuilder<K, V> batchRefreshes(
+      int maxBatchSize, java.time.Duration maxDelay, Executor executor) {
+    return batchRefreshes(
+        maxBatchSize, toNanosSaturated(maxDelay), TimeUnit.NANOSECONDS, executor);
+  }
+
+  /**
+   * Specifies that the entries due for refresh should be reloaded in batches, through a single call
+   * to {@link CacheLoader#reloadAll} per batch, rather than one {@link CacheLoader#reload} call per
+   * entry. The first entry found due opens a batch and schedules it on {@code executor}; the task
+   * waits up to {@code maxDelay} for other entries to join, or until {@code maxBatchSize} entries
+   * have been collected, and then reloads the whole batch. Reads keep returning the old values in
+   * the meantime, and the values of a batch are stored as soon as they are reloaded. Combined with
+   * {@link #refreshJitter}, this turns the refreshes of entries written together into a few bulk
+   * calls to the loader's backend.
+   *
+   * <p>Batching only applies to the refreshes triggered by {@link #refreshAfterWrite} and {@link
+   * #earlyRefresh} that are performed by the {@code CacheLoader} passed to {@link
+   * #build(CacheLoader)}; {@link LoadingCache#refresh} still reloads its key on its own. If the
+   * loader implements neither {@code reloadAll} nor {@link CacheLoader#loadAll}, the entries of a
+   * batch are reloaded individually. Each pending batch occupies a thread of {@code executor} for
+   * up to {@code maxDelay}; if the executor rejects a batch, it is reloaded at once on the thread
+   * that opened it.
+   *
+   * <p>If you can represent the duration as a {@link java.time.Duration} (which should be preferred
+   * when feasible), use {@link #batchRefreshes(int, Duration, Executor)} instead.
+   *
+   * @param maxBatchSize the maximum number of entries to reload in a single batch
+   * @param maxDelay the maximum length of time to wait for a batch to fill
+   * @param unit the unit that {@code maxDelay} is expressed in
+   * @param executor the executor on which batches are collected and reloaded
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maxBatchSize} is not positive or {@code maxDelay}
+   *     is negative
+   * @throws IllegalStateException if refresh batching was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  @SuppressWarnings("GoodTime") // should accept a java.time.Duration
+  public CacheBuilder<K, V> batchRefreshes(
+      int maxBatchSize, long maxDelay, TimeUnit unit, Executor executor) {
+    checkState(
+        maxRefreshBatchSize == UNSET_INT,
+        "batchRefreshes was already set to %s entries",
+        maxRefreshBatchSize);
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be positive: %s", maxBatchSize);
+    checkArgument(maxDelay >= 0, "maxDelay cannot be negative: %s %s", maxDelay, unit);
+    this.refreshExecutor = checkNotNull(executor);
+    this.maxRefreshBatchSize = maxBatchSize;
+    this.refreshBatchDelayNanos = unit.toNanos(maxDelay);
+    return this;
+  }
+
+  boolean batchesRefreshes() {
+    return maxRefreshBatchSize != UNSET_INT;
+  }
+
+  int getMaxRefreshBatchSize() {
+    return maxRefreshBatchSize;
+  }
+
+  @SuppressWarnings("GoodTime") // nanos internally, should be Duration
+  long getRefreshBatchDelayNanos() {
+    return refreshBatchDelayNanos;
+  }
+
+  @Nullable
+  Executor getRefreshExecutor() {
+    return refreshExecutor;
+  }
+
+  /**
+   * Specifies that when {@link LoadingCache#getAll} has to load missing keys individually, because
+   * the {@code CacheLoader} does not implement {@link CacheLoader#loadAll}, the loads should be run
+   * on {@code executor} rather than one at a time on the calling thread. At most {@code
+   * maxParallelism} of the loads of a single {@code getAll} call run at once. Keys that are already
+   * being loaded by another caller are waited for rather than loaded again.
+   *
+   * <p>The executor is part of the cache's configuration, so it is serialized with the cache and
+   * must itself be serializable if the cache is to be serialized.
+   *
+   * @param executor the executor on which individual loads are run
+   * @param maxParallelism the maximum number of concurrent loads per {@code getAll} call
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maxParallelism} is not positive
+   * @throws IllegalStateException if a parallel getAll executor was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> parallelGetAll(Executor executor, int maxParallelism) {
+    checkState(getAllExecutor == null, "parallelGetAll was already set");
+    checkArgument(maxParallelism > 0, "maxParallelism must be positive: %s", maxParallelism);
+    this.getAllExecutor = checkNotNull(executor);
+    this.getAllParallelism = maxParallelism;
+    return this;
+  }
+
+  @Nullable
+  Executor getGetAllExecutor() {
+    return getAllExecutor;
+  }
+
+  int getGetAllParallelism() {
+    return getAllParallelism;
+  }
+
+  /**
+   * Specifies an executor on which the cache performs its routine maintenance and notifies its
+   * {@linkplain #removalListener removal listener}. By default, maintenance is performed, and
+   * removal notifications are delivered, on the threads that happen to read from or write to the
+   * cache, as described in the class javadoc; with an executor those threads only schedule the
+   * work, which keeps sporadic cleanup out of the latency of individual cache operations.
+   *
+   * <p>Maintenance covers the removal of expired entries and of entries whose keys or values were
+   * garbage-collected, and the processing of recorded reads. Eviction by {@link #maximumSize} or
+   * {@link #maximumWeight} is still performed by the writing thread, so that the cache never grows
+   * past its bound. Expired entries are never visible to read or write operations, but they may be
+   * counted in {@link Cache#size} until the executor has run. {@link Cache#cleanUp} still performs
+   * maintenance on the calling thread.
+   *
+   * <p>At most one maintenance task per segment and one notification task are pending at a time.
+   * If the executor rejects a task, the work is performed on the calling thread instead.
+   *
+   * <p>The executor is part of the cache's configuration, so it is serialized with the cache and
+   * must itself be serializable if the cache is to be serialized.
+   *
+   * @param executor the executor on which maintenance and removal notifications are run
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if an executor was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> executor(Executor executor) {
+    checkState(maintenanceExecutor == null, "executor was already set to %s", maintenanceExecutor);
+    this.maintenanceExecutor = checkNotNull(executor);
+    return this;
+  }
+
+  @Nullable
+  Executor getMaintenanceExecutor() {
+    return maintenanceExecutor;
+  }
+
+  /**
+   * Specifies that the cache shares {@code budget} with the other caches attached to it. Whenever
+   * the total weight of the entries of all those caches exceeds {@link WeightBudget#maximumWeight},
+   * entries are evicted from the caches whose memory yields the fewest hits, as described for
+   * {@link WeightBudget}, rather than from the cache that just grew. The weight of entries is
+   * determined by the {@link #weigher}, or is one if none was specified.
+   *
+   * <p>A shared budget may be combined with {@link #maximumSize} or {@link #maximumWeight}, which
+   * then still bound the cache individually. Entries evicted to stay within the budget are reported
+   * to the {@linkplain #removalListener removal listener} with {@link RemovalCause#SIZE}.
+   *
+   * @param budget the weight budget this cache draws from
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if a weight budget was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> weightBudget(WeightBudget budget) {
+    checkState(weightBudget == null, "weightBudget was already set to %s", weightBudget);
+    this.weightBudget = checkNotNull(budget);
+    return this;
+  }
+
+  @Nullable
+  WeightBudget getWeightBudget() {
+    return weightBudget;
+  }
+
+  /**
+   * Specifies the tagger used to tag the entries of the cache, so that they can be invalidated in
+   * bulk with {@link Cache#invalidateByTag}. The tagger is invoked whenever a value is put into or
+   * loaded by the cache, and the cache keeps an index from each tag to the keys of the entries
+   * carrying it.
+   *
+   * <p>A tagger can not be combined with {@link #weakKeys}, as the index holds keys strongly, or
+   * with {@link #spillover}. It is serialized with the cache, so it must itself be serializable if
+   * the cache is to be serialized.
+   *
+   * <p><b>Important note:</b> Instead of returning <em>this</em> as a {@code CacheBuilder}
+   * instance, this method returns {@code CacheBuilder<K1, V1>}, as described for {@link
+   * #weigher(Weigher)}.
+   *
+   * @param tagger the tagger used to calculate the tags of cache entries
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if a tagger was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> tagger(
+      Tagger<? super K1, ? super V1> tagger) {
+    checkState(this.tagger == null, "tagger was already set to %s", this.tagger);
+
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.tagger = checkNotNull(tagger);
+    return me;
+  }
+
+  // Make a safe contravariant cast now so we don't have to do it over and over.
+  @SuppressWarnings("unchecked")
+  <K1 extends K, V1 extends V> @Nullable Tagger<K1, V1> getTagger() {
+    return (Tagger<K1, V1>) tagger;
+  }
+
+  /**
+   * Specifies that entries evicted by {@link #maximumSize} or {@link #maximumWeight} should be kept
+   * in a second, larger tier backed by the memory-mapped file {@code file}, instead of being
+   * discarded. A read or load of a key that was spilled moves its value back into the cache, so
+   * that it is not loaded again. Entries that are explicitly invalidated or replaced are discarded
+   * from the spillover tier as well. Spilled entries expire when they would have expired in the
+   * cache, and are treated as newly written when they are moved back.
+   *
+   * <p>The spillover tier holds at most {@code maxBytes} of serialized values, written as a
+   * circular log: once it is full, the values spilled longest ago are overwritten. Values are
+   * serialized with {@code codec} when they are evicted and deserialized when they are read back;
+   * values whose serialized form exceeds the size of a mapped region are discarded. The tier is
+   * split into up to 16 stripes, and each stripe into regions of at most 64 MiB, usually an eighth
+   * of the stripe but no less than 64 KiB unless the stripe itself is smaller. Spilled entries are
+   * not counted in {@link Cache#size}, are not visible through {@link Cache#asMap}, and do not
+   * outlive the cache: the file's previous contents are ignored and it is not deleted when the
+   * cache is discarded.
+   *
+   * <p>Spilling and reading back happen while the cache holds a lock on the entry's segment. A
+   * value that can't be spilled or read back because {@code codec} throws is discarded, and is
+   * loaded again when requested. Removal listeners are still notified of evictions with {@link
+   * RemovalCause#SIZE}.
+   *
+   * <p><b>Important note:</b> Instead of returning <em>this</em> as a {@code CacheBuilder}
+   * instance, this method returns {@code CacheBuilder<K1, V1>}, as described for {@link
+   * #weigher(Weigher)}.
+   *
+   * @param file the file backing the spillover tier, which is created if it doesn't exist
+   * @param maxBytes the size of the spillover tier, in bytes
+   * @param codec the codec used to serialize spilled values
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maxBytes} is not positive
+   * @throws IllegalStateException if a spillover tier was already set
+   * @since 32.0
+   */
+  @GwtIncompatible // java.nio.MappedByteBuffer
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> spillover(
+      File file, long maxBytes, SpilloverCodec<V1> codec) {
+    checkState(spilloverFile == null, "spillover was already set to %s", spilloverFile);
+    checkArgument(maxBytes > 0, "maxBytes must be positive: %s", maxBytes);
+
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.spilloverFile = checkNotNull(file);
+    me.spilloverMaxBytes = maxBytes;
+    me.spilloverCodec = checkNotNull(codec);
+    return me;
+  }
+
+  @Nullable
+  File getSpilloverFile() {
+    return spilloverFile;
+  }
+
+  long getSpilloverMaxBytes() {
+    return spilloverMaxBytes;
+  }
+
+  // The codec's type was fixed by spillover, so this cast is as safe as the one in getWeigher.
+  @SuppressWarnings("unchecked")
+  <V1 extends V> @Nullable SpilloverCodec<V1> getSpilloverCodec() {
+    return (SpilloverCodec<V1>) spilloverCodec;
+  }
+
   /**
    * Specifies a nanosecond-precision time source for this cache. By default, {@link
    * System#nanoTime} is used.
@@ -968,12 +1622,45 @@ public final class CacheBuilder<K, V> {
    * @since 12.0 (previously, stats collection was automatic)
    */
   public CacheBuilder<K, V> recordStats() {
+    detailedStats = false;
     statsCounterSupplier = CACHE_STATS_COUNTER;
     return this;
   }
 
+  /**
+   * Enable the accumulation of {@link CacheStats} during the operation of the cache, like {@link
+   * #recordStats}, including detailed statistics: a histogram of load times, the number of
+   * evictions for each {@link RemovalCause}, the number of times and total time threads waited for
+   * the locks of the cache's segments, and the hit rate of the lookups made during roughly the last
+   * minute. These help with choosing {@link #concurrencyLevel} and the size limit of the cache.
+   *
+   * <p>Detailed statistics impose a larger performance penalty than {@link #recordStats}: every
+   * lookup also reads the ticker, and every lock acquisition that has to wait reads the system
+   * clock twice.
+   *
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @since 32.0
+   */
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> recordDetailedStats() {
+    detailedStats = true;
+    statsCounterSupplier =
+        new Supplier<StatsCounter>() {
+          @Override
+          public StatsCounter get() {
+            // read the ticker lazily, as it may be set after this method is called
+            return new DetailedStatsCounter(getTicker(true));
+          }
+        };
+    return this;
+  }
+
   boolean isRecordingStats() {
-    return statsCounterSupplier == CACHE_STATS_COUNTER;
+    return statsCounterSupplier == CACHE_STATS_COUNTER || detailedStats;
+  }
+
+  boolean isRecordingDetailedStats() {
+    return detailedStats;
   }
 
   Supplier<? extends StatsCounter> getStatsCounterSupplier() {
@@ -996,9 +1683,105 @@ public final class CacheBuilder<K, V> {
   public <K1 extends K, V1 extends V> LoadingCache<K1, V1> build(
       CacheLoader<? super K1, V1> loader) {
     checkWeightWithWeigher();
+    checkWindowTinyLfu();
+    checkMemoryPressureEviction();
+    checkSpillover();
+    checkTagger();
+    checkAdaptiveConcurrency();
+    checkEarlyRefresh();
+    checkRefreshBatching();
     return new LocalCache.LocalLoadingCache<>(this, loader);
   }
 
+  /**
+   * Builds a cache which returns futures of its values, loading them on {@code executor} if
+   * necessary. Callers are never blocked while a value is loading: if another caller is currently
+   * loading the value for a given key, the returned future completes when that load does.
+   *
+   * <p>This method does not alter the state of this {@code CacheBuilder} instance, so it can be
+   * invoked again to create multiple independent caches.
+   *
+   * @param loader the cache loader used to obtain new values
+   * @param executor the executor on which {@link CacheLoader#load} is invoked
+   * @return a cache having the requested features
+   * @since 32.0
+   */
+  @CheckReturnValue
+  @GwtIncompatible // ListenableFuture
+  public <K1 extends K, V1 extends V> AsyncLoadingCache<K1, V1> buildAsync(
+      CacheLoader<? super K1, V1> loader, Executor executor) {
+    checkWeightWithWeigher();
+    checkWindowTinyLfu();
+    checkMemoryPressureEviction();
+    checkSpillover();
+    checkTagger();
+    checkAdaptiveConcurrency();
+    checkEarlyRefresh();
+    checkRefreshBatching();
+    return new LocalCache.LocalAsyncLoadingCache<>(this, loader, executor);
+  }
+
+  /**
+   * Builds a cache keyed by primitive {@code long} values, which either returns an already-loaded
+   * value for a given key or atomically computes it using the supplied {@code loader}, as described
+   * for {@link #build(CacheLoader)}. Keys are stored in primitive arrays rather than in entry
+   * objects, so lookups don't box their key and each entry uses considerably less memory.
+   *
+   * <p>Long-keyed caches support {@link #maximumSize}, {@link #expireAfterWrite}, {@link
+   * #expireAfterAccess}, {@link #initialCapacity}, {@link #concurrencyLevel}, {@link #ticker},
+   * {@link #removalListener}, whose notifications carry {@link Long} keys, and {@link
+   * #recordStats}. Other options, including {@link #maximumWeight}, are not supported. Entries
+   * evicted by size are chosen by the CLOCK algorithm, an approximation of the least-recently-used
+   * order of other caches.
+   *
+   * <p>This method does not alter the state of this {@code CacheBuilder} instance, so it can be
+   * invoked again to create multiple independent caches.
+   *
+   * @param loader the loader used to obtain new values
+   * @return a cache having the requested features
+   * @throws IllegalStateException if an option that long-keyed caches don't support was set
+   * @since 32.0
+   */
+  @CheckReturnValue
+  @GwtIncompatible // To be supported
+  public <V1 extends V> LongKeyLoadingCache<V1> buildLongKeyed(
+      LongKeyLoadingCache.Loader<? extends V1> loader) {
+    checkLongKeyed();
+    return new LocalLongKeyCache<V1>(this, loader);
+  }
+
+  private void checkLongKeyed() {
+    checkState(
+        weigher == null && maximumWeight == UNSET_INT,
+        "buildLongKeyed does not support weigher or maximumWeight");
+    checkState(
+        keyStrength == null && valueStrength == null,
+        "buildLongKeyed does not support weak or soft references");
+    checkState(
+        keyEquivalence == null && valueEquivalence == null,
+        "buildLongKeyed does not support custom equivalences");
+    checkState(
+        expiry == null
+            && refreshNanos == UNSET_INT
+            && earlyRefreshBeta == UNSET_INT
+            && refreshJitter == UNSET_INT
+            && maxRefreshBatchSize == UNSET_INT,
+        "buildLongKeyed does not support expireAfter or refreshes");
+    checkState(
+        !windowTinyLfu
+            && !adaptiveConcurrency
+            && maxBatchSize == UNSET_INT
+            && getAllExecutor == null
+            && maintenanceExecutor == null
+            && spilloverFile == null
+            && weightBudget == null
+            && !memoryPressureEviction
+            && tagger == null,
+        "buildLongKeyed does not support windowTinyLfu, adaptiveConcurrency, batchLoads,"
+            + " parallelGetAll, executor, spillover, weightBudget, evictOnMemoryPressure or"
+            + " tagger");
+  }
+
   /**
    * Builds a cache which does not automatically load values when keys are requested.
    *
@@ -1014,12 +1797,84 @@ public final class CacheBuilder<K, V> {
   @CheckReturnValue
   public <K1 extends K, V1 extends V> Cache<K1, V1> build() {
     checkWeightWithWeigher();
+    checkWindowTinyLfu();
+    checkMemoryPressureEviction();
+    checkSpillover();
+    checkTagger();
+    checkAdaptiveConcurrency();
     checkNonLoadingCache();
     return new LocalCache.LocalManualCache<>(this);
   }
 
   private void checkNonLoadingCache() {
     checkState(refreshNanos == UNSET_INT, "refreshAfterWrite requires a LoadingCache");
+    checkState(earlyRefreshBeta == UNSET_INT, "earlyRefresh requires a LoadingCache");
+    checkState(refreshJitter == UNSET_INT, "refreshJitter requires a LoadingCache");
+    checkState(maxRefreshBatchSize == UNSET_INT, "batchRefreshes requires a LoadingCache");
+    checkState(maxBatchSize == UNSET_INT, "batchLoads requires a LoadingCache");
+    checkState(getAllExecutor == null, "parallelGetAll requires a LoadingCache");
+  }
+
+  private void checkWindowTinyLfu() {
+    if (windowTinyLfu) {
+      checkState(
+          maximumSize != UNSET_INT || maximumWeight != UNSET_INT,
+          "windowTinyLfu requires maximumSize or maximumWeight");
+    }
+  }
+
+  private void checkMemoryPressureEviction() {
+    if (memoryPressureEviction) {
+      checkState(
+          maximumSize != UNSET_INT || maximumWeight != UNSET_INT,
+          "evictOnMemoryPressure requires maximumSize or maximumWeight");
+    }
+  }
+
+  private void checkEarlyRefresh() {
+    if (earlyRefreshBeta != UNSET_INT) {
+      checkState(
+          expireAfterWriteNanos != UNSET_INT
+              || expireAfterAccessNanos != UNSET_INT
+              || expiry != null,
+          "earlyRefresh requires expireAfterWrite, expireAfterAccess or expireAfter");
+    }
+  }
+
+  private void checkRefreshBatching() {
+    if (refreshJitter != UNSET_INT) {
+      checkState(refreshNanos != UNSET_INT, "refreshJitter requires refreshAfterWrite");
+    }
+    if (maxRefreshBatchSize != UNSET_INT) {
+      checkState(
+          refreshNanos != UNSET_INT || earlyRefreshBeta != UNSET_INT,
+          "batchRefreshes requires refreshAfterWrite or earlyRefresh");
+    }
+  }
+
+  private void checkSpillover() {
+    if (spilloverFile != null) {
+      checkState(
+          maximumSize != UNSET_INT || maximumWeight != UNSET_INT,
+          "spillover requires maximumSize or maximumWeight");
+      checkState(
+          getKeyStrength() == Strength.STRONG,
+          "spillover can not be combined with weakKeys, which compare keys by identity");
+    }
+  }
+
+  private void checkTagger() {
+    if (tagger != null) {
+      checkState(getKeyStrength() == Strength.STRONG, "tagger can not be combined with weakKeys");
+      checkState(spilloverFile == null, "tagger can not be combined with spillover");
+    }
+  }
+
+  private void checkAdaptiveConcurrency() {
+    if (adaptiveConcurrency) {
+      checkState(!windowTinyLfu, "adaptiveConcurrency can not be combined with windowTinyLfu");
+      checkState(expiry == null, "adaptiveConcurrency can not be combined with expireAfter");
+    }
   }
 
   private void checkWeightWithWeigher() {
@@ -1027,9 +1882,11 @@ public final class CacheBuilder<K, V> {
       checkState(maximumWeight == UNSET_INT, "maximumWeight requires weigher");
     } else {
       if (strictParsing) {
-        checkState(maximumWeight != UNSET_INT, "weigher requires maximumWeight");
+        checkState(
+            maximumWeight != UNSET_INT || weightBudget != null,
+            "weigher requires maximumWeight or weightBudget");
       } else {
-        if (maximumWeight == UNSET_INT) {
+        if (maximumWeight == UNSET_INT && weightBudget == null) {
           logger.log(Level.WARNING, "ignoring weigher specified without maximumWeight");
         }
       }
@@ -1049,18 +1906,59 @@ public final class CacheBuilder<K, V> {
     if (concurrencyLevel != UNSET_INT) {
       s.add("concurrencyLevel", concurrencyLevel);
     }
+    if (adaptiveConcurrency) {
+      s.addValue("adaptiveConcurrency");
+    }
     if (maximumSize != UNSET_INT) {
       s.add("maximumSize", maximumSize);
     }
     if (maximumWeight != UNSET_INT) {
       s.add("maximumWeight", maximumWeight);
     }
+    if (windowTinyLfu) {
+      s.addValue("windowTinyLfu");
+    }
     if (expireAfterWriteNanos != UNSET_INT) {
       s.add("expireAfterWrite", expireAfterWriteNanos + "ns");
     }
     if (expireAfterAccessNanos != UNSET_INT) {
       s.add("expireAfterAccess", expireAfterAccessNanos + "ns");
     }
+    if (expiry != null) {
+      s.addValue("expiry");
+    }
+    if (earlyRefreshBeta != UNSET_INT) {
+      s.add("earlyRefreshBeta", earlyRefreshBeta);
+    }
+    if (maxBatchSize != UNSET_INT) {
+      s.add("maxBatchSize", maxBatchSize);
+      s.add("batchDelay", batchDelayNanos + "ns");
+    }
+    if (refreshJitter != UNSET_INT) {
+      s.add("refreshJitter", refreshJitter);
+    }
+    if (maxRefreshBatchSize != UNSET_INT) {
+      s.add("maxRefreshBatchSize", maxRefreshBatchSize);
+      s.add("refreshBatchDelay", refreshBatchDelayNanos + "ns");
+    }
+    if (getAllExecutor != null) {
+      s.add("getAllParallelism", getAllParallelism);
+    }
+    if (maintenanceExecutor != null) {
+      s.addValue("executor");
+    }
+    if (spilloverFile != null) {
+      s.add("spilloverMaxBytes", spilloverMaxBytes);
+    }
+    if (weightBudget != null) {
+      s.add("weightBudget", weightBudget);
+    }
+    if (memoryPressureEviction) {
+      s.addValue("evictOnMemoryPressure");
+    }
+    if (tagger != null) {
+      s.addValue("tagger");
+    }
     if (keyStrength != null) {
       s.add("keyStrength", Ascii.toLowerCase(keyStrength.toString()));
     }
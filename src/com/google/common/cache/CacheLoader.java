@@ -130,6 +130,34 @@ public abstract class CacheLoader<K, V> {
     throw new UnsupportedLoadingOperationException();
   }
 
+  /**
+   * Computes or retrieves replacement values for several already-cached keys. This method is
+   * called when the entries due for refresh are reloaded in batches, as configured by {@link
+   * CacheBuilder#batchRefreshes}.
+   *
+   * <p>This implementation synchronously delegates to {@link #loadAll}. It should be overridden
+   * when the backend can take advantage of the old values, for example to revalidate them, or
+   * when it can reload asynchronously.
+   *
+   * <p>Keys missing from the returned map keep their old values and are refreshed again later;
+   * extra keys are ignored. <b>Note:</b> <i>all exceptions thrown by this method will be logged
+   * and then swallowed</i>.
+   *
+   * @param oldValues the non-null keys to reload, each mapped to its non-null old value
+   * @return the future map from the reloaded keys to their new values; <b>must not be null, and
+   *     may not contain null values</b>
+   * @throws Exception if unable to reload the result
+   * @throws InterruptedException if this method is interrupted. {@code InterruptedException} is
+   *     treated like any other {@code Exception} in all respects except that, when it is caught,
+   *     the thread's interrupt status is set
+   * @since 32.0
+   */
+  @GwtIncompatible // Futures
+  public ListenableFuture<Map<K, V>> reloadAll(Map<? extends K, ? extends V> oldValues)
+      throws Exception {
+    return Futures.immediateFuture(loadAll(oldValues.keySet()));
+  }
+
   /**
    * Returns a cache loader that uses {@code function} to load keys, without supporting either
    * reloading or bulk loading. This allows creating a cache loader using a lambda expression.
@@ -211,6 +239,21 @@ public abstract class CacheLoader<K, V> {
       public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
         return loader.loadAll(keys);
       }
+
+      @Override
+      public ListenableFuture<Map<K, V>> reloadAll(final Map<? extends K, ? extends V> oldValues)
+          throws Exception {
+        ListenableFutureTask<Map<K, V>> task =
+            ListenableFutureTask.create(
+                new Callable<Map<K, V>>() {
+                  @Override
+                  public Map<K, V> call() throws Exception {
+                    return loader.reloadAll(oldValues).get();
+                  }
+                });
+        executor.execute(task);
+        return task;
+      }
     };
   }
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.LocalCache.LocalManualCache;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * Static methods for persisting the hottest entries of a cache and warming a new cache from them,
+ * so that a restarted process doesn't begin with a cold cache.
+ *
+ * <p>A snapshot records keys, and optionally values, in order from the most to the least recently
+ * used, as far as the cache tracks access order (see {@link #write}). Warming a cache from a
+ * snapshot either stores the recorded values directly or reloads the recorded keys in parallel
+ * batches through {@link LoadingCache#getAll}, which uses {@link CacheLoader#loadAll} when the
+ * loader implements it.
+ *
+ * @since 32.0
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+public final class CacheSnapshots {
+  private static final Logger logger = Logger.getLogger(CacheSnapshots.class.getName());
+
+  /** The first bytes of every snapshot, "GCS" followed by a format version. */
+  private static final int MAGIC = 0x47435301;
+
+  private CacheSnapshots() {}
+
+  /**
+   * Writes up to {@code maxEntries} of the hottest entries of {@code cache} to {@code sink}, and
+   * returns the number of entries written. If {@code valueCodec} is null, only keys are written,
+   * and warming from the snapshot reloads their values.
+   *
+   * <p>For caches built by {@link CacheBuilder} that are bounded by size or expire after access,
+   * entries are written from the most to the least recently used, approximately. For other caches
+   * the order is unspecified. Entries that are concurrently modified may or may not be included.
+   *
+   * @throws IOException if an I/O error occurs while writing to {@code sink}
+   */
+  @CanIgnoreReturnValue
+  public static <K, V> int write(
+      Cache<K, V> cache,
+      int maxEntries,
+      ByteSink sink,
+      SpilloverCodec<K> keyCodec,
+      @CheckForNull SpilloverCodec<V> valueCodec)
+      throws IOException {
+    checkArgument(maxEntries >= 0, "maxEntries must not be negative: %s", maxEntries);
+    checkNotNull(keyCodec);
+    List<Map.Entry<K, V>> entries = hottestEntries(cache, maxEntries);
+
+    try (DataOutputStream out = new DataOutputStream(sink.openBufferedStream())) {
+      out.writeInt(MAGIC);
+      out.writeBoolean(valueCodec != null);
+      out.writeInt(entries.size());
+      for (Map.Entry<K, V> entry : entries) {
+        writeBytes(out, keyCodec.encode(entry.getKey()));
+        if (valueCodec != null) {
+          writeBytes(out, valueCodec.encode(entry.getValue()));
+        }
+      }
+    }
+    return entries.size();
+  }
+
+  /**
+   * Warms {@code cache} from the snapshot in {@code source}, and returns a future of the number of
+   * entries that were stored. The snapshot is read synchronously; the entries are then stored by
+   * tasks on {@code executor}, each handling up to {@code batchSize} entries.
+   *
+   * <p>If the snapshot holds values and {@code valueCodec} is non-null, the values are put into the
+   * cache directly. Otherwise the values are loaded with {@link LoadingCache#getAll}. Batches are
+   * submitted from the coldest to the hottest, so that in a cache bounded by size the hottest
+   * entries tend to be stored last, and thus evicted last. This is only best-effort on an executor
+   * that runs several tasks at once, since batches may then complete in any order; pass an executor
+   * from {@link com.google.common.util.concurrent.MoreExecutors#newSequentialExecutor} if the order
+   * matters. A batch that fails to load is logged and not counted; the returned future itself does
+   * not fail.
+   *
+   * @throws IOException if an I/O error occurs while reading {@code source}, or if it isn't a
+   *     snapshot written by {@link #write}
+   */
+  public static <K, V> ListenableFuture<Integer> warm(
+      LoadingCache<K, V> cache,
+      ByteSource source,
+      SpilloverCodec<K> keyCodec,
+      @CheckForNull SpilloverCodec<V> valueCodec,
+      int batchSize,
+      Executor executor)
+      throws IOException {
+    checkNotNull(cache);
+    checkNotNull(keyCodec);
+    checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
+    checkNotNull(executor);
+
+    Map<K, V> values = new LinkedHashMap<>();
+    List<K> keys = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(source.openBufferedStream())) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a cache snapshot, or of an unsupported version");
+      }
+      boolean hasValues = in.readBoolean();
+      int count = in.readInt();
+      if (count < 0) {
+        throw new IOException("Corrupt cache snapshot: negative entry count " + count);
+      }
+      for (int i = 0; i < count; i++) {
+        K key = keyCodec.decode(readBytes(in));
+        if (!hasValues) {
+          keys.add(key);
+        } else if (valueCodec == null) {
+          keys.add(key);
+          readBytes(in); // the snapshot's value is not wanted
+        } else {
+          values.put(key, valueCodec.decode(readBytes(in)));
+        }
+      }
+    }
+
+    List<List<K>> batches = Lists.partition(Lists.reverse(keys), batchSize);
+    List<List<Map.Entry<K, V>>> valueBatches =
+        Lists.partition(Lists.reverse(new ArrayList<>(values.entrySet())), batchSize);
+    List<ListenableFuture<Integer>> futures = new ArrayList<>();
+    for (List<Map.Entry<K, V>> batch : valueBatches) {
+      futures.add(
+          Futures.submit(
+              () -> {
+                for (Map.Entry<K, V> entry : batch) {
+                  cache.put(entry.getKey(), entry.getValue());
+                }
+                return batch.size();
+              },
+              executor));
+    }
+    for (List<K> batch : batches) {
+      futures.add(Futures.submit(() -> cache.getAll(batch).size(), executor));
+    }
+
+    return Futures.whenAllComplete(futures)
+        .call(
+            () -> {
+              int warmed = 0;
+              for (ListenableFuture<Integer> future : futures) {
+                try {
+                  warmed += Futures.getDone(future);
+                } catch (ExecutionException e) {
+                  logger.log(Level.WARNING, "Exception thrown while warming cache", e.getCause());
+                }
+              }
+              return warmed;
+            },
+            directExecutor());
+  }
+
+  private static <K, V> List<Map.Entry<K, V>> hottestEntries(Cache<K, V> cache, int limit) {
+    if (cache instanceof LocalManualCache) {
+      return ((LocalManualCache<K, V>) cache).localCache.hottestEntries(limit);
+    }
+    List<Map.Entry<K, V>> entries = new ArrayList<>();
+    for (Map.Entry<K, V> entry : cache.asMap().entrySet()) {
+      if (entries.size() >= limit) {
+        break;
+      }
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static ByteBuffer readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Corrupt cache snapshot: negative length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+}
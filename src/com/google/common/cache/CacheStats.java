@@ -21,6 +21,7 @@ import static com.google.common.math.LongMath.saturatedSubtract;
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
+import com.google.common.primitives.ImmutableLongArray;
 import java.util.concurrent.Callable;
 import javax.annotation.CheckForNull;
 
@@ -53,6 +54,11 @@ import javax.annotation.CheckForNull;
  * LoadingCache#get(Object)}, {@link LoadingCache#getUnchecked(Object)}, {@link Cache#get(Object,
  * Callable)}, or {@link LoadingCache#getAll(Iterable)}.
  *
+ * <p>Caches built with {@link CacheBuilder#recordDetailedStats} additionally record a histogram of
+ * load times, the number of evictions for each {@link RemovalCause}, the time spent waiting for the
+ * locks of the cache's segments, and the hit rate of recent lookups. For other caches these
+ * statistics are zero.
+ *
  * @author Charles Fry
  * @since 10.0
  */
@@ -69,6 +75,26 @@ public final class CacheStats {
 
   private final long evictionCount;
 
+  /** Load counts per bucket of {@link #loadTimeHistogram}, or empty if not recorded. */
+  private final ImmutableLongArray loadTimeHistogram;
+
+  /** Eviction counts indexed by {@link RemovalCause#ordinal}, or empty if not recorded. */
+  private final ImmutableLongArray evictionCountByCause;
+
+  private final long lockWaitCount;
+
+  @SuppressWarnings("GoodTime") // should be a java.time.Duration
+  private final long totalLockWaitTime;
+
+  private final long recentHitCount;
+  private final long recentMissCount;
+
+  /** The number of buckets of {@link #loadTimeHistogram}. */
+  static final int LOAD_TIME_BUCKETS = 32;
+
+  /** The base 2 logarithm of the upper bound of the first bucket of the load time histogram. */
+  static final int LOAD_TIME_BUCKET_SHIFT = 10;
+
   /**
    * Constructs a new {@code CacheStats} instance.
    *
@@ -83,12 +109,53 @@ public final class CacheStats {
       long loadExceptionCount,
       long totalLoadTime,
       long evictionCount) {
+    this(
+        hitCount,
+        missCount,
+        loadSuccessCount,
+        loadExceptionCount,
+        totalLoadTime,
+        evictionCount,
+        ImmutableLongArray.of(),
+        ImmutableLongArray.of(),
+        0,
+        0,
+        0,
+        0);
+  }
+
+  /**
+   * Constructs a new {@code CacheStats} instance including detailed statistics. The arrays of
+   * counts are either empty, if they weren't recorded, or have an element per bucket or cause.
+   */
+  @SuppressWarnings("GoodTime") // should accept a java.time.Duration
+  CacheStats(
+      long hitCount,
+      long missCount,
+      long loadSuccessCount,
+      long loadExceptionCount,
+      long totalLoadTime,
+      long evictionCount,
+      ImmutableLongArray loadTimeHistogram,
+      ImmutableLongArray evictionCountByCause,
+      long lockWaitCount,
+      long totalLockWaitTime,
+      long recentHitCount,
+      long recentMissCount) {
     checkArgument(hitCount >= 0);
     checkArgument(missCount >= 0);
     checkArgument(loadSuccessCount >= 0);
     checkArgument(loadExceptionCount >= 0);
     checkArgument(totalLoadTime >= 0);
     checkArgument(evictionCount >= 0);
+    checkArgument(loadTimeHistogram.isEmpty() || loadTimeHistogram.length() == LOAD_TIME_BUCKETS);
+    checkArgument(
+        evictionCountByCause.isEmpty()
+            || evictionCountByCause.length() == RemovalCause.values().length);
+    checkArgument(lockWaitCount >= 0);
+    checkArgument(totalLockWaitTime >= 0);
+    checkArgument(recentHitCount >= 0);
+    checkArgument(recentMissCount >= 0);
 
     this.hitCount = hitCount;
     this.missCount = missCount;
@@ -96,6 +163,12 @@ public final class CacheStats {
     this.loadExceptionCount = loadExceptionCount;
     this.totalLoadTime = totalLoadTime;
     this.evictionCount = evictionCount;
+    this.loadTimeHistogram = loadTimeHistogram.trimmed();
+    this.evictionCountByCause = evictionCountByCause.trimmed();
+    this.lockWaitCount = lockWaitCount;
+    this.totalLockWaitTime = totalLockWaitTime;
+    this.recentHitCount = recentHitCount;
+    this.recentMissCount = recentMissCount;
   }
 
   /**
@@ -235,10 +308,125 @@ public final class CacheStats {
     return evictionCount;
   }
 
+  /**
+   * Returns the number of times an entry has been evicted for {@code cause}, or zero if the cache
+   * doesn't {@linkplain CacheBuilder#recordDetailedStats record detailed statistics}. The sum of
+   * these counts is {@link #evictionCount}.
+   *
+   * @since 32.0
+   */
+  public long evictionCount(RemovalCause cause) {
+    return evictionCountByCause.isEmpty() ? 0 : evictionCountByCause.get(cause.ordinal());
+  }
+
+  /**
+   * Returns a histogram of the times spent loading new values, or an empty array if the cache
+   * doesn't {@linkplain CacheBuilder#recordDetailedStats record detailed statistics}. Each element
+   * is the number of loads, successful or not, whose time fell into a bucket: the first bucket
+   * counts loads that took less than 2<sup>10</sup> nanoseconds (about a microsecond), the bucket
+   * at index {@code i} counts loads that took between 2<sup>i+9</sup> and 2<sup>i+10</sup>
+   * nanoseconds, and the last bucket at index 31 counts all loads that took longer than
+   * 2<sup>40</sup> nanoseconds (about 18 minutes).
+   *
+   * @since 32.0
+   */
+  public ImmutableLongArray loadTimeHistogram() {
+    return loadTimeHistogram;
+  }
+
+  /**
+   * Returns an upper bound of the given percentile of the times spent loading new values, in
+   * nanoseconds. The bound is the upper end of the bucket of {@link #loadTimeHistogram} holding the
+   * percentile, and so overestimates it by less than a factor of two. Returns zero if no load times
+   * were recorded.
+   *
+   * @param percentile the percentile to bound, between 0 and 100 inclusive; for example {@code 99}
+   *     for the 99th percentile
+   * @throws IllegalArgumentException if {@code percentile} is out of range
+   * @since 32.0
+   */
+  @SuppressWarnings("GoodTime") // should return a java.time.Duration
+  public long loadTimePercentile(double percentile) {
+    checkArgument(
+        percentile >= 0.0 && percentile <= 100.0, "percentile out of range: %s", percentile);
+    long total = 0;
+    for (int i = 0; i < loadTimeHistogram.length(); i++) {
+      total = saturatedAdd(total, loadTimeHistogram.get(i));
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(total * (percentile / 100.0)));
+    long seen = 0;
+    int bucket = 0;
+    for (; bucket < LOAD_TIME_BUCKETS - 1; bucket++) {
+      seen = saturatedAdd(seen, loadTimeHistogram.get(bucket));
+      if (seen >= rank) {
+        break;
+      }
+    }
+    return (bucket == LOAD_TIME_BUCKETS - 1)
+        ? Long.MAX_VALUE
+        : 1L << (bucket + LOAD_TIME_BUCKET_SHIFT);
+  }
+
+  /** Returns the bucket of {@link #loadTimeHistogram} that counts a load of {@code loadTime}. */
+  static int loadTimeBucket(long loadTime) {
+    int bucket = (Long.SIZE - Long.numberOfLeadingZeros(loadTime)) - LOAD_TIME_BUCKET_SHIFT;
+    return Math.min(Math.max(bucket, 0), LOAD_TIME_BUCKETS - 1);
+  }
+
+  /**
+   * Returns the number of times a thread had to wait for the lock of one of the cache's segments,
+   * because another thread held it. Frequent waits suggest raising {@link
+   * CacheBuilder#concurrencyLevel}. This is zero if the cache doesn't {@linkplain
+   * CacheBuilder#recordDetailedStats record detailed statistics}.
+   *
+   * @since 32.0
+   */
+  public long lockWaitCount() {
+    return lockWaitCount;
+  }
+
+  /**
+   * Returns the total number of nanoseconds threads have spent waiting for the locks of the cache's
+   * segments. This is zero if the cache doesn't {@linkplain CacheBuilder#recordDetailedStats record
+   * detailed statistics}.
+   *
+   * @since 32.0
+   */
+  @SuppressWarnings("GoodTime") // should return a java.time.Duration
+  public long totalLockWaitTime() {
+    return totalLockWaitTime;
+  }
+
+  /**
+   * Returns the number of lookups made during roughly the last minute, or zero if the cache doesn't
+   * {@linkplain CacheBuilder#recordDetailedStats record detailed statistics}.
+   *
+   * @since 32.0
+   */
+  public long recentRequestCount() {
+    return saturatedAdd(recentHitCount, recentMissCount);
+  }
+
+  /**
+   * Returns the ratio of the lookups made during roughly the last minute which were hits, or {@code
+   * 1.0} when {@code recentRequestCount == 0}. Unlike {@link #hitRate}, which covers the cache's
+   * whole lifetime, this reflects the current workload.
+   *
+   * @since 32.0
+   */
+  public double recentHitRate() {
+    long recentRequestCount = recentRequestCount();
+    return (recentRequestCount == 0) ? 1.0 : (double) recentHitCount / recentRequestCount;
+  }
+
   /**
    * Returns a new {@code CacheStats} representing the difference between this {@code CacheStats}
    * and {@code other}. Negative values, which aren't supported by {@code CacheStats} will be
-   * rounded up to zero.
+   * rounded up to zero. The recent lookup counts, which already describe a window of time, are
+   * those of this {@code CacheStats}.
    */
   public CacheStats minus(CacheStats other) {
     return new CacheStats(
@@ -247,7 +435,13 @@ public final class CacheStats {
         Math.max(0, saturatedSubtract(loadSuccessCount, other.loadSuccessCount)),
         Math.max(0, saturatedSubtract(loadExceptionCount, other.loadExceptionCount)),
         Math.max(0, saturatedSubtract(totalLoadTime, other.totalLoadTime)),
-        Math.max(0, saturatedSubtract(evictionCount, other.evictionCount)));
+        Math.max(0, saturatedSubtract(evictionCount, other.evictionCount)),
+        combine(loadTimeHistogram, other.loadTimeHistogram, false),
+        combine(evictionCountByCause, other.evictionCountByCause, false),
+        Math.max(0, saturatedSubtract(lockWaitCount, other.lockWaitCount)),
+        Math.max(0, saturatedSubtract(totalLockWaitTime, other.totalLockWaitTime)),
+        recentHitCount,
+        recentMissCount);
   }
 
   /**
@@ -267,13 +461,51 @@ public final class CacheStats {
         saturatedAdd(loadSuccessCount, other.loadSuccessCount),
         saturatedAdd(loadExceptionCount, other.loadExceptionCount),
         saturatedAdd(totalLoadTime, other.totalLoadTime),
-        saturatedAdd(evictionCount, other.evictionCount));
+        saturatedAdd(evictionCount, other.evictionCount),
+        combine(loadTimeHistogram, other.loadTimeHistogram, true),
+        combine(evictionCountByCause, other.evictionCountByCause, true),
+        saturatedAdd(lockWaitCount, other.lockWaitCount),
+        saturatedAdd(totalLockWaitTime, other.totalLockWaitTime),
+        saturatedAdd(recentHitCount, other.recentHitCount),
+        saturatedAdd(recentMissCount, other.recentMissCount));
+  }
+
+  /**
+   * Adds or subtracts two arrays of counts element-wise, rounding negative values up to zero. An
+   * empty array stands for an array of zeros.
+   */
+  private static ImmutableLongArray combine(
+      ImmutableLongArray counts, ImmutableLongArray other, boolean add) {
+    if (other.isEmpty()) {
+      return counts;
+    }
+    int length = Math.max(counts.length(), other.length());
+    ImmutableLongArray.Builder result = ImmutableLongArray.builder(length);
+    for (int i = 0; i < length; i++) {
+      long count = counts.isEmpty() ? 0 : counts.get(i);
+      result.add(
+          add
+              ? saturatedAdd(count, other.get(i))
+              : Math.max(0, saturatedSubtract(count, other.get(i))));
+    }
+    return result.build();
   }
 
   @Override
   public int hashCode() {
     return Objects.hashCode(
-        hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount);
+        hitCount,
+        missCount,
+        loadSuccessCount,
+        loadExceptionCount,
+        totalLoadTime,
+        evictionCount,
+        loadTimeHistogram,
+        evictionCountByCause,
+        lockWaitCount,
+        totalLockWaitTime,
+        recentHitCount,
+        recentMissCount);
   }
 
   @Override
@@ -285,20 +517,39 @@ public final class CacheStats {
           && loadSuccessCount == other.loadSuccessCount
           && loadExceptionCount == other.loadExceptionCount
           && totalLoadTime == other.totalLoadTime
-          && evictionCount == other.evictionCount;
+          && evictionCount == other.evictionCount
+          && loadTimeHistogram.equals(other.loadTimeHistogram)
+          && evictionCountByCause.equals(other.evictionCountByCause)
+          && lockWaitCount == other.lockWaitCount
+          && totalLockWaitTime == other.totalLockWaitTime
+          && recentHitCount == other.recentHitCount
+          && recentMissCount == other.recentMissCount;
     }
     return false;
   }
 
   @Override
   public String toString() {
-    return MoreObjects.toStringHelper(this)
-        .add("hitCount", hitCount)
-        .add("missCount", missCount)
-        .add("loadSuccessCount", loadSuccessCount)
-        .add("loadExceptionCount", loadExceptionCount)
-        .add("totalLoadTime", totalLoadTime)
-        .add("evictionCount", evictionCount)
-        .toString();
+    MoreObjects.ToStringHelper s =
+        MoreObjects.toStringHelper(this)
+            .add("hitCount", hitCount)
+            .add("missCount", missCount)
+            .add("loadSuccessCount", loadSuccessCount)
+            .add("loadExceptionCount", loadExceptionCount)
+            .add("totalLoadTime", totalLoadTime)
+            .add("evictionCount", evictionCount);
+    if (!loadTimeHistogram.isEmpty()) {
+      s.add("loadTimeHistogram", loadTimeHistogram);
+    }
+    if (!evictionCountByCause.isEmpty()) {
+      s.add("evictionCountByCause", evictionCountByCause);
+    }
+    if (lockWaitCount != 0) {
+      s.add("lockWaitCount", lockWaitCount).add("totalLockWaitTime", totalLockWaitTime);
+    }
+    if (recentHitCount != 0 || recentMissCount != 0) {
+      s.add("recentHitCount", recentHitCount).add("recentMissCount", recentMissCount);
+    }
+    return s.toString();
   }
 }
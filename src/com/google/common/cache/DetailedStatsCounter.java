@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.CacheStats.LOAD_TIME_BUCKETS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.primitives.ImmutableLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link StatsCounter} that records, in addition to the counts of a {@link
+ * AbstractCache.SimpleStatsCounter SimpleStatsCounter}, a histogram of load times, evictions by
+ * cause, lock waits and the lookups of roughly the last minute. Like the simple counter, it only
+ * updates striped {@link LongAddable} counters, so concurrent updates rarely contend.
+ *
+ * <p>Recent lookups are counted in a ring of time slots, each of which is replaced once the ticker
+ * has moved on by a full ring. Lookups that race with the replacement of their slot may be lost,
+ * which is acceptable for a rate.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class DetailedStatsCounter implements StatsCounter {
+  /** The number of time slots whose lookups are included in the recent hit rate. */
+  static final int RECENT_SLOTS = 6;
+
+  /** The length of a time slot of the recent hit rate. */
+  static final long RECENT_SLOT_NANOS = SECONDS.toNanos(10);
+
+  private static final RemovalCause[] CAUSES = RemovalCause.values();
+
+  private final LongAddable hitCount = LongAddables.create();
+  private final LongAddable missCount = LongAddables.create();
+  private final LongAddable loadSuccessCount = LongAddables.create();
+  private final LongAddable loadExceptionCount = LongAddables.create();
+  private final LongAddable totalLoadTime = LongAddables.create();
+  private final LongAddable evictionCount = LongAddables.create();
+  private final LongAddable[] loadTimeHistogram = newCounters(LOAD_TIME_BUCKETS);
+  private final LongAddable[] evictionCountByCause = newCounters(CAUSES.length);
+  private final LongAddable lockWaitCount = LongAddables.create();
+  private final LongAddable totalLockWaitTime = LongAddables.create();
+
+  private final Ticker ticker;
+  private final AtomicReferenceArray<Slot> recentSlots = new AtomicReferenceArray<>(RECENT_SLOTS);
+
+  /** The lookups made during one time slot. */
+  static final class Slot {
+    final long index;
+    final LongAddable hitCount = LongAddables.create();
+    final LongAddable missCount = LongAddables.create();
+
+    Slot(long index) {
+      this.index = index;
+    }
+  }
+
+  DetailedStatsCounter(Ticker ticker) {
+    this.ticker = ticker;
+  }
+
+  private static LongAddable[] newCounters(int length) {
+    LongAddable[] counters = new LongAddable[length];
+    for (int i = 0; i < length; i++) {
+      counters[i] = LongAddables.create();
+    }
+    return counters;
+  }
+
+  /** Returns the time slot of the current ticker time, starting it if necessary. */
+  private Slot currentSlot() {
+    long index = Math.floorDiv(ticker.read(), RECENT_SLOT_NANOS);
+    int i = (int) Math.floorMod(index, (long) RECENT_SLOTS);
+    Slot slot = recentSlots.get(i);
+    if (slot == null || slot.index < index) {
+      Slot started = new Slot(index);
+      if (recentSlots.compareAndSet(i, slot, started)) {
+        return started;
+      }
+      slot = recentSlots.get(i);
+    }
+    // if a slow thread sees a slot started after its ticker read, it's counted a bit late
+    return slot;
+  }
+
+  @Override
+  public void recordHits(int count) {
+    hitCount.add(count);
+    currentSlot().hitCount.add(count);
+  }
+
+  @Override
+  public void recordMisses(int count) {
+    missCount.add(count);
+    currentSlot().missCount.add(count);
+  }
+
+  @SuppressWarnings("GoodTime") // b/122668874
+  @Override
+  public void recordLoadSuccess(long loadTime) {
+    loadSuccessCount.increment();
+    totalLoadTime.add(loadTime);
+    loadTimeHistogram[CacheStats.loadTimeBucket(loadTime)].increment();
+  }
+
+  @SuppressWarnings("GoodTime") // b/122668874
+  @Override
+  public void recordLoadException(long loadTime) {
+    loadExceptionCount.increment();
+    totalLoadTime.add(loadTime);
+    loadTimeHistogram[CacheStats.loadTimeBucket(loadTime)].increment();
+  }
+
+  @Override
+  public void recordEviction() {
+    evictionCount.increment();
+  }
+
+  @Override
+  public void recordEviction(RemovalCause cause) {
+    evictionCount.increment();
+    evictionCountByCause[cause.ordinal()].increment();
+  }
+
+  @SuppressWarnings("GoodTime") // b/122668874
+  @Override
+  public void recordLockWait(long waitTime) {
+    lockWaitCount.increment();
+    totalLockWaitTime.add(waitTime);
+  }
+
+  @Override
+  public CacheStats snapshot() {
+    long recentHitCount = 0;
+    long recentMissCount = 0;
+    long oldestIndex = Math.floorDiv(ticker.read(), RECENT_SLOT_NANOS) - RECENT_SLOTS;
+    for (int i = 0; i < RECENT_SLOTS; i++) {
+      Slot slot = recentSlots.get(i);
+      if (slot != null && slot.index > oldestIndex) {
+        recentHitCount += slot.hitCount.sum();
+        recentMissCount += slot.missCount.sum();
+      }
+    }
+    return new CacheStats(
+        negativeToMaxValue(hitCount.sum()),
+        negativeToMaxValue(missCount.sum()),
+        negativeToMaxValue(loadSuccessCount.sum()),
+        negativeToMaxValue(loadExceptionCount.sum()),
+        negativeToMaxValue(totalLoadTime.sum()),
+        negativeToMaxValue(evictionCount.sum()),
+        sums(loadTimeHistogram),
+        sums(evictionCountByCause),
+        negativeToMaxValue(lockWaitCount.sum()),
+        negativeToMaxValue(totalLockWaitTime.sum()),
+        negativeToMaxValue(recentHitCount),
+        negativeToMaxValue(recentMissCount));
+  }
+
+  private static ImmutableLongArray sums(LongAddable[] counters) {
+    ImmutableLongArray.Builder sums = ImmutableLongArray.builder(counters.length);
+    for (LongAddable counter : counters) {
+      sums.add(negativeToMaxValue(counter.sum()));
+    }
+    return sums.build();
+  }
+
+  private static long negativeToMaxValue(long value) {
+    return (value >= 0) ? value : Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+
+/**
+ * Calculates when cache entries expire. A single expiration time is retained for each entry, so
+ * that the lifetime of an entry may be extended or reduced by subsequent evaluations.
+ *
+ * <p>All durations and times are in nanoseconds, as read from the cache's {@link
+ * com.google.common.base.Ticker Ticker}. Returning {@code currentDuration} from {@link
+ * #expireAfterUpdate} or {@link #expireAfterRead} leaves the entry's expiration time unchanged.
+ * Durations are silently capped at approximately 146 years, and negative durations are treated as
+ * zero.
+ *
+ * <p>{@link #expireAfterCreate} and {@link #expireAfterUpdate} are invoked while the cache holds a
+ * lock on the entry's segment. {@link #expireAfterRead} is usually invoked without that lock, and
+ * may run concurrently with other reads or with a write of the same entry; if the entry changed in
+ * the meantime, it is invoked again with the new value. All of these methods should be fast, free
+ * of side effects, and must not access the cache.
+ *
+ * @since 32.0
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+public interface Expiry<K, V> {
+
+  /**
+   * Returns the duration until the entry should be automatically removed from the cache after its
+   * creation or load.
+   *
+   * @param key the key of the entry
+   * @param value the value of the entry
+   * @param currentTime the current ticker time, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterCreate(K key, V value, long currentTime);
+
+  /**
+   * Returns the duration until the entry should be automatically removed from the cache after the
+   * replacement of its value, either explicitly or by a refresh.
+   *
+   * @param key the key of the entry
+   * @param value the new value of the entry
+   * @param currentTime the current ticker time, in nanoseconds
+   * @param currentDuration the entry's current remaining duration, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterUpdate(K key, V value, long currentTime, long currentDuration);
+
+  /**
+   * Returns the duration until the entry should be automatically removed from the cache after it
+   * was read.
+   *
+   * @param key the key of the entry
+   * @param value the value of the entry
+   * @param currentTime the current ticker time, in nanoseconds
+   * @param currentDuration the entry's current remaining duration, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterRead(K key, V value, long currentTime, long currentDuration);
+}
@@ -94,6 +94,12 @@ public abstract class ForwardingCache<K, V> extends ForwardingObject implements
     delegate().invalidateAll();
   }
 
+  /** @since 32.0 */
+  @Override
+  public void invalidateByTag(Object tag) {
+    delegate().invalidateByTag(tag);
+  }
+
   @Override
   public long size() {
     return delegate().size();
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
+import com.google.common.cache.LocalCache.LoadingValueReference;
+import com.google.common.cache.LocalCache.Segment;
+import com.google.common.util.concurrent.Futures;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Groups concurrent cache misses on distinct keys into a single call to {@link
+ * CacheLoader#loadAll}.
+ *
+ * <p>The first miss to arrive opens a batch and becomes its leader: it waits until either the
+ * batch holds {@code maxBatchSize} keys or {@code maxDelayNanos} have elapsed, and then loads the
+ * whole batch on its own thread. Misses arriving in the meantime join the batch and simply wait for
+ * their {@link LoadingValueReference} to be completed, exactly as they would wait for a concurrent
+ * load of the same key. If the loader does not implement {@code loadAll}, the leader falls back to
+ * loading the batched keys individually.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class LoadBatcher<K, V> {
+  final CacheLoader<? super K, V> loader;
+  final int maxBatchSize;
+  final long maxDelayNanos;
+
+  final ReentrantLock lock = new ReentrantLock();
+
+  /** Signaled when the open batch is closed because it became full. */
+  final Condition closed = lock.newCondition();
+
+  /** The batch that new misses join. */
+  @GuardedBy("lock")
+  List<Request<K, V>> batch = new ArrayList<>();
+
+  LoadBatcher(CacheLoader<? super K, V> loader, int maxBatchSize, long maxDelayNanos) {
+    this.loader = loader;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelayNanos;
+  }
+
+  /** A pending load of a single key. */
+  static final class Request<K, V> {
+    final Segment<K, V> segment;
+    final K key;
+    final int hash;
+    final LoadingValueReference<K, V> loadingValueReference;
+
+    Request(
+        Segment<K, V> segment,
+        K key,
+        int hash,
+        LoadingValueReference<K, V> loadingValueReference) {
+      this.segment = segment;
+      this.key = key;
+      this.hash = hash;
+      this.loadingValueReference = loadingValueReference;
+    }
+  }
+
+  /**
+   * Loads the value of {@code key} as part of a batch, blocking until it is available. The caller
+   * must have installed {@code loadingValueReference} for {@code key} in {@code segment}.
+   */
+  V load(Segment<K, V> segment, K key, int hash, LoadingValueReference<K, V> loadingValueReference)
+      throws ExecutionException {
+    loadingValueReference.stopwatch.start();
+    List<Request<K, V>> leading = null;
+    boolean interrupted = false;
+    lock.lock();
+    try {
+      List<Request<K, V>> current = batch;
+      current.add(new Request<>(segment, key, hash, loadingValueReference));
+      if (current.size() >= maxBatchSize) {
+        // close the batch, so that later misses start a new one
+        batch = new ArrayList<>();
+        closed.signalAll();
+      }
+      if (current.size() == 1) {
+        long remainingNanos = maxDelayNanos;
+        while ((batch == current) && (remainingNanos > 0)) {
+          try {
+            remainingNanos = closed.awaitNanos(remainingNanos);
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (batch == current) {
+          batch = new ArrayList<>();
+        }
+        leading = current;
+      }
+    } finally {
+      lock.unlock();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if (leading != null) {
+      loadBatch(leading);
+    }
+    V value = getUninterruptibly(loadingValueReference.futureValue);
+    if (value == null) {
+      throw new InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
+    }
+    return value;
+  }
+
+  /** Loads the values of a closed batch, completing all of its requests. */
+  void loadBatch(List<Request<K, V>> requests) {
+    Set<K> keys = new LinkedHashSet<>();
+    for (Request<K, V> request : requests) {
+      keys.add(request.key);
+    }
+
+    Map<K, V> result;
+    try {
+      @SuppressWarnings("unchecked") // safe since all keys extend K
+      Map<K, V> map = (Map<K, V>) loader.loadAll(keys);
+      result = map;
+    } catch (UnsupportedLoadingOperationException e) {
+      // loadAll not implemented, fallback to load
+      for (Request<K, V> request : requests) {
+        loadIndividually(request);
+      }
+      return;
+    } catch (Throwable t) {
+      for (Request<K, V> request : requests) {
+        fail(request, t);
+      }
+      if (t instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+
+    if (result == null) {
+      InvalidCacheLoadException e =
+          new InvalidCacheLoadException(loader + " returned null map from loadAll");
+      for (Request<K, V> request : requests) {
+        fail(request, e);
+      }
+      return;
+    }
+    for (Request<K, V> request : requests) {
+      V value = result.get(request.key);
+      if (value == null) {
+        fail(
+            request,
+            new InvalidCacheLoadException("loadAll failed to return a value for " + request.key));
+      } else {
+        complete(request, value);
+      }
+    }
+  }
+
+  void loadIndividually(Request<K, V> request) {
+    V value;
+    try {
+      value = loader.load(request.key);
+    } catch (Throwable t) {
+      fail(request, t);
+      if (t instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+    if (value == null) {
+      fail(
+          request,
+          new InvalidCacheLoadException("CacheLoader returned null for key " + request.key + "."));
+    } else {
+      complete(request, value);
+    }
+  }
+
+  /** Stores a loaded value and completes the waiting callers. */
+  static <K, V> void complete(Request<K, V> request, V value) {
+    try {
+      request.segment.getAndRecordStats(
+          request.key, request.hash, request.loadingValueReference, Futures.immediateFuture(value));
+    } catch (ExecutionException e) {
+      throw new AssertionError("impossible; Futures.immediateFuture can't throw");
+    }
+    // a no-op unless the store was clobbered by a concurrent write
+    request.loadingValueReference.set(value);
+  }
+
+  /** Fails the waiting callers and removes the loading entry. */
+  static <K, V> void fail(Request<K, V> request, Throwable t) {
+    LoadingValueReference<K, V> loadingValueReference = request.loadingValueReference;
+    loadingValueReference.setException(t);
+    request.segment.statsCounter.recordLoadException(loadingValueReference.elapsedNanos());
+    request.segment.removeLoadingValue(request.key, request.hash, loadingValueReference);
+  }
+}
@@ -28,20 +28,23 @@ import com.google.common.annotations.GwtIncompatible;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Equivalence;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
 import com.google.common.base.Ticker;
-import com.google.common.cache.AbstractCache.SimpleStatsCounter;
 import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.CacheBuilder.NullListener;
 import com.google.common.cache.CacheBuilder.OneWeigher;
 import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
 import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
 import com.google.common.collect.AbstractSequentialIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.math.LongMath;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.AsyncCallable;
 import com.google.common.util.concurrent.ExecutionError;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -54,17 +57,22 @@ import com.google.j2objc.annotations.Weak;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
+import java.math.RoundingMode;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractQueue;
 import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
@@ -73,14 +81,22 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -127,6 +143,18 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
    * rate, and ability to be implemented with O(1) time complexity. The initial LRU implementation
    * operates per-segment rather than globally for increased implementation simplicity. We expect
    * the cache hit rate to be similar to that of a global LRU algorithm.
+   *
+   * LRU is not scan resistant: a single pass over many one-hit keys flushes the working set. When
+   * requested, a segment instead uses W-TinyLFU, which keeps a small LRU admission window in front
+   * of a segmented LRU main region. Entries evicted from the window only enter the main region if
+   * a count-min sketch of recent access frequencies estimates them to be more popular than the main
+   * region's own eviction victim. All of this bookkeeping reuses the access queue links and is O(1)
+   * per operation.
+   *
+   * Fixed expiration is enforced by walking the head of the write or access queue, which is ordered
+   * by expiration time. Variable, per-entry expiration has no such order, so the write queue links
+   * are instead used to place entries into the buckets of a hierarchical timer wheel, which is
+   * advanced during routine cleanup at amortized O(1) cost per entry.
    */
 
   // Constants
@@ -160,24 +188,42 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   // TODO(fry): empirically optimize this
   static final int DRAIN_MAX = 16;
 
-  // Fields
+  /** The maximum duration before an entry expires, approximately 146 years. */
+  static final long MAXIMUM_EXPIRY = Long.MAX_VALUE >> 1;
 
-  static final Logger logger = Logger.getLogger(LocalCache.class.getName());
+  /** The most segments per available processor that an adaptive cache splits into. */
+  static final int MAX_SEGMENTS_PER_PROCESSOR = 4;
+
+  /** How often an adaptive cache evaluates the contention of its segment locks. */
+  static final long CONTENTION_POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
 
   /**
-   * Mask value for indexing into segments. The upper bits of a key's hash code are used to choose
-   * the segment.
+   * An adaptive cache doubles its segments when more than one in this many lock acquisitions had
+   * to wait since the last poll.
    */
-  final int segmentMask;
+  static final int SPLIT_CONTENTION_RATIO = 32;
+
+  /** The fewest lock acquisitions between polls for which an adaptive cache splits its segments. */
+  static final int MIN_ACQUISITIONS_TO_SPLIT = 1024;
 
   /**
-   * Shift value for indexing within segments. Helps prevent entries that end up in the same segment
-   * from also ending up in the same bucket.
+   * An adaptive cache halves its segments when fewer than one in this many lock acquisitions had
+   * to wait, for {@link #QUIET_POLLS_TO_MERGE} polls in a row.
    */
-  final int segmentShift;
+  static final int MERGE_CONTENTION_RATIO = 1024;
+
+  static final int QUIET_POLLS_TO_MERGE = 30;
+
+  // Fields
+
+  static final Logger logger = Logger.getLogger(LocalCache.class.getName());
 
-  /** The segments, each of which is a specialized hash table. */
-  final Segment<K, V>[] segments;
+  /**
+   * The segments, each of which is a specialized hash table. Their number is a power of two, and
+   * the upper bits of a key's hash code are used to choose the segment. The array is only replaced
+   * when an adaptive cache {@linkplain #resizeSegments resizes} its segments.
+   */
+  volatile Segment<K, V>[] segments;
 
   /** The concurrency level. */
   final int concurrencyLevel;
@@ -200,6 +246,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** Weigher to weigh cache entries. */
   final Weigher<K, V> weigher;
 
+  /** Whether size-based eviction uses the W-TinyLFU policy rather than LRU. */
+  final boolean windowTinyLfu;
+
   /** How long after the last access to an entry the map will retain that entry. */
   final long expireAfterAccessNanos;
 
@@ -209,6 +258,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** How long after the last write an entry becomes a candidate for refresh. */
   final long refreshNanos;
 
+  /** The fraction of {@link #refreshNanos} over which the refresh times of entries are spread. */
+  final double refreshJitter;
+
+  /** The XFetch factor of early refreshes, or non-positive if entries aren't refreshed early. */
+  final double earlyRefreshBeta;
+
+  /** Computes per-entry expiration times, or null if entries don't expire variably. */
+  final @Nullable Expiry<K, V> expiry;
+
   /** Entries waiting to be consumed by the removal listener. */
   // TODO(fry): define a new type which creates event objects and automates the clear logic
   final Queue<RemovalNotification<K, V>> removalNotificationQueue;
@@ -234,6 +292,107 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** The default cache loader to use on loading operations. */
   final @Nullable CacheLoader<? super K, V> defaultLoader;
 
+  /** Groups misses of the default loader into batches, or null if loads are not batched. */
+  final @Nullable LoadBatcher<K, V> loadBatcher;
+
+  /** Groups refreshes of the default loader into batches, or null if they are not batched. */
+  final @Nullable RefreshBatcher<K, V> refreshBatcher;
+
+  /**
+   * The executor on which getAll loads keys individually when the loader doesn't implement
+   * loadAll, or null if they are loaded sequentially on the calling thread.
+   */
+  final @Nullable Executor getAllExecutor;
+
+  /** The maximum number of individual loads that getAll runs on {@link #getAllExecutor} at once. */
+  final int getAllParallelism;
+
+  /** Holds the entries evicted by size, or null if they are discarded. */
+  final @Nullable SpilloverTier<K, V> spillover;
+
+  /** Calculates the tags of entries, or null if entries aren't tagged. */
+  final @Nullable Tagger<K, V> tagger;
+
+  /** Whether segments record the time spent waiting for their lock. */
+  final boolean recordsLockWait;
+
+  /**
+   * The executor running maintenance and removal notifications, or null if they are run by the
+   * threads using the cache.
+   */
+  final @Nullable Executor maintenanceExecutor;
+
+  /** Whether a task delivering removal notifications is pending on {@link #maintenanceExecutor}. */
+  final AtomicBoolean notificationsScheduled = new AtomicBoolean();
+
+  /** The share of a weight budget shared with other caches, or null if there is none. */
+  final WeightBudget.@Nullable Member budgetMember;
+
+  /**
+   * The monitor shrinking the cache's maximum weight while the heap is under pressure, or null if
+   * the cache doesn't evict on memory pressure.
+   */
+  final @Nullable MemoryPressureMonitor memoryPressureMonitor;
+
+  /**
+   * The segment that {@link #shedWeight} starts from. Only accessed by the thread enforcing the
+   * cache's weight budget, while it holds the budget's enforcement lock.
+   */
+  int budgetShedIndex;
+
+  /** Supplies the stats counters of new segments. */
+  final Supplier<? extends StatsCounter> statsCounterSupplier;
+
+  /** Whether the number of segments adapts to the contention of their locks. */
+  final boolean adaptsConcurrency;
+
+  /** The most segments that an adaptive cache splits into. */
+  final int maxSegmentCount;
+
+  /** Held while deciding whether to resize the segments of an adaptive cache, and resizing them. */
+  final ReentrantLock resizeLock = new ReentrantLock();
+
+  /** When the contention of an adaptive cache is next evaluated, in {@link System#nanoTime}. */
+  final AtomicLong nextContentionPollNanos = new AtomicLong(System.nanoTime());
+
+  /** The lock acquisitions counted by the segments when they were last polled. */
+  @GuardedBy("resizeLock")
+  long polledLockAcquisitions;
+
+  @GuardedBy("resizeLock")
+  long polledContendedLockAcquisitions;
+
+  /** The number of polls in a row that found little contention. */
+  @GuardedBy("resizeLock")
+  int quietContentionPolls;
+
+  /**
+   * The segments whose statistics {@link LocalManualCache#stats} sums, published as a whole so that
+   * a resize never hides the statistics of the segments it replaces.
+   */
+  volatile StatsSources<K, V> statsSources;
+
+  /**
+   * The segments of the cache together with the statistics of the segments replaced by resizes.
+   * The counters of the segments retired by the latest resize are still read, as a reader may
+   * record a hit in a retired segment shortly after the resize; those retired earlier are folded
+   * into a snapshot by the next resize.
+   */
+  static final class StatsSources<K, V> {
+    final Segment<K, V>[] segments;
+    final ImmutableList<StatsCounter> retiredCounters;
+    final @Nullable CacheStats foldedStats;
+
+    StatsSources(
+        Segment<K, V>[] segments,
+        ImmutableList<StatsCounter> retiredCounters,
+        @Nullable CacheStats foldedStats) {
+      this.segments = segments;
+      this.retiredCounters = retiredCounters;
+      this.foldedStats = foldedStats;
+    }
+  }
+
   /**
    * Creates a new, empty map with the specified strategy, initial capacity and concurrency level.
    */
@@ -249,9 +408,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     maxWeight = builder.getMaximumWeight();
     weigher = builder.getWeigher();
+    windowTinyLfu = builder.usesWindowTinyLfu();
     expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
     expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
     refreshNanos = builder.getRefreshNanos();
+    refreshJitter = builder.getRefreshJitter();
+    earlyRefreshBeta = builder.getEarlyRefreshBeta();
+    expiry = builder.getExpiry();
+    WeightBudget weightBudget = builder.getWeightBudget();
+    budgetMember = (weightBudget == null) ? null : weightBudget.newMember(this);
+    memoryPressureMonitor =
+        builder.evictsOnMemoryPressure() ? MemoryPressureMonitor.getInstance() : null;
 
     removalListener = builder.getRemovalListener();
     removalNotificationQueue =
@@ -261,8 +428,33 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     ticker = builder.getTicker(recordsTime());
     entryFactory = EntryFactory.getFactory(keyStrength, usesAccessEntries(), usesWriteEntries());
-    globalStatsCounter = builder.getStatsCounterSupplier().get();
+    statsCounterSupplier = builder.getStatsCounterSupplier();
+    globalStatsCounter = statsCounterSupplier.get();
+    recordsLockWait = builder.isRecordingDetailedStats();
+    maintenanceExecutor = builder.getMaintenanceExecutor();
     defaultLoader = loader;
+    getAllExecutor = builder.getGetAllExecutor();
+    getAllParallelism = builder.getGetAllParallelism();
+    loadBatcher =
+        (loader != null && builder.batchesLoads())
+            ? new LoadBatcher<K, V>(loader, builder.getMaxBatchSize(), builder.getBatchDelayNanos())
+            : null;
+    refreshBatcher =
+        (loader != null && builder.batchesRefreshes())
+            ? new RefreshBatcher<K, V>(
+                loader,
+                builder.getMaxRefreshBatchSize(),
+                builder.getRefreshBatchDelayNanos(),
+                builder.getRefreshExecutor())
+            : null;
+    spillover = (builder.getSpilloverFile() == null) ? null : openSpillover(builder);
+    tagger = builder.getTagger();
+    adaptsConcurrency = builder.adaptsConcurrency();
+    maxSegmentCount =
+        Math.min(
+            MAX_SEGMENTS,
+            Integer.highestOneBit(
+                MAX_SEGMENTS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors()));
 
     int initialCapacity = Math.min(builder.getInitialCapacity(), MAXIMUM_CAPACITY);
     if (evictsBySize() && !customWeigher()) {
@@ -274,16 +466,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     // entries. The special casing for size-based eviction is only necessary because that eviction
     // happens per segment instead of globally, so too many segments compared to the maximum size
     // will result in random eviction behavior.
-    int segmentShift = 0;
     int segmentCount = 1;
-    while (segmentCount < concurrencyLevel && (!evictsBySize() || segmentCount * 20 <= maxWeight)) {
-      ++segmentShift;
+    while (segmentCount < concurrencyLevel && canSplitSegments(segmentCount)) {
       segmentCount <<= 1;
     }
-    this.segmentShift = 32 - segmentShift;
-    segmentMask = segmentCount - 1;
-
-    this.segments = newSegmentArray(segmentCount);
 
     int segmentCapacity = initialCapacity / segmentCount;
     if (segmentCapacity * segmentCount < initialCapacity) {
@@ -295,23 +481,55 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       segmentSize <<= 1;
     }
 
+    this.segments = createSegments(segmentCount, segmentSize);
+    statsSources = new StatsSources<>(segments, ImmutableList.<StatsCounter>of(), null);
+    if (budgetMember != null) {
+      budgetMember.attach();
+    }
+    if (memoryPressureMonitor != null) {
+      memoryPressureMonitor.register(this);
+    }
+  }
+
+  /**
+   * Returns whether {@code segmentCount} segments may be doubled, keeping at least 10 entries per
+   * segment in caches bounded by size.
+   */
+  boolean canSplitSegments(int segmentCount) {
+    return segmentCount < MAX_SEGMENTS && (!evictsBySize() || segmentCount * 20 <= maxWeight);
+  }
+
+  /**
+   * Creates {@code segmentCount} segments with tables of {@code segmentSize} buckets, among which
+   * the maximum weight of the cache is divided.
+   */
+  Segment<K, V>[] createSegments(int segmentCount, int segmentSize) {
+    Segment<K, V>[] segments = newSegmentArray(segmentCount);
     if (evictsBySize()) {
       // Ensure sum of segment max weights = overall max weights
       long maxSegmentWeight = maxWeight / segmentCount + 1;
       long remainder = maxWeight % segmentCount;
-      for (int i = 0; i < this.segments.length; ++i) {
+      for (int i = 0; i < segments.length; ++i) {
         if (i == remainder) {
           maxSegmentWeight--;
         }
-        this.segments[i] =
-            createSegment(segmentSize, maxSegmentWeight, builder.getStatsCounterSupplier().get());
+        segments[i] = createSegment(segmentSize, maxSegmentWeight, statsCounterSupplier.get());
       }
     } else {
-      for (int i = 0; i < this.segments.length; ++i) {
-        this.segments[i] =
-            createSegment(segmentSize, UNSET_INT, builder.getStatsCounterSupplier().get());
+      for (int i = 0; i < segments.length; ++i) {
+        segments[i] = createSegment(segmentSize, UNSET_INT, statsCounterSupplier.get());
       }
     }
+    return segments;
+  }
+
+  static <K, V> SpilloverTier<K, V> openSpillover(CacheBuilder<? super K, ? super V> builder) {
+    SpilloverCodec<V> codec = builder.getSpilloverCodec();
+    try {
+      return new SpilloverTier<>(builder.getSpilloverFile(), builder.getSpilloverMaxBytes(), codec);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to map spillover file", e);
+    }
   }
 
   boolean evictsBySize() {
@@ -322,8 +540,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return weigher != OneWeigher.INSTANCE;
   }
 
+  boolean usesWindowTinyLfu() {
+    return windowTinyLfu && evictsBySize();
+  }
+
   boolean expires() {
-    return expiresAfterWrite() || expiresAfterAccess();
+    return expiresAfterWrite() || expiresAfterAccess() || expiresVariably();
   }
 
   boolean expiresAfterWrite() {
@@ -334,16 +556,45 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return expireAfterAccessNanos > 0;
   }
 
+  boolean expiresVariably() {
+    return expiry != null;
+  }
+
   boolean refreshes() {
     return refreshNanos > 0;
   }
 
+  boolean refreshesEarly() {
+    return earlyRefreshBeta > 0;
+  }
+
+  /**
+   * Returns how long after its last write {@code entry} becomes a candidate for refresh. With a
+   * refresh jitter, the time is drawn from the entry's hash and write time, so that it stays the
+   * same until the entry is written again.
+   */
+  long refreshNanosOf(ReferenceEntry<K, V> entry) {
+    if (refreshJitter == 0) {
+      return refreshNanos;
+    }
+    long bits = entry.getWriteTime() + entry.getHash() * 0x9E3779B97F4A7C15L;
+    bits = (bits ^ (bits >>> 33)) * 0xFF51AFD7ED558CCDL;
+    bits = (bits ^ (bits >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    bits ^= bits >>> 33;
+    double u = (bits >>> 11) * 0x1.0p-53; // uniform in [0, 1)
+    return refreshNanos - (long) (refreshNanos * refreshJitter * u);
+  }
+
   boolean usesAccessQueue() {
-    return expiresAfterAccess() || evictsBySize();
+    return expiresAfterAccess() || evictsBySize() || sharesWeightBudget();
+  }
+
+  boolean sharesWeightBudget() {
+    return budgetMember != null;
   }
 
   boolean usesWriteQueue() {
-    return expiresAfterWrite();
+    return expiresAfterWrite() || expiresVariably();
   }
 
   boolean recordsWrite() {
@@ -355,7 +606,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean recordsTime() {
-    return recordsWrite() || recordsAccess();
+    return recordsWrite() || recordsAccess() || expiresVariably();
   }
 
   boolean usesWriteEntries() {
@@ -601,6 +852,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       // TODO(fry): when we link values instead of entries this method can go
       // away, as can connectAccessOrder, nullifyAccessOrder.
       newEntry.setAccessTime(original.getAccessTime());
+      newEntry.setAccessRegion(original.getAccessRegion());
 
       connectAccessOrder(original.getPreviousInAccessQueue(), newEntry);
       connectAccessOrder(newEntry, original.getNextInAccessQueue());
@@ -613,6 +865,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       // TODO(fry): when we link values instead of entries this method can go
       // away, as can connectWriteOrder, nullifyWriteOrder.
       newEntry.setWriteTime(original.getWriteTime());
+      newEntry.setExpirationTime(original.getExpirationTime());
 
       connectWriteOrder(original.getPreviousInWriteQueue(), newEntry);
       connectWriteOrder(newEntry, original.getNextInWriteQueue());
@@ -778,6 +1031,14 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     @Override
     public void setPreviousInAccessQueue(ReferenceEntry<Object, Object> previous) {}
 
+    @Override
+    public int getAccessRegion() {
+      return 0;
+    }
+
+    @Override
+    public void setAccessRegion(int region) {}
+
     @Override
     public long getWriteTime() {
       return 0;
@@ -786,6 +1047,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     @Override
     public void setWriteTime(long time) {}
 
+    @Override
+    public long getExpirationTime() {
+      return 0;
+    }
+
+    @Override
+    public void setExpirationTime(long time) {}
+
+    @Override
+    public boolean casExpirationTime(long expect, long update) {
+      return false;
+    }
+
     @Override
     public ReferenceEntry<Object, Object> getNextInWriteQueue() {
       return this;
@@ -859,6 +1133,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public int getAccessRegion() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setAccessRegion(int region) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public long getWriteTime() {
       throw new UnsupportedOperationException();
@@ -869,6 +1153,21 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public long getExpirationTime() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setExpirationTime(long time) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean casExpirationTime(long expect, long update) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public ReferenceEntry<K, V> getNextInWriteQueue() {
       throw new UnsupportedOperationException();
@@ -1023,6 +1322,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     public void setPreviousInAccessQueue(ReferenceEntry<K, V> previous) {
       this.previousAccess = previous;
     }
+
+    // Guarded By Segment.this
+    int accessRegion;
+
+    @Override
+    public int getAccessRegion() {
+      return accessRegion;
+    }
+
+    @Override
+    public void setAccessRegion(int region) {
+      this.accessRegion = region;
+    }
   }
 
   static final class StrongWriteEntry<K, V> extends StrongEntry<K, V> {
@@ -1044,6 +1356,27 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.writeTime = time;
     }
 
+    volatile long expirationTime = Long.MAX_VALUE;
+
+    @Override
+    public long getExpirationTime() {
+      return expirationTime;
+    }
+
+    @Override
+    public void setExpirationTime(long time) {
+      this.expirationTime = time;
+    }
+
+    @Override
+    public boolean casExpirationTime(long expect, long update) {
+      return EXPIRATION_TIME_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    @SuppressWarnings("rawtypes")
+    static final AtomicLongFieldUpdater<StrongWriteEntry> EXPIRATION_TIME_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(StrongWriteEntry.class, "expirationTime");
+
     // Guarded By Segment.this
     @Weak ReferenceEntry<K, V> nextWrite = nullEntry();
 
@@ -1116,6 +1449,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.previousAccess = previous;
     }
 
+    // Guarded By Segment.this
+    int accessRegion;
+
+    @Override
+    public int getAccessRegion() {
+      return accessRegion;
+    }
+
+    @Override
+    public void setAccessRegion(int region) {
+      this.accessRegion = region;
+    }
+
     // The code below is exactly the same for each write entry type.
 
     volatile long writeTime = Long.MAX_VALUE;
@@ -1130,6 +1476,27 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.writeTime = time;
     }
 
+    volatile long expirationTime = Long.MAX_VALUE;
+
+    @Override
+    public long getExpirationTime() {
+      return expirationTime;
+    }
+
+    @Override
+    public void setExpirationTime(long time) {
+      this.expirationTime = time;
+    }
+
+    @Override
+    public boolean casExpirationTime(long expect, long update) {
+      return EXPIRATION_TIME_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    @SuppressWarnings("rawtypes")
+    static final AtomicLongFieldUpdater<StrongAccessWriteEntry> EXPIRATION_TIME_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(StrongAccessWriteEntry.class, "expirationTime");
+
     // Guarded By Segment.this
     @Weak ReferenceEntry<K, V> nextWrite = nullEntry();
 
@@ -1207,6 +1574,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public int getAccessRegion() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setAccessRegion(int region) {
+      throw new UnsupportedOperationException();
+    }
+
     // null write
 
     @Override
@@ -1219,6 +1596,21 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public long getExpirationTime() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setExpirationTime(long time) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean casExpirationTime(long expect, long update) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public ReferenceEntry<K, V> getNextInWriteQueue() {
       throw new UnsupportedOperationException();
@@ -1310,6 +1702,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     public void setPreviousInAccessQueue(ReferenceEntry<K, V> previous) {
       this.previousAccess = previous;
     }
+
+    // Guarded By Segment.this
+    int accessRegion;
+
+    @Override
+    public int getAccessRegion() {
+      return accessRegion;
+    }
+
+    @Override
+    public void setAccessRegion(int region) {
+      this.accessRegion = region;
+    }
   }
 
   static final class WeakWriteEntry<K, V> extends WeakEntry<K, V> {
@@ -1331,6 +1736,27 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.writeTime = time;
     }
 
+    volatile long expirationTime = Long.MAX_VALUE;
+
+    @Override
+    public long getExpirationTime() {
+      return expirationTime;
+    }
+
+    @Override
+    public void setExpirationTime(long time) {
+      this.expirationTime = time;
+    }
+
+    @Override
+    public boolean casExpirationTime(long expect, long update) {
+      return EXPIRATION_TIME_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    @SuppressWarnings("rawtypes")
+    static final AtomicLongFieldUpdater<WeakWriteEntry> EXPIRATION_TIME_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(WeakWriteEntry.class, "expirationTime");
+
     // Guarded By Segment.this
     @Weak ReferenceEntry<K, V> nextWrite = nullEntry();
 
@@ -1404,6 +1830,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.previousAccess = previous;
     }
 
+    // Guarded By Segment.this
+    int accessRegion;
+
+    @Override
+    public int getAccessRegion() {
+      return accessRegion;
+    }
+
+    @Override
+    public void setAccessRegion(int region) {
+      this.accessRegion = region;
+    }
+
     // The code below is exactly the same for each write entry type.
 
     volatile long writeTime = Long.MAX_VALUE;
@@ -1418,6 +1857,27 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.writeTime = time;
     }
 
+    volatile long expirationTime = Long.MAX_VALUE;
+
+    @Override
+    public long getExpirationTime() {
+      return expirationTime;
+    }
+
+    @Override
+    public void setExpirationTime(long time) {
+      this.expirationTime = time;
+    }
+
+    @Override
+    public boolean casExpirationTime(long expect, long update) {
+      return EXPIRATION_TIME_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    @SuppressWarnings("rawtypes")
+    static final AtomicLongFieldUpdater<WeakAccessWriteEntry> EXPIRATION_TIME_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(WeakAccessWriteEntry.class, "expirationTime");
+
     // Guarded By Segment.this
     @Weak ReferenceEntry<K, V> nextWrite = nullEntry();
 
@@ -1728,11 +2188,24 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
    */
   Segment<K, V> segmentFor(int hash) {
     // TODO(fry): Lazily create segments?
-    return segments[(hash >>> segmentShift) & segmentMask];
+    return segmentFor(segments, hash);
+  }
+
+  /**
+   * Returns the segment among {@code segments} for a key with the given hash. The upper bits of the
+   * hash are used, which helps prevent entries that end up in the same segment from also ending up
+   * in the same bucket.
+   */
+  static <K, V> Segment<K, V> segmentFor(Segment<K, V>[] segments, int hash) {
+    int segmentShift = 32 - Integer.numberOfTrailingZeros(segments.length);
+    return segments[(hash >>> segmentShift) & (segments.length - 1)];
   }
 
   Segment<K, V> createSegment(
       int initialCapacity, long maxSegmentWeight, StatsCounter statsCounter) {
+    if (budgetMember != null) {
+      statsCounter = budgetMember.countingHits(statsCounter);
+    }
     return new Segment<>(this, initialCapacity, maxSegmentWeight, statsCounter);
   }
 
@@ -1769,9 +2242,44 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     if (expiresAfterWrite() && (now - entry.getWriteTime() >= expireAfterWriteNanos)) {
       return true;
     }
+    if (expiresVariably() && (now - entry.getExpirationTime() >= 0)) {
+      return true;
+    }
     return false;
   }
 
+  /**
+   * Returns the ticker time at which a live entry expires, or a time far in the future if it never
+   * expires.
+   */
+  long expirationTimeOf(ReferenceEntry<K, V> entry, long now) {
+    long expirationTime = expirationTime(now, MAXIMUM_EXPIRY);
+    if (expiresAfterAccess()) {
+      expirationTime =
+          earlier(expirationTime, expirationTime(entry.getAccessTime(), expireAfterAccessNanos));
+    }
+    if (expiresAfterWrite()) {
+      expirationTime =
+          earlier(expirationTime, expirationTime(entry.getWriteTime(), expireAfterWriteNanos));
+    }
+    if (expiresVariably()) {
+      expirationTime = earlier(expirationTime, entry.getExpirationTime());
+    }
+    return expirationTime;
+  }
+
+  private static long earlier(long time1, long time2) {
+    return (time1 - time2 <= 0) ? time1 : time2;
+  }
+
+  /**
+   * Returns the expiration time of an entry which expires {@code duration} ns after {@code now},
+   * bounding the duration so that expiration times can be safely compared by subtraction.
+   */
+  static long expirationTime(long now, long duration) {
+    return now + Math.max(0, Math.min(duration, MAXIMUM_EXPIRY));
+  }
+
   // queues
 
   // Guarded By Segment.this
@@ -1816,6 +2324,29 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  /**
+   * Delivers pending removal notifications on {@link #maintenanceExecutor}, unless a task doing so
+   * is already pending. The task clears the pending flag before polling, so that notifications
+   * enqueued while it runs are either polled by it or schedule another task.
+   */
+  void scheduleNotifications() {
+    if (removalNotificationQueue == DISCARDING_QUEUE
+        || notificationsScheduled.get()
+        || !notificationsScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      maintenanceExecutor.execute(
+          () -> {
+            notificationsScheduled.set(false);
+            processPendingNotifications();
+          });
+    } catch (RejectedExecutionException e) {
+      notificationsScheduled.set(false);
+      processPendingNotifications();
+    }
+  }
+
   @SuppressWarnings("unchecked")
   final Segment<K, V>[] newSegmentArray(int ssize) {
     return new Segment[ssize];
@@ -1905,11 +2436,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     final @Nullable ReferenceQueue<V> valueReferenceQueue;
 
     /**
-     * The recency queue is used to record which entries were accessed for updating the access
-     * list's ordering. It is drained as a batch operation when either the DRAIN_THRESHOLD is
-     * crossed or a write occurs on the segment.
+     * The read buffer is used to record which entries were accessed for updating the access list's
+     * ordering. It is drained as a batch operation when either the DRAIN_THRESHOLD is crossed, a
+     * ring buffer fills up, or a write occurs on the segment. Reads are dropped rather than blocked
+     * when the buffer is full or contended. This is null if the segment does not keep an access
+     * queue.
      */
-    final Queue<ReferenceEntry<K, V>> recencyQueue;
+    final @Nullable StripedReadBuffer<ReferenceEntry<K, V>> readBuffer;
 
     /**
      * A counter of the number of reads since the last write, used to drain queues on a small
@@ -1919,7 +2452,8 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     /**
      * A queue of elements currently in the map, ordered by write time. Elements are added to the
-     * tail of the queue on write.
+     * tail of the queue on write. When entries expire variably this is instead a {@link TimerWheel}
+     * ordered by expiration time.
      */
     @GuardedBy("this")
     final Queue<ReferenceEntry<K, V>> writeQueue;
@@ -1934,6 +2468,36 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     /** Accumulates cache statistics. */
     final StatsCounter statsCounter;
 
+    /** The tags of this segment's entries, or null if the cache doesn't tag entries. */
+    @GuardedBy("this")
+    final @Nullable TagIndex<K> tagIndex;
+
+    /** Whether a cleanup task is pending on the cache's maintenance executor. */
+    final AtomicBoolean cleanUpScheduled = new AtomicBoolean();
+
+    /**
+     * An exponentially weighted moving average of the time taken by successful loads, used to
+     * decide on early refreshes.
+     */
+    volatile long averageLoadNanos;
+
+    /**
+     * The number of times the segment lock was acquired, and the number of those times it was held
+     * by another thread, counted while the cache records detailed statistics or adapts its number
+     * of segments. These are read without locking, and so only approximately, by {@link
+     * LocalCache#adaptSegmentCount}. They are only written while holding the lock.
+     */
+    long lockAcquisitions;
+
+    long contendedLockAcquisitions;
+
+    /**
+     * Whether this segment was replaced by a resize of an adaptive cache. A retired segment keeps
+     * the entries it held at that time, for readers that still see it, but it is never written to
+     * again: writers that acquire its lock retry on the segment that now holds their key.
+     */
+    volatile boolean retired;
+
     Segment(
         LocalCache<K, V> map,
         int initialCapacity,
@@ -1942,26 +2506,37 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.map = map;
       this.maxSegmentWeight = maxSegmentWeight;
       this.statsCounter = checkNotNull(statsCounter);
+      this.tagIndex = (map.tagger == null) ? null : new TagIndex<K>();
       initTable(newEntryArray(initialCapacity));
 
       keyReferenceQueue = map.usesKeyReferences() ? new ReferenceQueue<K>() : null;
 
       valueReferenceQueue = map.usesValueReferences() ? new ReferenceQueue<V>() : null;
 
-      recencyQueue =
-          map.usesAccessQueue()
-              ? new ConcurrentLinkedQueue<ReferenceEntry<K, V>>()
-              : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
-
-      writeQueue =
-          map.usesWriteQueue()
-              ? new WriteQueue<K, V>()
-              : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      readBuffer =
+          (map.usesAccessQueue() || map.expiresVariably())
+              ? new StripedReadBuffer<ReferenceEntry<K, V>>()
+              : null;
 
-      accessQueue =
-          map.usesAccessQueue()
-              ? new AccessQueue<K, V>()
-              : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      if (map.expiresVariably()) {
+        writeQueue = new TimerWheel<K, V>(map.ticker.read());
+      } else {
+        writeQueue =
+            map.usesWriteQueue()
+                ? new WriteQueue<K, V>()
+                : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      }
+
+      if (map.usesWindowTinyLfu()) {
+        accessQueue =
+            new WindowTinyLfuQueue<K, V>(
+                maxSegmentWeight, Math.min(maxSegmentWeight, table.length()));
+      } else {
+        accessQueue =
+            map.usesAccessQueue()
+                ? new AccessQueue<K, V>()
+                : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      }
     }
 
     AtomicReferenceArray<ReferenceEntry<K, V>> newEntryArray(int size) {
@@ -2011,6 +2586,36 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       ValueReference<K, V> previous = entry.getValueReference();
       int weight = map.weigher.weigh(key, value);
       checkState(weight >= 0, "Weights must be non-negative");
+      // call the tagger and the expiry before changing anything, so that if either throws, the
+      // entry is left intact
+      ImmutableSet<Object> tags =
+          (tagIndex == null) ? null : ImmutableSet.copyOf(map.tagger.tagsOf(key, value));
+      long duration = 0;
+      if (map.expiresVariably()) {
+        V previousValue = previous.get();
+        duration =
+            (previousValue == null)
+                ? map.expiry.expireAfterCreate(key, value, now)
+                : map.expiry.expireAfterUpdate(key, value, now, entry.getExpirationTime() - now);
+      }
+
+      if (map.usesWindowTinyLfu()) {
+        ((WindowTinyLfuQueue<K, V>) accessQueue).reweigh(entry, previous.getWeight(), weight);
+      }
+
+      if (map.spillover != null && previous.get() == null) {
+        // a spilled value of a newly created entry is stale
+        map.spillover.invalidate(key);
+      }
+
+      if (map.expiresVariably()) {
+        // set before the value is published, so that unlocked readers never see a stale time
+        entry.setExpirationTime(expirationTime(now, duration));
+      }
+
+      if (tagIndex != null) {
+        tagIndex.tag(key, tags);
+      }
 
       ValueReference<K, V> valueReference =
           map.valueStrength.referenceValue(this, entry, value, weight);
@@ -2019,6 +2624,58 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       previous.notifyNewValue(value);
     }
 
+    /**
+     * Acquires the segment lock, recording the time spent waiting for it when the cache records
+     * detailed statistics, and counting contended acquisitions when the cache adapts its number of
+     * segments. Uncontended acquisitions are not timed.
+     */
+    @Override
+    public void lock() {
+      if (!map.recordsLockWait && !map.adaptsConcurrency) {
+        super.lock();
+      } else if (super.tryLock()) {
+        lockAcquisitions++;
+      } else {
+        long startNanos = System.nanoTime();
+        super.lock();
+        lockAcquisitions++;
+        contendedLockAcquisitions++;
+        if (map.recordsLockWait) {
+          statsCounter.recordLockWait(System.nanoTime() - startNanos);
+        }
+      }
+    }
+
+    /**
+     * Acquires the segment lock if it is not held by another thread, unless this segment is
+     * {@linkplain #retired retired}, in which case there is nothing left to clean up.
+     */
+    @Override
+    public boolean tryLock() {
+      if (!super.tryLock()) {
+        return false;
+      }
+      if (retired) {
+        unlock();
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Acquires the segment lock and returns true, unless this segment is {@linkplain #retired
+     * retired}, in which case this returns false without holding the lock, and the caller should
+     * retry on {@code map.segmentFor(hash)}.
+     */
+    boolean lockIfCurrent() {
+      lock();
+      if (retired) {
+        unlock();
+        return false;
+      }
+      return true;
+    }
+
     // loading
 
     V get(K key, int hash, CacheLoader<? super K, V> loader) throws ExecutionException {
@@ -2081,13 +2738,44 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
+    /**
+     * Like {@link #get(Object, int)}, but refreshes the value on {@code executor}, so that the
+     * caller never runs the loader.
+     */
+    @Nullable
+    V getPresent(K key, int hash, Executor executor) {
+      try {
+        if (count != 0) { // read-volatile
+          long now = map.ticker.read();
+          ReferenceEntry<K, V> e = getLiveEntry(key, hash, now);
+          if (e == null) {
+            return null;
+          }
+
+          V value = e.getValueReference().get();
+          if (value != null) {
+            recordRead(e, now);
+            scheduleAsyncRefresh(e, key, hash, now, map.defaultLoader, executor);
+            return value;
+          }
+          tryDrainReferenceQueues();
+        }
+        return null;
+      } finally {
+        postReadCleanup();
+      }
+    }
+
     V lockedGetOrLoad(K key, int hash, CacheLoader<? super K, V> loader) throws ExecutionException {
       ReferenceEntry<K, V> e;
       ValueReference<K, V> valueReference = null;
       LoadingValueReference<K, V> loadingValueReference = null;
+      ComputingValueReference<K, V> computingValueReference = null;
       boolean createNewEntry = true;
 
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).lockedGetOrLoad(key, hash, loader);
+      }
       try {
         // re-read ticker once inside the lock
         long now = map.ticker.read();
@@ -2106,6 +2794,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
             valueReference = e.getValueReference();
             if (valueReference.isLoading()) {
               createNewEntry = false;
+            } else if (valueReference instanceof ComputingValueReference
+                && (valueReference.get() == null || map.isExpired(e, now))) {
+              // no live value to return while the value is computed; wait for the computation
+              computingValueReference = (ComputingValueReference<K, V>) valueReference;
+              createNewEntry = false;
             } else {
               V value = valueReference.get();
               if (value == null) {
@@ -2148,12 +2841,24 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         postWriteCleanup();
       }
 
+      if (computingValueReference != null) {
+        computingValueReference.awaitCompletion(key);
+        return get(key, hash, loader);
+      }
+
       if (createNewEntry) {
         try {
           // Synchronizes on the entry to allow failing fast when a recursive load is
           // detected. This may be circumvented when an entry is copied, but will fail fast most
           // of the time.
           synchronized (e) {
+            V spilled = loadSpilled(key, hash, loadingValueReference);
+            if (spilled != null) {
+              return spilled;
+            }
+            if (batchesLoadsOf(loader)) {
+              return map.loadBatcher.load(this, key, hash, loadingValueReference);
+            }
             return loadSync(key, hash, loadingValueReference, loader);
           }
         } finally {
@@ -2187,19 +2892,60 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
-    V compute(K key, int hash, BiFunction<? super K, ? super V, ? extends V> function) {
+    /**
+     * Returns a future of the value for {@code key}, loading it on {@code executor} if necessary.
+     * Concurrent loads of the same key, whether synchronous or asynchronous, are coalesced through
+     * the entry's {@link LoadingValueReference}.
+     */
+    ListenableFuture<V> getAsync(
+        K key, int hash, CacheLoader<? super K, V> loader, Executor executor) {
+      checkNotNull(key);
+      checkNotNull(loader);
+      checkNotNull(executor);
+      try {
+        if (count != 0) { // read-volatile
+          // don't call getLiveEntry, which would ignore loading values
+          ReferenceEntry<K, V> e = getEntry(key, hash);
+          if (e != null) {
+            long now = map.ticker.read();
+            V value = getLiveValue(e, now);
+            if (value != null) {
+              recordRead(e, now);
+              statsCounter.recordHits(1);
+              scheduleAsyncRefresh(e, key, hash, now, loader, executor);
+              return Futures.immediateFuture(value);
+            }
+            ValueReference<K, V> valueReference = e.getValueReference();
+            if (valueReference.isLoading()) {
+              return loadingValueFuture(e, key, valueReference);
+            }
+          }
+        }
+
+        // at this point e is either null or expired;
+        return lockedGetOrLoadAsync(key, hash, loader, executor);
+      } finally {
+        postReadCleanup();
+      }
+    }
+
+    ListenableFuture<V> lockedGetOrLoadAsync(
+        K key, int hash, CacheLoader<? super K, V> loader, Executor executor) {
       ReferenceEntry<K, V> e;
       ValueReference<K, V> valueReference = null;
+      LoadingValueReference<K, V> loadingValueReference = null;
       ComputingValueReference<K, V> computingValueReference = null;
       boolean createNewEntry = true;
-      V newValue;
 
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).lockedGetOrLoadAsync(key, hash, loader, executor);
+      }
       try {
         // re-read ticker once inside the lock
         long now = map.ticker.read();
         preWriteCleanup(now);
 
+        int newCount = this.count - 1;
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
         int index = hash & (table.length() - 1);
         ReferenceEntry<K, V> first = table.get(index);
@@ -2210,139 +2956,542 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
               && entryKey != null
               && map.keyEquivalence.equivalent(key, entryKey)) {
             valueReference = e.getValueReference();
-            if (map.isExpired(e, now)) {
-              // This is a duplicate check, as preWriteCleanup already purged expired
-              // entries, but let's accomodate an incorrect expiration queue.
-              enqueueNotification(
-                  entryKey,
-                  hash,
-                  valueReference.get(),
-                  valueReference.getWeight(),
-                  RemovalCause.EXPIRED);
-            }
+            if (valueReference.isLoading()) {
+              createNewEntry = false;
+            } else if (valueReference instanceof ComputingValueReference
+                && (valueReference.get() == null || map.isExpired(e, now))) {
+              // no live value to return while the value is computed; wait for the computation
+              computingValueReference = (ComputingValueReference<K, V>) valueReference;
+              createNewEntry = false;
+            } else {
+              V value = valueReference.get();
+              if (value == null) {
+                enqueueNotification(
+                    entryKey, hash, value, valueReference.getWeight(), RemovalCause.COLLECTED);
+              } else if (map.isExpired(e, now)) {
+                enqueueNotification(
+                    entryKey, hash, value, valueReference.getWeight(), RemovalCause.EXPIRED);
+              } else {
+                recordLockedRead(e, now);
+                statsCounter.recordHits(1);
+                // we were concurrent with loading; don't consider refresh
+                return Futures.immediateFuture(value);
+              }
 
-            // immediately reuse invalid entries
-            writeQueue.remove(e);
-            accessQueue.remove(e);
-            createNewEntry = false;
+              // immediately reuse invalid entries
+              writeQueue.remove(e);
+              accessQueue.remove(e);
+              this.count = newCount; // write-volatile
+            }
             break;
           }
         }
 
-        // note valueReference can be an existing value or even itself another loading value if
-        // the value for the key is already being computed.
-        computingValueReference = new ComputingValueReference<>(valueReference);
-
-        if (e == null) {
-          createNewEntry = true;
-          e = newEntry(key, hash, first);
-          e.setValueReference(computingValueReference);
-          table.set(index, e);
-        } else {
-          e.setValueReference(computingValueReference);
-        }
+        if (createNewEntry) {
+          loadingValueReference = new LoadingValueReference<>();
 
-        newValue = computingValueReference.compute(key, function);
-        if (newValue != null) {
-          if (valueReference != null && newValue == valueReference.get()) {
-            computingValueReference.set(newValue);
-            e.setValueReference(valueReference);
-            recordWrite(e, 0, now); // no change in weight
-            return newValue;
-          }
-          try {
-            return getAndRecordStats(
-                key, hash, computingValueReference, Futures.immediateFuture(newValue));
-          } catch (ExecutionException exception) {
-            throw new AssertionError("impossible; Futures.immediateFuture can't throw");
+          if (e == null) {
+            e = newEntry(key, hash, first);
+            e.setValueReference(loadingValueReference);
+            table.set(index, e);
+          } else {
+            e.setValueReference(loadingValueReference);
           }
-        } else if (createNewEntry || valueReference.isLoading()) {
-          removeLoadingValue(key, hash, computingValueReference);
-          return null;
-        } else {
-          removeEntry(e, hash, RemovalCause.EXPLICIT);
-          return null;
         }
       } finally {
         unlock();
         postWriteCleanup();
       }
-    }
 
-    // at most one of loadSync/loadAsync may be called for any given LoadingValueReference
+      if (computingValueReference != null) {
+        return Futures.whenAllComplete(computingValueReference.futureValue)
+            .callAsync(() -> getAsync(key, hash, loader, executor), directExecutor());
+      }
 
-    V loadSync(
-        K key,
-        int hash,
-        LoadingValueReference<K, V> loadingValueReference,
-        CacheLoader<? super K, V> loader)
-        throws ExecutionException {
-      ListenableFuture<V> loadingFuture = loadingValueReference.loadFuture(key, loader);
-      return getAndRecordStats(key, hash, loadingValueReference, loadingFuture);
+      if (createNewEntry) {
+        statsCounter.recordMisses(1);
+        return loadOnExecutor(key, hash, loadingValueReference, loader, executor);
+      } else {
+        // The entry already exists. Complete when its loading does.
+        return loadingValueFuture(e, key, valueReference);
+      }
     }
 
-    ListenableFuture<V> loadAsync(
-        final K key,
-        final int hash,
-        final LoadingValueReference<K, V> loadingValueReference,
-        CacheLoader<? super K, V> loader) {
-      final ListenableFuture<V> loadingFuture = loadingValueReference.loadFuture(key, loader);
-      loadingFuture.addListener(
-          new Runnable() {
+    /**
+     * Returns a future of the value being loaded by {@code valueReference}, completing when the
+     * load does without blocking the caller.
+     */
+    ListenableFuture<V> loadingValueFuture(
+        final ReferenceEntry<K, V> e, final K key, ValueReference<K, V> valueReference) {
+      if (!valueReference.isLoading()) {
+        throw new AssertionError();
+      }
+      statsCounter.recordMisses(1);
+      // don't consider expiration as we're concurrent with loading
+      ListenableFuture<V> loadingFuture =
+          Futures.nonCancellationPropagating(
+              ((LoadingValueReference<K, V>) valueReference).futureValue);
+      return transform(
+          loadingFuture,
+          new com.google.common.base.Function<V, V>() {
             @Override
-            public void run() {
-              try {
-                getAndRecordStats(key, hash, loadingValueReference, loadingFuture);
-              } catch (Throwable t) {
-                logger.log(Level.WARNING, "Exception thrown during refresh", t);
-                loadingValueReference.setException(t);
+            public V apply(V value) {
+              if (value == null) {
+                throw new InvalidCacheLoadException(
+                    "CacheLoader returned null for key " + key + ".");
               }
+              // re-read ticker now that loading has completed
+              recordRead(e, map.ticker.read());
+              return value;
             }
           },
           directExecutor());
-      return loadingFuture;
     }
 
-    /** Waits uninterruptibly for {@code newValue} to be loaded, and then records loading stats. */
-    V getAndRecordStats(
-        K key,
-        int hash,
-        LoadingValueReference<K, V> loadingValueReference,
-        ListenableFuture<V> newValue)
-        throws ExecutionException {
-      V value = null;
+    /**
+     * Loads the value for {@code key} on {@code executor}. The returned future completes once the
+     * loaded value has been stored, or fails with the loader's exception.
+     */
+    ListenableFuture<V> loadOnExecutor(
+        final K key,
+        final int hash,
+        final LoadingValueReference<K, V> loadingValueReference,
+        final CacheLoader<? super K, V> loader,
+        Executor executor) {
+      final SettableFuture<V> result = SettableFuture.create();
       try {
-        value = getUninterruptibly(newValue);
-        if (value == null) {
-          throw new InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
-        }
-        statsCounter.recordLoadSuccess(loadingValueReference.elapsedNanos());
-        storeLoadedValue(key, hash, loadingValueReference, value);
-        return value;
-      } finally {
-        if (value == null) {
-          statsCounter.recordLoadException(loadingValueReference.elapsedNanos());
-          removeLoadingValue(key, hash, loadingValueReference);
-        }
+        executor.execute(
+            new Runnable() {
+              @Override
+              public void run() {
+                V spilled = loadSpilled(key, hash, loadingValueReference);
+                if (spilled != null) {
+                  result.set(spilled);
+                  return;
+                }
+                if (batchesLoadsOf(loader)) {
+                  try {
+                    result.set(
+                        map.loadBatcher.load(Segment.this, key, hash, loadingValueReference));
+                  } catch (ExecutionException ee) {
+                    result.setException(ee.getCause());
+                  } catch (Throwable t) {
+                    result.setException(t);
+                  }
+                  return;
+                }
+                final ListenableFuture<V> loadingFuture =
+                    loadingValueReference.loadFuture(key, loader);
+                loadingFuture.addListener(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        try {
+                          result.set(
+                              getAndRecordStats(key, hash, loadingValueReference, loadingFuture));
+                        } catch (ExecutionException ee) {
+                          result.setException(ee.getCause());
+                        } catch (Throwable t) {
+                          result.setException(t);
+                        }
+                      }
+                    },
+                    directExecutor());
+              }
+            });
+      } catch (Throwable t) {
+        // most likely a RejectedExecutionException; fail this load and its waiters
+        loadingValueReference.setException(t);
+        statsCounter.recordLoadException(loadingValueReference.elapsedNanos());
+        removeLoadingValue(key, hash, loadingValueReference);
+        result.setException(t);
       }
+      return result;
     }
 
-    V scheduleRefresh(
-        ReferenceEntry<K, V> entry,
-        K key,
-        int hash,
-        V oldValue,
-        long now,
-        CacheLoader<? super K, V> loader) {
-      if (map.refreshes()
-          && (now - entry.getWriteTime() > map.refreshNanos)
-          && !entry.getValueReference().isLoading()) {
-        V newValue = refresh(key, hash, loader, true);
-        if (newValue != null) {
-          return newValue;
+    /**
+     * Computes the value of {@code key}. The remapping function is applied without holding the
+     * segment lock, so that a slow computation only delays operations on its own key: a {@link
+     * ComputingValueReference} is installed as a placeholder, concurrent computations of the key
+     * wait until its result is stored before installing their own, and loads of the key wait for it
+     * unless the key still has a live value, which reads keep returning until the computation
+     * completes.
+     */
+    V compute(K key, int hash, BiFunction<? super K, ? super V, ? extends V> function) {
+      ComputingValueReference<K, V> computingValueReference = null;
+      ComputingValueReference<K, V> predecessor;
+      do {
+        predecessor = null;
+        if (!lockIfCurrent()) {
+          return map.segmentFor(hash).compute(key, hash, function);
         }
+        try {
+          // re-read ticker once inside the lock
+          long now = map.ticker.read();
+          preWriteCleanup(now);
+
+          AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+          int index = hash & (table.length() - 1);
+          ReferenceEntry<K, V> first = table.get(index);
+
+          ReferenceEntry<K, V> e;
+          for (e = first; e != null; e = e.getNext()) {
+            K entryKey = e.getKey();
+            if (e.getHash() == hash
+                && entryKey != null
+                && map.keyEquivalence.equivalent(key, entryKey)) {
+              break;
+            }
+          }
+
+          ValueReference<K, V> valueReference = null;
+          if (e != null) {
+            valueReference = e.getValueReference();
+            checkState(
+                !(valueReference instanceof ComputingValueReference)
+                    || ((ComputingValueReference<K, V>) valueReference).thread
+                        != Thread.currentThread(),
+                "Recursive computation of: %s",
+                key);
+            if (!valueReference.isLoading()
+                && !(valueReference instanceof ComputingValueReference)
+                && valueReference.get() != null
+                && map.isExpired(e, now)) {
+              // This is a duplicate check, as preWriteCleanup already purged expired
+              // entries, but let's accommodate an incorrect expiration queue.
+              removeEntry(e, hash, RemovalCause.EXPIRED);
+              first = table.get(index);
+              e = null;
+              valueReference = null;
+            }
+          }
+
+          if (valueReference instanceof ComputingValueReference) {
+            predecessor = (ComputingValueReference<K, V>) valueReference;
+          } else {
+            // note valueReference can be an existing value or even itself a loading value if the
+            // value for the key is already being loaded.
+            computingValueReference = new ComputingValueReference<>(valueReference);
+            ++modCount;
+            if (e == null) {
+              e = newEntry(key, hash, first);
+              e.setValueReference(computingValueReference);
+              table.set(index, e);
+            } else {
+              e.setValueReference(computingValueReference);
+            }
+          }
+        } finally {
+          unlock();
+          postWriteCleanup();
+        }
+        if (predecessor != null) {
+          // store the predecessor's result first, so that this computation is applied to it
+          predecessor.awaitCompletion(key);
+        }
+      } while (predecessor != null);
+
+      V newValue;
+      try {
+        newValue = computingValueReference.apply(key, function);
+      } catch (Throwable t) {
+        removeLoadingValue(key, hash, computingValueReference);
+        computingValueReference.setException(t);
+        throw t;
       }
-      return oldValue;
+      if (newValue != null) {
+        statsCounter.recordLoadSuccess(computingValueReference.elapsedNanos());
+      }
+      storeComputedValue(key, hash, computingValueReference, newValue);
+      computingValueReference.set(newValue);
+      return newValue;
+    }
+
+    /**
+     * Replaces the placeholder of a completed computation with its result, removing the entry if
+     * the result is null. Does nothing but notify the removal listener if the placeholder was
+     * replaced by a concurrent write, which is then ordered after the computation.
+     */
+    void storeComputedValue(
+        K key,
+        int hash,
+        ComputingValueReference<K, V> computingValueReference,
+        @Nullable V newValue) {
+      if (!lockIfCurrent()) {
+        map.segmentFor(hash).storeComputedValue(key, hash, computingValueReference, newValue);
+        return;
+      }
+      try {
+        long now = map.ticker.read();
+        preWriteCleanup(now);
+
+        ReferenceEntry<K, V> e = getEntry(key, hash);
+        if (e == null || e.getValueReference() != computingValueReference) {
+          if (newValue != null) {
+            enqueueNotification(key, hash, newValue, 0, RemovalCause.REPLACED);
+          }
+          return;
+        }
+
+        ValueReference<K, V> oldValueReference = computingValueReference.getOldValue();
+        V oldValue = oldValueReference.get();
+        if (newValue == null) {
+          if (oldValue != null && !oldValueReference.isLoading()) {
+            e.setValueReference(oldValueReference);
+            removeEntry(e, hash, RemovalCause.EXPLICIT);
+          } else {
+            removeLoadingValue(key, hash, computingValueReference);
+          }
+        } else if (newValue == oldValue && !oldValueReference.isLoading()) {
+          ++modCount;
+          e.setValueReference(oldValueReference);
+          recordWrite(e, 0, now); // no change in weight
+        } else {
+          storeLoadedValue(key, hash, computingValueReference, newValue); // reentrant
+        }
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
+    /**
+     * Completes {@code loadingValueReference} with the value spilled for {@code key} and returns
+     * it, or returns null if there is none and the value must be loaded. The value is recorded as a
+     * successful load.
+     */
+    @Nullable
+    V loadSpilled(K key, int hash, LoadingValueReference<K, V> loadingValueReference) {
+      if (map.spillover == null) {
+        return null;
+      }
+      V value;
+      try {
+        value = map.spillover.remove(key, map.ticker.read());
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Exception thrown while reading a spilled value", t);
+        return null;
+      }
+      if (value == null) {
+        return null;
+      }
+      try {
+        return getAndRecordStats(key, hash, loadingValueReference, Futures.immediateFuture(value));
+      } catch (ExecutionException e) {
+        throw new AssertionError("impossible; Futures.immediateFuture can't throw");
+      }
+    }
+
+    /**
+     * Moves the value spilled for {@code key} back into this segment and returns it, or returns
+     * null if there is none.
+     */
+    @Nullable
+    V promoteSpilled(Object key, int hash) {
+      if (!map.spillover.mightContain(key)) {
+        return null; // don't take the lock on every miss
+      }
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).promoteSpilled(key, hash);
+      }
+      try {
+        V value;
+        try {
+          value = map.spillover.remove(key, map.ticker.read());
+        } catch (Throwable t) {
+          logger.log(Level.WARNING, "Exception thrown while reading a spilled value", t);
+          return null;
+        }
+        if (value == null) {
+          return null;
+        }
+        // the spillover tier only holds keys of type K
+        @SuppressWarnings("unchecked")
+        K castKey = (K) key;
+        V current = put(castKey, hash, value, true);
+        return (current == null) ? value : current;
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
+    /** Copies the value of {@code e}, which is being evicted by size, to the spillover tier. */
+    @GuardedBy("this")
+    void spill(ReferenceEntry<K, V> e, long now) {
+      K key = e.getKey();
+      V value = e.getValueReference().get();
+      if (key == null || value == null || map.isExpired(e, now)) {
+        return;
+      }
+      try {
+        map.spillover.put(key, value, map.expirationTimeOf(e, now));
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Exception thrown while spilling an evicted entry", t);
+      }
+    }
+
+    /** Returns whether misses of {@code loader} are loaded in batches. */
+    boolean batchesLoadsOf(CacheLoader<? super K, V> loader) {
+      return map.loadBatcher != null && loader == map.defaultLoader;
+    }
+
+    // at most one of loadSync/loadAsync may be called for any given LoadingValueReference
+
+    V loadSync(
+        K key,
+        int hash,
+        LoadingValueReference<K, V> loadingValueReference,
+        CacheLoader<? super K, V> loader)
+        throws ExecutionException {
+      ListenableFuture<V> loadingFuture = loadingValueReference.loadFuture(key, loader);
+      return getAndRecordStats(key, hash, loadingValueReference, loadingFuture);
+    }
+
+    ListenableFuture<V> loadAsync(
+        final K key,
+        final int hash,
+        final LoadingValueReference<K, V> loadingValueReference,
+        CacheLoader<? super K, V> loader) {
+      final ListenableFuture<V> loadingFuture = loadingValueReference.loadFuture(key, loader);
+      loadingFuture.addListener(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                getAndRecordStats(key, hash, loadingValueReference, loadingFuture);
+              } catch (Throwable t) {
+                logger.log(Level.WARNING, "Exception thrown during refresh", t);
+                loadingValueReference.setException(t);
+              }
+            }
+          },
+          directExecutor());
+      return loadingFuture;
+    }
+
+    /** Waits uninterruptibly for {@code newValue} to be loaded, and then records loading stats. */
+    V getAndRecordStats(
+        K key,
+        int hash,
+        LoadingValueReference<K, V> loadingValueReference,
+        ListenableFuture<V> newValue)
+        throws ExecutionException {
+      V value = null;
+      try {
+        value = getUninterruptibly(newValue);
+        if (value == null) {
+          throw new InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
+        }
+        long loadNanos = loadingValueReference.elapsedNanos();
+        statsCounter.recordLoadSuccess(loadNanos);
+        if (map.refreshesEarly()) {
+          recordLoadTime(loadNanos);
+        }
+        storeLoadedValue(key, hash, loadingValueReference, value);
+        return value;
+      } finally {
+        if (value == null) {
+          statsCounter.recordLoadException(loadingValueReference.elapsedNanos());
+          removeLoadingValue(key, hash, loadingValueReference);
+        }
+      }
+    }
+
+    V scheduleRefresh(
+        ReferenceEntry<K, V> entry,
+        K key,
+        int hash,
+        V oldValue,
+        long now,
+        CacheLoader<? super K, V> loader) {
+      if (entry.getValueReference().isLoading()) {
+        return oldValue;
+      }
+      boolean stale =
+          map.refreshes() && (now - entry.getWriteTime() > map.refreshNanosOf(entry));
+      if (stale || (map.refreshesEarly() && shouldRefreshEarly(entry, now))) {
+        // an early refresh must not be vetoed by the refreshAfterWrite deadline
+        if (map.refreshBatcher != null && loader == map.defaultLoader) {
+          refreshInBatch(key, hash, loader, stale);
+          return oldValue;
+        }
+        V newValue = refresh(key, hash, loader, stale);
+        if (newValue != null) {
+          return newValue;
+        }
+      }
+      return oldValue;
+    }
+
+    /**
+     * Like {@link #scheduleRefresh}, but reloads {@code key} on {@code executor} instead of on the
+     * calling thread, and doesn't wait for the new value.
+     */
+    void scheduleAsyncRefresh(
+        ReferenceEntry<K, V> entry,
+        final K key,
+        final int hash,
+        long now,
+        final CacheLoader<? super K, V> loader,
+        Executor executor) {
+      if (entry.getValueReference().isLoading()) {
+        return;
+      }
+      boolean stale =
+          map.refreshes() && (now - entry.getWriteTime() > map.refreshNanosOf(entry));
+      if (stale || (map.refreshesEarly() && shouldRefreshEarly(entry, now))) {
+        if (map.refreshBatcher != null && loader == map.defaultLoader) {
+          refreshInBatch(key, hash, loader, stale);
+          return;
+        }
+        final LoadingValueReference<K, V> loadingValueReference =
+            insertLoadingValueReference(key, hash, stale);
+        if (loadingValueReference == null) {
+          return;
+        }
+        try {
+          executor.execute(
+              new Runnable() {
+                @Override
+                public void run() {
+                  loadAsync(key, hash, loadingValueReference, loader);
+                }
+              });
+        } catch (Throwable t) {
+          // most likely a RejectedExecutionException; keep serving the old value
+          loadingValueReference.setException(t);
+          removeLoadingValue(key, hash, loadingValueReference);
+        }
+      }
+    }
+
+    /**
+     * Returns whether a read of {@code entry} at {@code now} should refresh it ahead of its
+     * expiration. This is the XFetch test: the entry is refreshed if {@code now - delta * beta *
+     * ln(u)} reaches its expiration time, where {@code delta} is the average load time and {@code
+     * u} is uniformly distributed in (0, 1].
+     */
+    boolean shouldRefreshEarly(ReferenceEntry<K, V> entry, long now) {
+      long loadNanos = averageLoadNanos;
+      if (loadNanos == 0) {
+        return false;
+      }
+      long remainingNanos = map.expirationTimeOf(entry, now) - now;
+      double u = 1.0 - ThreadLocalRandom.current().nextDouble();
+      return remainingNanos <= -loadNanos * map.earlyRefreshBeta * Math.log(u);
+    }
+
+    /**
+     * Folds the duration of a successful load into {@link #averageLoadNanos}. Concurrent updates
+     * may be lost, which only makes the average a little less precise.
+     */
+    void recordLoadTime(long loadNanos) {
+      if (loadNanos <= 0) {
+        return; // not timed, such as values read back from the spillover tier
+      }
+      long average = averageLoadNanos;
+      averageLoadNanos = (average == 0) ? loadNanos : average + ((loadNanos - average) >> 3);
     }
 
     /**
@@ -2370,6 +3519,25 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       return null;
     }
 
+    /**
+     * Hands the refresh of {@code key} to {@link LocalCache#refreshBatcher}, unless another thread
+     * is already refreshing it. Keys whose old value was collected are loaded on their own.
+     */
+    void refreshInBatch(K key, int hash, CacheLoader<? super K, V> loader, boolean checkTime) {
+      LoadingValueReference<K, V> loadingValueReference =
+          insertLoadingValueReference(key, hash, checkTime);
+      if (loadingValueReference == null) {
+        return;
+      }
+      V oldValue = loadingValueReference.oldValue.get();
+      if (oldValue == null) {
+        loadAsync(key, hash, loadingValueReference, loader);
+        return;
+      }
+      map.refreshBatcher.refresh(
+          map.segmentFor(hash), key, hash, oldValue, loadingValueReference);
+    }
+
     /**
      * Returns a newly inserted {@code LoadingValueReference}, or null if the live value reference
      * is already loading.
@@ -2378,7 +3546,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     LoadingValueReference<K, V> insertLoadingValueReference(
         final K key, final int hash, boolean checkTime) {
       ReferenceEntry<K, V> e = null;
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).insertLoadingValueReference(key, hash, checkTime);
+      }
       try {
         long now = map.ticker.read();
         preWriteCleanup(now);
@@ -2397,8 +3567,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
             ValueReference<K, V> valueReference = e.getValueReference();
             if (valueReference.isLoading()
-                || (checkTime && (now - e.getWriteTime() < map.refreshNanos))) {
-              // refresh is a no-op if loading is pending
+                || valueReference instanceof ComputingValueReference
+                || (checkTime && (now - e.getWriteTime() < map.refreshNanosOf(e)))) {
+              // refresh is a no-op if loading or computing is pending
               // if checkTime, we want to check *after* acquiring the lock if refresh still needs
               // to be scheduled
               return null;
@@ -2498,12 +3669,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       while (valueReferenceQueue.poll() != null) {}
     }
 
-    // recency queue, shared by expiration and eviction
+    // read buffer, shared by expiration and eviction
 
     /**
      * Records the relative order in which this read was performed by adding {@code entry} to the
-     * recency queue. At write-time, or when the queue is full past the threshold, the queue will be
-     * drained and the entries therein processed.
+     * read buffer. At write-time, or when the buffer is full or past the threshold, the buffer will
+     * be drained and the entries therein processed. If the buffer is full and the lock is held by
+     * another thread, the read is not recorded.
      *
      * <p>Note: locked reads should use {@link #recordLockedRead}.
      */
@@ -2511,7 +3683,25 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (map.recordsAccess()) {
         entry.setAccessTime(now);
       }
-      recencyQueue.add(entry);
+      if (map.expiresVariably()) {
+        setExpirationTimeAfterRead(entry, now);
+      }
+      if (readBuffer != null && readBuffer.offer(entry) == StripedReadBuffer.FULL) {
+        tryDrainReadBuffer();
+      }
+    }
+
+    /** Drains the read buffer if the lock is available. */
+    void tryDrainReadBuffer() {
+      if (map.maintenanceExecutor != null) {
+        scheduleCleanUp();
+      } else if (tryLock()) {
+        try {
+          drainReadBuffer();
+        } finally {
+          unlock();
+        }
+      }
     }
 
     /**
@@ -2527,6 +3717,36 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         entry.setAccessTime(now);
       }
       accessQueue.add(entry);
+      if (map.expiresVariably()) {
+        setExpirationTimeAfterRead(entry, now);
+        writeQueue.add(entry);
+      }
+    }
+
+    /**
+     * Updates the expiration time of {@code entry} after a read. The timer wheel is only updated
+     * when the read is drained; until then the entry may be found in an earlier bucket, in which
+     * case it is rescheduled.
+     *
+     * <p>This may be called without the segment lock, so the new time is installed with a CAS and
+     * recomputed if a concurrent read or write changed it first.
+     */
+    void setExpirationTimeAfterRead(ReferenceEntry<K, V> entry, long now) {
+      K key = entry.getKey();
+      if (key == null) {
+        return;
+      }
+      while (true) {
+        long current = entry.getExpirationTime();
+        V value = entry.getValueReference().get();
+        if (value == null) {
+          return;
+        }
+        long duration = map.expiry.expireAfterRead(key, value, now, current - now);
+        if (entry.casExpirationTime(current, expirationTime(now, duration))) {
+          return;
+        }
+      }
     }
 
     /**
@@ -2535,9 +3755,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      */
     @GuardedBy("this")
     void recordWrite(ReferenceEntry<K, V> entry, int weight, long now) {
-      // we are already under lock, so drain the recency queue immediately
-      drainRecencyQueue();
+      // we are already under lock, so drain the read buffer immediately
+      drainReadBuffer();
       totalWeight += weight;
+      if (map.budgetMember != null) {
+        map.budgetMember.charge(weight);
+      }
 
       if (map.recordsAccess()) {
         entry.setAccessTime(now);
@@ -2550,23 +3773,29 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
 
     /**
-     * Drains the recency queue, updating eviction metadata that the entries therein were read in
-     * the specified relative order. This currently amounts to adding them to relevant eviction
-     * lists (accounting for the fact that they could have been removed from the map since being
-     * added to the recency queue).
+     * Drains the read buffer, updating eviction metadata that the entries therein were read in the
+     * specified relative order. This currently amounts to adding them to relevant eviction lists
+     * (accounting for the fact that they could have been removed from the map since being added to
+     * the read buffer).
      */
     @GuardedBy("this")
-    void drainRecencyQueue() {
-      ReferenceEntry<K, V> e;
-      while ((e = recencyQueue.poll()) != null) {
-        // An entry may be in the recency queue despite it being removed from
-        // the map . This can occur when the entry was concurrently read while a
-        // writer is removing it from the segment or after a clear has removed
-        // all of the segment's entries.
-        if (accessQueue.contains(e)) {
-          accessQueue.add(e);
-        }
+    void drainReadBuffer() {
+      if (readBuffer == null) {
+        return;
       }
+      readBuffer.drainTo(
+          e -> {
+            // An entry may be in the read buffer despite it being removed from
+            // the map . This can occur when the entry was concurrently read while a
+            // writer is removing it from the segment or after a clear has removed
+            // all of the segment's entries.
+            if (accessQueue.contains(e)) {
+              accessQueue.add(e);
+            }
+            if (map.expiresVariably() && writeQueue.contains(e)) {
+              writeQueue.add(e);
+            }
+          });
     }
 
     // expiration
@@ -2585,12 +3814,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @GuardedBy("this")
     void expireEntries(long now) {
-      drainRecencyQueue();
+      drainReadBuffer();
 
       ReferenceEntry<K, V> e;
-      while ((e = writeQueue.peek()) != null && map.isExpired(e, now)) {
-        if (!removeEntry(e, e.getHash(), RemovalCause.EXPIRED)) {
-          throw new AssertionError();
+      if (map.expiresVariably()) {
+        ((TimerWheel<K, V>) writeQueue).advance(this, now);
+      } else {
+        while ((e = writeQueue.peek()) != null && map.isExpired(e, now)) {
+          if (!removeEntry(e, e.getHash(), RemovalCause.EXPIRED)) {
+            throw new AssertionError();
+          }
         }
       }
       while ((e = accessQueue.peek()) != null && map.isExpired(e, now)) {
@@ -2606,8 +3839,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     void enqueueNotification(
         @Nullable K key, int hash, @Nullable V value, int weight, RemovalCause cause) {
       totalWeight -= weight;
+      if (map.budgetMember != null) {
+        map.budgetMember.charge(-weight);
+      }
       if (cause.wasEvicted()) {
-        statsCounter.recordEviction();
+        statsCounter.recordEviction(cause);
       }
       if (map.removalNotificationQueue != DISCARDING_QUEUE) {
         RemovalNotification<K, V> notification = RemovalNotification.create(key, value, cause);
@@ -2627,50 +3863,131 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         return;
       }
 
-      drainRecencyQueue();
+      drainReadBuffer();
+      long now = (map.spillover == null) ? 0 : map.ticker.read();
 
       // If the newest entry by itself is too heavy for the segment, don't bother evicting
       // anything else, just that
       if (newest.getValueReference().getWeight() > maxSegmentWeight) {
-        if (!removeEntry(newest, newest.getHash(), RemovalCause.SIZE)) {
-          throw new AssertionError();
-        }
+        evictEntry(newest, now);
       }
 
-      while (totalWeight > maxSegmentWeight) {
-        ReferenceEntry<K, V> e = getNextEvictable();
-        if (!removeEntry(e, e.getHash(), RemovalCause.SIZE)) {
-          throw new AssertionError();
-        }
+      long maxWeight = currentMaxSegmentWeight();
+      while (totalWeight > maxWeight) {
+        evictEntry(getNextEvictable(), now);
       }
     }
 
-    // TODO(fry): instead implement this with an eviction head
+    /** Removes {@code entry} because of size, spilling it first if the cache has spillover. */
     @GuardedBy("this")
-    ReferenceEntry<K, V> getNextEvictable() {
-      for (ReferenceEntry<K, V> e : accessQueue) {
-        int weight = e.getValueReference().getWeight();
-        if (weight > 0) {
-          return e;
-        }
+    void evictEntry(ReferenceEntry<K, V> entry, long now) {
+      if (map.spillover != null) {
+        spill(entry, now);
+      }
+      if (!removeEntry(entry, entry.getHash(), RemovalCause.SIZE)) {
+        throw new AssertionError();
       }
-      throw new AssertionError();
     }
 
-    /** Returns first entry of bin for given hash. */
-    ReferenceEntry<K, V> getFirst(int hash) {
-      // read this volatile field only once
-      AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
-      return table.get(hash & (table.length() - 1));
+    /**
+     * Returns the maximum weight of this segment, reduced while the heap is under pressure if the
+     * cache evicts on memory pressure.
+     */
+    long currentMaxSegmentWeight() {
+      return (map.memoryPressureMonitor == null)
+          ? maxSegmentWeight
+          : map.memoryPressureMonitor.scale(maxSegmentWeight);
     }
 
-    // Specialized implementations of map methods
-
-    @Nullable
-    ReferenceEntry<K, V> getEntry(Object key, int hash) {
-      for (ReferenceEntry<K, V> e = getFirst(hash); e != null; e = e.getNext()) {
-        if (e.getHash() != hash) {
-          continue;
+    /**
+     * Evicts entries until this segment is within its {@linkplain #currentMaxSegmentWeight current
+     * maximum weight}. Nothing is evicted if the segment is locked; it is then trimmed by its next
+     * write instead.
+     */
+    void evictToPressureTarget() {
+      if (isHeldByCurrentThread() || !tryLock()) {
+        return;
+      }
+      try {
+        drainReadBuffer();
+        long now = (map.spillover == null) ? 0 : map.ticker.read();
+        long maxWeight = currentMaxSegmentWeight();
+        while (totalWeight > maxWeight) {
+          evictEntry(getNextEvictable(), now);
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Evicts least recently used entries weighing about {@code weight} in total, on behalf of the
+     * cache's weight budget, and returns the weight actually evicted. Nothing is evicted if the
+     * segment is locked, as the lock holder may be the thread enforcing the budget.
+     */
+    long shedWeight(long weight) {
+      if (isHeldByCurrentThread() || !tryLock()) {
+        return 0;
+      }
+      long shed = 0;
+      try {
+        drainReadBuffer();
+        long now = (map.spillover == null) ? 0 : map.ticker.read();
+        while (shed < weight && totalWeight > 0) {
+          ReferenceEntry<K, V> e = findNextEvictable();
+          if (e == null) {
+            break; // the remaining weight is not held by any evictable entry
+          }
+          shed += e.getValueReference().getWeight();
+          evictEntry(e, now);
+        }
+      } finally {
+        unlock();
+      }
+      runUnlockedCleanup();
+      return shed;
+    }
+
+    // TODO(fry): instead implement this with an eviction head
+    @GuardedBy("this")
+    ReferenceEntry<K, V> getNextEvictable() {
+      ReferenceEntry<K, V> e = findNextEvictable();
+      if (e == null) {
+        throw new AssertionError();
+      }
+      return e;
+    }
+
+    /** Returns the entry that should be evicted next, or null if every entry weighs zero. */
+    @GuardedBy("this")
+    @Nullable
+    ReferenceEntry<K, V> findNextEvictable() {
+      if (map.usesWindowTinyLfu()) {
+        return ((WindowTinyLfuQueue<K, V>) accessQueue).selectVictim();
+      }
+      for (ReferenceEntry<K, V> e : accessQueue) {
+        int weight = e.getValueReference().getWeight();
+        if (weight > 0) {
+          return e;
+        }
+      }
+      return null;
+    }
+
+    /** Returns first entry of bin for given hash. */
+    ReferenceEntry<K, V> getFirst(int hash) {
+      // read this volatile field only once
+      AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+      return table.get(hash & (table.length() - 1));
+    }
+
+    // Specialized implementations of map methods
+
+    @Nullable
+    ReferenceEntry<K, V> getEntry(Object key, int hash) {
+      for (ReferenceEntry<K, V> e = getFirst(hash); e != null; e = e.getNext()) {
+        if (e.getHash() != hash) {
+          continue;
         }
 
         K entryKey = e.getKey();
@@ -2770,10 +4087,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @Nullable
     V put(K key, int hash, V value, boolean onlyIfAbsent) {
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).put(key, hash, value, onlyIfAbsent);
+      }
       try {
         long now = map.ticker.read();
-        preWriteCleanup(now);
+        preWriteCleanup(key, hash, now);
 
         int newCount = this.count + 1;
         if (newCount > this.threshold) { // ensure capacity
@@ -2911,13 +4230,21 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
       table = newTable;
       this.count = newCount;
+      if (map.usesWindowTinyLfu()) {
+        // size the frequency sketch to the number of entries the segment can now hold
+        ((WindowTinyLfuQueue<K, V>) accessQueue)
+            .sketch
+            .ensureCapacity(Math.min(maxSegmentWeight, newTable.length()));
+      }
     }
 
     boolean replace(K key, int hash, V oldValue, V newValue) {
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).replace(key, hash, oldValue, newValue);
+      }
       try {
         long now = map.ticker.read();
-        preWriteCleanup(now);
+        preWriteCleanup(key, hash, now);
 
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
         int index = hash & (table.length() - 1);
@@ -2976,10 +4303,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @Nullable
     V replace(K key, int hash, V newValue) {
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).replace(key, hash, newValue);
+      }
       try {
         long now = map.ticker.read();
-        preWriteCleanup(now);
+        preWriteCleanup(key, hash, now);
 
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
         int index = hash & (table.length() - 1);
@@ -3031,10 +4360,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @Nullable
     V remove(Object key, int hash) {
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).remove(key, hash);
+      }
       try {
         long now = map.ticker.read();
-        preWriteCleanup(now);
+        preWriteCleanup(key, hash, now);
+        if (map.spillover != null) {
+          map.spillover.invalidate(key);
+        }
 
         int newCount = this.count - 1;
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
@@ -3077,10 +4411,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
 
     boolean remove(Object key, int hash, Object value) {
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).remove(key, hash, value);
+      }
       try {
         long now = map.ticker.read();
-        preWriteCleanup(now);
+        preWriteCleanup(key, hash, now);
 
         int newCount = this.count - 1;
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
@@ -3124,7 +4460,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     boolean storeLoadedValue(
         K key, int hash, LoadingValueReference<K, V> oldValueReference, V newValue) {
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).storeLoadedValue(key, hash, oldValueReference, newValue);
+      }
       try {
         long now = map.ticker.read();
         preWriteCleanup(now);
@@ -3149,7 +4487,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
             // replace the old LoadingValueReference if it's live, otherwise
             // perform a putIfAbsent
             if (oldValueReference == valueReference
-                || (entryValue == null && valueReference != UNSET)) {
+                || (entryValue == null
+                    && valueReference != UNSET
+                    && !(valueReference instanceof ComputingValueReference))) {
               ++modCount;
               if (oldValueReference.isActive()) {
                 RemovalCause cause =
@@ -3184,7 +4524,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     void clear() {
       if (count != 0) { // read-volatile
-        lock();
+        if (!lockIfCurrent()) {
+          return; // the segments that replaced this one are cleared by LocalCache.clear
+        }
         try {
           long now = map.ticker.read();
           preWriteCleanup(now);
@@ -3206,6 +4548,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           for (int i = 0; i < table.length(); ++i) {
             table.set(i, null);
           }
+          if (tagIndex != null) {
+            tagIndex.clear();
+          }
           clearReferenceQueues();
           writeQueue.clear();
           accessQueue.clear();
@@ -3220,6 +4565,219 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
+    /** Removes the entries tagged with {@code tag}, as a single operation on this segment. */
+    void invalidateByTag(Object tag) {
+      if (!lockIfCurrent()) {
+        return; // the segments that replaced this one are invalidated by LocalCache
+      }
+      try {
+        for (K key : tagIndex.keysTagged(tag)) {
+          remove(key, map.hash(key)); // reentrant
+        }
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
+    /**
+     * Returns up to {@code limit} of this segment's live entries, most recently used first, or in
+     * table order if this segment doesn't maintain an access order.
+     */
+    List<Map.Entry<K, V>> hottestEntries(int limit) {
+      List<Map.Entry<K, V>> result = new ArrayList<>();
+      if (count == 0) { // read-volatile
+        return result;
+      }
+      lock();
+      try {
+        long now = map.ticker.read();
+        if (map.usesAccessQueue()) {
+          drainReadBuffer();
+          // the access queue is ordered from least to most recently used
+          List<ReferenceEntry<K, V>> accessOrder = new ArrayList<>(accessQueue);
+          for (int i = accessOrder.size() - 1; i >= 0 && result.size() < limit; i--) {
+            addLiveEntry(accessOrder.get(i), now, result);
+          }
+        } else {
+          AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+          for (int i = 0; i < table.length() && result.size() < limit; ++i) {
+            for (ReferenceEntry<K, V> e = table.get(i); e != null; e = e.getNext()) {
+              addLiveEntry(e, now, result);
+            }
+          }
+        }
+      } finally {
+        unlock();
+      }
+      return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * Copies the entries of {@code sources}, segments being replaced by a resize of the cache, that
+     * belong to this segment among {@code newSegments}. Entries keep their relative order in the
+     * access and write queues of their source; entries of different sources are interleaved by
+     * access and write time where the cache records those, and alternately otherwise.
+     */
+    @GuardedBy("this")
+    void adoptEntries(List<Segment<K, V>> sources, Segment<K, V>[] newSegments) {
+      int adopted = 0;
+      for (Segment<K, V> source : sources) {
+        AtomicReferenceArray<ReferenceEntry<K, V>> sourceTable = source.table;
+        for (int i = 0; i < sourceTable.length(); ++i) {
+          for (ReferenceEntry<K, V> e = sourceTable.get(i); e != null; e = e.getNext()) {
+            if (segmentFor(newSegments, e.getHash()) == this) {
+              adopted++;
+            }
+          }
+        }
+      }
+      int capacity = table.length();
+      while (capacity * 3 / 4 < adopted && capacity < MAXIMUM_CAPACITY) {
+        capacity <<= 1;
+      }
+      initTable(newEntryArray(capacity));
+
+      int newCount = 0;
+      List<List<ReferenceEntry<K, V>>> accessOrders = new ArrayList<>(sources.size());
+      List<List<ReferenceEntry<K, V>>> writeOrders = new ArrayList<>(sources.size());
+      for (Segment<K, V> source : sources) {
+        Map<ReferenceEntry<K, V>, ReferenceEntry<K, V>> copies = new IdentityHashMap<>();
+        AtomicReferenceArray<ReferenceEntry<K, V>> sourceTable = source.table;
+        for (int i = 0; i < sourceTable.length(); ++i) {
+          for (ReferenceEntry<K, V> e = sourceTable.get(i); e != null; e = e.getNext()) {
+            if (segmentFor(newSegments, e.getHash()) == this) {
+              ReferenceEntry<K, V> copy = adoptEntry(source, e);
+              if (copy != null) {
+                copies.put(e, copy);
+                if (copy.getValueReference().isActive()) {
+                  newCount++;
+                }
+              }
+            }
+          }
+        }
+        accessOrders.add(copiesInQueueOrder(source.accessQueue, copies));
+        writeOrders.add(copiesInQueueOrder(source.writeQueue, copies));
+        averageLoadNanos = Math.max(averageLoadNanos, source.averageLoadNanos);
+      }
+      accessQueue.addAll(
+          interleave(accessOrders, map.recordsAccess() ? ReferenceEntry::getAccessTime : null));
+      writeQueue.addAll(
+          interleave(writeOrders, map.recordsWrite() ? ReferenceEntry::getWriteTime : null));
+      ++modCount;
+      this.count = newCount; // write-volatile
+    }
+
+    /**
+     * Copies {@code original}, an entry of {@code source}, into this segment's table and returns
+     * the copy, or returns null and notifies the removal of the entry if its key or value was
+     * garbage collected.
+     */
+    @GuardedBy("this")
+    @Nullable
+    ReferenceEntry<K, V> adoptEntry(Segment<K, V> source, ReferenceEntry<K, V> original) {
+      K key = original.getKey();
+      int hash = original.getHash();
+      ValueReference<K, V> valueReference = original.getValueReference();
+      V value = valueReference.get();
+      if (key == null || (value == null && valueReference.isActive())) {
+        if (valueReference.isActive()) {
+          source.enqueueNotification(
+              key, hash, value, valueReference.getWeight(), RemovalCause.COLLECTED);
+        }
+        return null;
+      }
+
+      AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+      int index = hash & (table.length() - 1);
+      ReferenceEntry<K, V> copy = newEntry(key, hash, table.get(index));
+      if (map.usesAccessEntries()) {
+        copy.setAccessTime(original.getAccessTime());
+      }
+      if (map.usesWriteEntries()) {
+        copy.setWriteTime(original.getWriteTime());
+      }
+      copy.setValueReference(valueReference.copyFor(valueReferenceQueue, value, copy));
+      table.set(index, copy);
+      if (valueReference.isActive()) {
+        totalWeight += valueReference.getWeight();
+      }
+      if (tagIndex != null) {
+        tagIndex.tag(key, source.tagIndex.tagsOf(key));
+      }
+      return copy;
+    }
+
+    /** Returns the copies of the entries of {@code queue} in {@code copies}, in queue order. */
+    private static <K, V> List<ReferenceEntry<K, V>> copiesInQueueOrder(
+        Queue<ReferenceEntry<K, V>> queue,
+        Map<ReferenceEntry<K, V>, ReferenceEntry<K, V>> copies) {
+      List<ReferenceEntry<K, V>> result = new ArrayList<>();
+      for (ReferenceEntry<K, V> e : queue) {
+        ReferenceEntry<K, V> copy = copies.get(e);
+        if (copy != null) {
+          result.add(copy);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Merges {@code orders} into a single order. If {@code time} is non-null, the entry with the
+     * earliest time among the next entries of the orders is taken first; otherwise the orders are
+     * taken from in turn, in proportion to their lengths.
+     */
+    private static <K, V> List<ReferenceEntry<K, V>> interleave(
+        List<List<ReferenceEntry<K, V>>> orders,
+        @Nullable ToLongFunction<ReferenceEntry<K, V>> time) {
+      if (orders.size() == 1) {
+        return orders.get(0);
+      }
+      int total = 0;
+      for (List<ReferenceEntry<K, V>> order : orders) {
+        total += order.size();
+      }
+      List<ReferenceEntry<K, V>> result = new ArrayList<>(total);
+      int[] positions = new int[orders.size()];
+      while (result.size() < total) {
+        int next = -1;
+        for (int i = 0; i < orders.size(); i++) {
+          if (positions[i] < orders.get(i).size()
+              && (next < 0 || precedes(orders, positions, i, next, time))) {
+            next = i;
+          }
+        }
+        result.add(orders.get(next).get(positions[next]++));
+      }
+      return result;
+    }
+
+    /** Returns whether the next entry of order {@code i} goes before that of order {@code j}. */
+    private static <K, V> boolean precedes(
+        List<List<ReferenceEntry<K, V>>> orders,
+        int[] positions,
+        int i,
+        int j,
+        @Nullable ToLongFunction<ReferenceEntry<K, V>> time) {
+      if (time != null) {
+        return time.applyAsLong(orders.get(i).get(positions[i]))
+            < time.applyAsLong(orders.get(j).get(positions[j]));
+      }
+      // compare the fractions of the orders that were taken
+      return (long) positions[i] * orders.get(j).size()
+          < (long) positions[j] * orders.get(i).size();
+    }
+
+    @GuardedBy("this")
+    void addLiveEntry(ReferenceEntry<K, V> entry, long now, List<Map.Entry<K, V>> result) {
+      K key = entry.getKey();
+      V value = entry.getValueReference().get();
+      if (key != null && value != null && !map.isExpired(entry, now)) {
+        result.add(Maps.immutableEntry(key, value));
+      }
+    }
+
     @GuardedBy("this")
     @Nullable
     ReferenceEntry<K, V> removeValueFromChain(
@@ -3233,8 +4791,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       enqueueNotification(key, hash, value, valueReference.getWeight(), cause);
       writeQueue.remove(entry);
       accessQueue.remove(entry);
+      if (tagIndex != null && key != null) {
+        tagIndex.untag(key);
+      }
 
-      if (valueReference.isLoading()) {
+      if (valueReference.isLoading() || valueReference instanceof ComputingValueReference) {
         valueReference.notifyNewValue(null);
         return first;
       } else {
@@ -3271,11 +4832,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           RemovalCause.COLLECTED);
       writeQueue.remove(entry);
       accessQueue.remove(entry);
+      if (tagIndex != null && entry.getKey() != null) {
+        tagIndex.untag(entry.getKey());
+      }
     }
 
     /** Removes an entry whose key has been garbage collected. */
     boolean reclaimKey(ReferenceEntry<K, V> entry, int hash) {
-      lock();
+      if (!lockIfCurrent()) {
+        return false; // the segment that replaced this one reclaims its own copy of the entry
+      }
       try {
         int newCount = count - 1;
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
@@ -3310,7 +4876,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     /** Removes an entry whose value has been garbage collected. */
     boolean reclaimValue(K key, int hash, ValueReference<K, V> valueReference) {
-      lock();
+      if (!lockIfCurrent()) {
+        return false; // the segment that replaced this one reclaims its own copy of the entry
+      }
       try {
         int newCount = this.count - 1;
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
@@ -3353,7 +4921,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
 
     boolean removeLoadingValue(K key, int hash, LoadingValueReference<K, V> valueReference) {
-      lock();
+      if (!lockIfCurrent()) {
+        return map.segmentFor(hash).removeLoadingValue(key, hash, valueReference);
+      }
       try {
         AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
         int index = hash & (table.length() - 1);
@@ -3371,6 +4941,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
               } else {
                 ReferenceEntry<K, V> newFirst = removeEntryFromChain(first, e);
                 table.set(index, newFirst);
+                if (tagIndex != null) {
+                  tagIndex.untag(entryKey);
+                }
               }
               return true;
             }
@@ -3421,7 +4994,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      */
     void postReadCleanup() {
       if ((readCount.incrementAndGet() & DRAIN_THRESHOLD) == 0) {
-        cleanUp();
+        if (map.maintenanceExecutor != null) {
+          scheduleCleanUp();
+        } else {
+          cleanUp();
+        }
       }
     }
 
@@ -3429,15 +5006,46 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      * Performs routine cleanup prior to executing a write. This should be called every time a write
      * thread acquires the segment lock, immediately after acquiring the lock.
      *
-     * <p>Post-condition: expireEntries has been run.
+     * <p>Post-condition: expireEntries has been run, unless maintenance is performed by the cache's
+     * executor, in which case it has been scheduled.
      */
     @GuardedBy("this")
     void preWriteCleanup(long now) {
-      runLockedCleanup(now);
+      if (map.maintenanceExecutor != null) {
+        scheduleCleanUp();
+      } else {
+        runLockedCleanup(now);
+      }
+    }
+
+    /**
+     * Performs routine cleanup prior to executing a write to the entry for {@code key}. In addition
+     * to {@link #preWriteCleanup(long)}, this removes the entry if it has expired but was not yet
+     * purged, because its timer wheel bucket was not yet reached or because maintenance is
+     * performed by the cache's executor, so that the write does not observe the expired value.
+     */
+    @GuardedBy("this")
+    void preWriteCleanup(Object key, int hash, long now) {
+      preWriteCleanup(now);
+      if (map.expiresVariably() || map.maintenanceExecutor != null) {
+        ReferenceEntry<K, V> e = getEntry(key, hash);
+        if (e != null && e.getValueReference().get() != null && map.isExpired(e, now)) {
+          removeEntry(e, hash, RemovalCause.EXPIRED);
+        }
+      }
     }
 
     /** Performs routine cleanup following a write. */
     void postWriteCleanup() {
+      if (map.budgetMember != null && !isHeldByCurrentThread()) {
+        map.budgetMember.enforce();
+      }
+      if (map.memoryPressureMonitor != null) {
+        map.memoryPressureMonitor.poll();
+      }
+      if (map.adaptsConcurrency && !isHeldByCurrentThread()) {
+        map.pollContention();
+      }
       runUnlockedCleanup();
     }
 
@@ -3451,7 +5059,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (tryLock()) {
         try {
           drainReferenceQueues();
-          expireEntries(now); // calls drainRecencyQueue
+          expireEntries(now); // calls drainReadBuffer
           readCount.set(0);
         } finally {
           unlock();
@@ -3462,8 +5070,48 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     void runUnlockedCleanup() {
       // locked cleanup may generate notifications we can send unlocked
       if (!isHeldByCurrentThread()) {
-        map.processPendingNotifications();
+        if (map.maintenanceExecutor != null) {
+          map.scheduleNotifications();
+        } else {
+          map.processPendingNotifications();
+        }
+      }
+    }
+
+    /**
+     * Performs routine cleanup on the cache's executor, unless a task doing so is already pending.
+     * If the executor rejects the task, cleanup is attempted on the calling thread.
+     */
+    void scheduleCleanUp() {
+      if (cleanUpScheduled.get() || !cleanUpScheduled.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        map.maintenanceExecutor.execute(this::runScheduledCleanUp);
+      } catch (RejectedExecutionException e) {
+        cleanUpScheduled.set(false);
+        runLockedCleanup(map.ticker.read());
+      }
+    }
+
+    /**
+     * Performs the cleanup scheduled by {@link #scheduleCleanUp}. Unlike {@link #cleanUp}, this
+     * waits for the lock, as it runs on the executor rather than on a thread using the cache.
+     */
+    void runScheduledCleanUp() {
+      // cleared first, so that cleanup requested while this runs is scheduled again
+      cleanUpScheduled.set(false);
+      if (!lockIfCurrent()) {
+        return;
+      }
+      try {
+        drainReferenceQueues();
+        expireEntries(map.ticker.read()); // calls drainReadBuffer
+        readCount.set(0);
+      } finally {
+        unlock();
       }
+      map.processPendingNotifications();
     }
   }
 
@@ -3556,25 +5204,6 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
-    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
-      stopwatch.start();
-      V previousValue;
-      try {
-        previousValue = oldValue.waitForValue();
-      } catch (ExecutionException e) {
-        previousValue = null;
-      }
-      V newValue;
-      try {
-        newValue = function.apply(key, previousValue);
-      } catch (Throwable th) {
-        this.setException(th);
-        throw th;
-      }
-      this.set(newValue);
-      return newValue;
-    }
-
     public long elapsedNanos() {
       return stopwatch.elapsed(NANOSECONDS);
     }
@@ -3606,10 +5235,45 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   static class ComputingValueReference<K, V> extends LoadingValueReference<K, V> {
+    /** The thread applying the remapping function, used to detect recursive computations. */
+    final Thread thread = Thread.currentThread();
+
     ComputingValueReference(ValueReference<K, V> oldValue) {
       super(oldValue);
     }
 
+    /**
+     * Applies {@code function} to the previous value of {@code key}, first waiting for the value
+     * to be loaded if that is in progress. This doesn't complete the reference: the caller does so
+     * once the result is stored, so that waiters are only released then.
+     */
+    @Nullable
+    V apply(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+      stopwatch.start();
+      V previousValue;
+      try {
+        previousValue = oldValue.waitForValue();
+      } catch (ExecutionException e) {
+        // the previous load failed, leaving the value it was replacing
+        previousValue = oldValue.get();
+      }
+      return function.apply(key, previousValue);
+    }
+
+    /**
+     * Waits until the computation completes, whether or not it succeeds.
+     *
+     * @throws IllegalStateException if called by the computing thread, which would deadlock
+     */
+    void awaitCompletion(Object key) {
+      checkState(thread != Thread.currentThread(), "Recursive load of: %s", key);
+      try {
+        waitForValue();
+      } catch (ExecutionException e) {
+        // the caller retries its operation, which no longer sees the computation
+      }
+    }
+
     @Override
     public boolean isLoading() {
       return false;
@@ -3757,6 +5421,237 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  /*
+   * Derived from the TimerWheel of Caffeine, Copyright 2017 Ben Manes, which is released under the
+   * Apache License, Version 2.0. Source:
+   * https://github.com/ben-manes/caffeine/blob/master/caffeine/src/main/java/com/github/benmanes/caffeine/cache/TimerWheel.java
+   * (Modified to adapt to Guava coding conventions and to link entries through ReferenceEntry)
+   */
+
+  /**
+   * A hierarchical timer wheel for managing variable expiration (see <a
+   * href="http://www.cs.columbia.edu/~nahum/w6998/papers/ton97-timing-wheels.pdf">Hashed and
+   * Hierarchical Timing Wheels</a>). Each level of the wheel is an array of buckets covering a
+   * coarser span of time than the previous level. An entry is placed into the finest bucket that
+   * covers its expiration time, and is cascaded to a finer bucket when its coarse bucket is reached
+   * before it has expired. Scheduling and removal are O(1), and advancing the wheel only visits the
+   * buckets whose time has come, so the cost of expiration is amortized O(1) per entry.
+   *
+   * <p>Like {@link WriteQueue}, this is tightly integrated with {@code ReferenceEntry}, whose
+   * write queue links it uses; each bucket is itself a {@code WriteQueue}, so that entries can be
+   * replaced in the middle of a bucket as part of copyWriteEntry.
+   */
+  static final class TimerWheel<K, V> extends AbstractQueue<ReferenceEntry<K, V>> {
+    static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    static final long[] SPANS = {
+      LongMath.ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+      LongMath.ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+      LongMath.ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)), // 1.22h
+      LongMath.ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 1.63d
+      BUCKETS[3] * LongMath.ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+      BUCKETS[3] * LongMath.ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+    };
+    static final int[] SHIFT = new int[BUCKETS.length];
+
+    static {
+      for (int i = 0; i < SHIFT.length; i++) {
+        SHIFT[i] = Long.numberOfTrailingZeros(SPANS[i]);
+      }
+    }
+
+    final WriteQueue<K, V>[][] wheel;
+
+    /** Holds the contents of the bucket being expired, so that entries may be rescheduled. */
+    final WriteQueue<K, V> pending = new WriteQueue<>();
+
+    /** The time of the last advance, in ns. */
+    long nanos;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long nanos) {
+      this.nanos = nanos;
+      wheel = (WriteQueue<K, V>[][]) new WriteQueue<?, ?>[BUCKETS.length][];
+      for (int i = 0; i < wheel.length; i++) {
+        wheel[i] = (WriteQueue<K, V>[]) new WriteQueue<?, ?>[BUCKETS[i]];
+        for (int j = 0; j < wheel[i].length; j++) {
+          wheel[i][j] = new WriteQueue<>();
+        }
+      }
+    }
+
+    /**
+     * Advances the timer to {@code currentTimeNanos}, removing the entries of {@code segment} that
+     * have expired and cascading the others to finer buckets.
+     */
+    @GuardedBy("Segment.this")
+    void advance(Segment<K, V> segment, long currentTimeNanos) {
+      long previousTimeNanos = nanos;
+      nanos = currentTimeNanos;
+
+      // If wrapping then temporarily shift the clock for a positive comparison
+      if ((previousTimeNanos < 0) && (currentTimeNanos > 0)) {
+        previousTimeNanos += Long.MAX_VALUE;
+        currentTimeNanos += Long.MAX_VALUE;
+      }
+
+      for (int i = 0; i < SHIFT.length; i++) {
+        long previousTicks = (previousTimeNanos >>> SHIFT[i]);
+        long currentTicks = (currentTimeNanos >>> SHIFT[i]);
+        long delta = (currentTicks - previousTicks);
+        if (delta <= 0L) {
+          break;
+        }
+        expire(segment, i, previousTicks, delta);
+      }
+    }
+
+    /** Expires or reschedules the entries in the buckets of a level that the timer has passed. */
+    void expire(Segment<K, V> segment, int index, long previousTicks, long delta) {
+      WriteQueue<K, V>[] timerWheel = wheel[index];
+      int mask = timerWheel.length - 1;
+      int steps = (int) Math.min(1 + delta, timerWheel.length);
+      int start = (int) (previousTicks & mask);
+      int end = start + steps;
+
+      for (int i = start; i < end; i++) {
+        transfer(timerWheel[i & mask], pending);
+        ReferenceEntry<K, V> e;
+        while ((e = pending.poll()) != null) {
+          if (e.getExpirationTime() - nanos > 0) {
+            offer(e);
+          } else if (!segment.removeEntry(e, e.getHash(), RemovalCause.EXPIRED)) {
+            throw new AssertionError();
+          }
+        }
+      }
+    }
+
+    /** Moves all entries of {@code source} to the empty {@code target}, preserving their order. */
+    static <K, V> void transfer(WriteQueue<K, V> source, WriteQueue<K, V> target) {
+      if (source.isEmpty()) {
+        return;
+      }
+      ReferenceEntry<K, V> first = source.head.getNextInWriteQueue();
+      ReferenceEntry<K, V> last = source.head.getPreviousInWriteQueue();
+      connectWriteOrder(target.head, first);
+      connectWriteOrder(last, target.head);
+      source.head.setNextInWriteQueue(source.head);
+      source.head.setPreviousInWriteQueue(source.head);
+    }
+
+    /** Returns the bucket that covers {@code time}. */
+    WriteQueue<K, V> findBucket(long time) {
+      long duration = time - nanos;
+      int length = wheel.length - 1;
+      for (int i = 0; i < length; i++) {
+        if (duration < SPANS[i + 1]) {
+          long ticks = (time >>> SHIFT[i]);
+          int index = (int) (ticks & (wheel[i].length - 1));
+          return wheel[i][index];
+        }
+      }
+      return wheel[length][0];
+    }
+
+    // implements Queue
+
+    /** Schedules (or reschedules) {@code entry} according to its expiration time. */
+    @Override
+    public boolean offer(ReferenceEntry<K, V> entry) {
+      long time = entry.getExpirationTime();
+      if (time - nanos < 0) {
+        // already expired, so remove it when the current bucket is next expired
+        time = nanos;
+      }
+      return findBucket(time).offer(entry);
+    }
+
+    /**
+     * Returns an entry of the earliest non-empty bucket. This is not necessarily the entry that
+     * expires first.
+     */
+    @Override
+    public ReferenceEntry<K, V> peek() {
+      for (int i = 0; i < wheel.length; i++) {
+        WriteQueue<K, V>[] timerWheel = wheel[i];
+        long ticks = (nanos >>> SHIFT[i]);
+        for (int j = 0; j < timerWheel.length; j++) {
+          ReferenceEntry<K, V> e = timerWheel[(int) ((ticks + j) & (timerWheel.length - 1))].peek();
+          if (e != null) {
+            return e;
+          }
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> poll() {
+      ReferenceEntry<K, V> next = peek();
+      if (next == null) {
+        return null;
+      }
+
+      remove(next);
+      return next;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry<K, V>) o;
+      ReferenceEntry<K, V> previous = e.getPreviousInWriteQueue();
+      ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+      connectWriteOrder(previous, next);
+      nullifyWriteOrder(e);
+
+      return next != NullEntry.INSTANCE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry<K, V>) o;
+      return e.getNextInWriteQueue() != NullEntry.INSTANCE;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return peek() == null;
+    }
+
+    @Override
+    public int size() {
+      int size = 0;
+      for (WriteQueue<K, V>[] timerWheel : wheel) {
+        for (WriteQueue<K, V> bucket : timerWheel) {
+          size += bucket.size();
+        }
+      }
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      for (WriteQueue<K, V>[] timerWheel : wheel) {
+        for (WriteQueue<K, V> bucket : timerWheel) {
+          bucket.clear();
+        }
+      }
+    }
+
+    @Override
+    public Iterator<ReferenceEntry<K, V>> iterator() {
+      List<Iterator<ReferenceEntry<K, V>>> iterators = new ArrayList<>();
+      for (WriteQueue<K, V>[] timerWheel : wheel) {
+        for (WriteQueue<K, V> bucket : timerWheel) {
+          iterators.add(bucket.iterator());
+        }
+      }
+      return Iterators.concat(iterators.iterator());
+    }
+  }
+
   /**
    * A custom queue for managing access order. Note that this is tightly integrated with {@code
    * ReferenceEntry}, upon which it relies to perform its linking.
@@ -3812,23 +5707,313 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       // unlink
       connectAccessOrder(entry.getPreviousInAccessQueue(), entry.getNextInAccessQueue());
 
-      // add to tail
-      connectAccessOrder(head.getPreviousInAccessQueue(), entry);
-      connectAccessOrder(entry, head);
+      // add to tail
+      connectAccessOrder(head.getPreviousInAccessQueue(), entry);
+      connectAccessOrder(entry, head);
+
+      return true;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> peek() {
+      ReferenceEntry<K, V> next = head.getNextInAccessQueue();
+      return (next == head) ? null : next;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> poll() {
+      ReferenceEntry<K, V> next = head.getNextInAccessQueue();
+      if (next == head) {
+        return null;
+      }
+
+      remove(next);
+      return next;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry<K, V>) o;
+      ReferenceEntry<K, V> previous = e.getPreviousInAccessQueue();
+      ReferenceEntry<K, V> next = e.getNextInAccessQueue();
+      connectAccessOrder(previous, next);
+      nullifyAccessOrder(e);
+
+      return next != NullEntry.INSTANCE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry<K, V>) o;
+      return e.getNextInAccessQueue() != NullEntry.INSTANCE;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return head.getNextInAccessQueue() == head;
+    }
+
+    @Override
+    public int size() {
+      int size = 0;
+      for (ReferenceEntry<K, V> e = head.getNextInAccessQueue();
+          e != head;
+          e = e.getNextInAccessQueue()) {
+        size++;
+      }
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      ReferenceEntry<K, V> e = head.getNextInAccessQueue();
+      while (e != head) {
+        ReferenceEntry<K, V> next = e.getNextInAccessQueue();
+        nullifyAccessOrder(e);
+        e = next;
+      }
+
+      head.setNextInAccessQueue(head);
+      head.setPreviousInAccessQueue(head);
+    }
+
+    @Override
+    public Iterator<ReferenceEntry<K, V>> iterator() {
+      return new AbstractSequentialIterator<ReferenceEntry<K, V>>(peek()) {
+        @Override
+        protected ReferenceEntry<K, V> computeNext(ReferenceEntry<K, V> previous) {
+          ReferenceEntry<K, V> next = previous.getNextInAccessQueue();
+          return (next == head) ? null : next;
+        }
+      };
+    }
+  }
+
+  /**
+   * An access queue that partitions its entries into the three regions of the W-TinyLFU eviction
+   * policy (see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache
+   * Admission Policy</a>). Like {@link AccessQueue}, it is tightly integrated with {@code
+   * ReferenceEntry}, whose access links it reuses; the region that an entry belongs to is recorded
+   * in the entry itself.
+   *
+   * <ul>
+   *   <li>The <i>window</i> is a small LRU queue that admits all new entries, so that bursts of
+   *       accesses to new keys are not rejected outright.
+   *   <li>The <i>probation</i> region is the LRU queue of the main region from which victims are
+   *       chosen. Entries overflowing the window compete with the probation victim, and only the
+   *       one with the higher estimated access frequency is retained.
+   *   <li>The <i>protected</i> region holds main region entries that were accessed again while on
+   *       probation. Its least recently used entries are demoted back to probation when it grows
+   *       beyond its share.
+   * </ul>
+   *
+   * <p>Region sizes are measured in weight, so the policy works the same way for {@code
+   * maximumSize} and {@code maximumWeight}. Entries with zero weight are never chosen as victims.
+   */
+  static final class WindowTinyLfuQueue<K, V> extends AbstractQueue<ReferenceEntry<K, V>> {
+    static final int WINDOW = 1;
+    static final int PROBATION = 2;
+    static final int PROTECTED = 3;
+
+    /** The share of the segment's maximum weight given to the admission window. */
+    static final double WINDOW_PERCENTAGE = 0.01;
+
+    /** The share of the main region's maximum weight given to the protected region. */
+    static final double PROTECTED_PERCENTAGE = 0.80;
+
+    /**
+     * Beyond this frequency a rejected candidate is occasionally admitted anyway, so that an
+     * attacker can't pin the victim in place by flooding the sketch with colliding keys.
+     */
+    static final int ADMIT_HASHDOS_THRESHOLD = 6;
+
+    final AccessQueue<K, V> window = new AccessQueue<>();
+    final AccessQueue<K, V> probation = new AccessQueue<>();
+    final AccessQueue<K, V> protectedQueue = new AccessQueue<>();
+    final FrequencySketch sketch = new FrequencySketch();
+
+    final long maxWindowWeight;
+    final long maxMainWeight;
+    final long maxProtectedWeight;
+
+    long windowWeight;
+    long probationWeight;
+    long protectedWeight;
+
+    WindowTinyLfuQueue(long maxSegmentWeight, long expectedEntries) {
+      this.maxWindowWeight = (long) (maxSegmentWeight * WINDOW_PERCENTAGE);
+      this.maxMainWeight = maxSegmentWeight - maxWindowWeight;
+      this.maxProtectedWeight = (long) (maxMainWeight * PROTECTED_PERCENTAGE);
+      sketch.ensureCapacity(expectedEntries);
+    }
+
+    /**
+     * Records an access to {@code entry}, adding it to the window if it is not yet present. An
+     * access promotes an entry on probation to the protected region.
+     */
+    @Override
+    public boolean offer(ReferenceEntry<K, V> entry) {
+      sketch.increment(entry.getHash());
+      switch (entry.getAccessRegion()) {
+        case WINDOW:
+          window.offer(entry);
+          break;
+        case PROBATION:
+          int weight = entry.getValueReference().getWeight();
+          probation.remove(entry);
+          probationWeight -= weight;
+          protectedQueue.offer(entry);
+          protectedWeight += weight;
+          entry.setAccessRegion(PROTECTED);
+          demoteFromProtected();
+          break;
+        case PROTECTED:
+          protectedQueue.offer(entry);
+          break;
+        default:
+          window.offer(entry);
+          windowWeight += entry.getValueReference().getWeight();
+          entry.setAccessRegion(WINDOW);
+          drainWindowOverflow();
+          break;
+      }
+      return true;
+    }
+
+    /** Adjusts the region weights when the value of {@code entry} is replaced. */
+    void reweigh(ReferenceEntry<K, V> entry, int oldWeight, int newWeight) {
+      int delta = newWeight - oldWeight;
+      switch (entry.getAccessRegion()) {
+        case WINDOW:
+          windowWeight += delta;
+          break;
+        case PROBATION:
+          probationWeight += delta;
+          break;
+        case PROTECTED:
+          protectedWeight += delta;
+          break;
+        default:
+          // not yet in the queue; its weight will be accounted for when it is added
+          break;
+      }
+    }
+
+    /**
+     * Moves the window's least recently used entries to the main region while the window exceeds
+     * its share and the main region still has room for them, as nothing needs to be evicted yet.
+     */
+    void drainWindowOverflow() {
+      while (windowWeight > maxWindowWeight) {
+        ReferenceEntry<K, V> candidate = window.peek();
+        int weight = candidate.getValueReference().getWeight();
+        if (probationWeight + protectedWeight + weight > maxMainWeight) {
+          return;
+        }
+        moveToProbation(candidate, weight);
+      }
+    }
+
+    /** Demotes the protected region's least recently used entries while it exceeds its share. */
+    void demoteFromProtected() {
+      while (protectedWeight > maxProtectedWeight) {
+        ReferenceEntry<K, V> demoted = protectedQueue.peek();
+        int weight = demoted.getValueReference().getWeight();
+        protectedQueue.remove(demoted);
+        protectedWeight -= weight;
+        probation.offer(demoted);
+        probationWeight += weight;
+        demoted.setAccessRegion(PROBATION);
+      }
+    }
+
+    void moveToProbation(ReferenceEntry<K, V> candidate, int weight) {
+      window.remove(candidate);
+      windowWeight -= weight;
+      probation.offer(candidate);
+      probationWeight += weight;
+      candidate.setAccessRegion(PROBATION);
+    }
+
+    /**
+     * Returns the entry that should be evicted next. If the window exceeds its share, its least
+     * recently used entry is a candidate for the main region and competes with the main region's
+     * victim: the one less frequently used according to the sketch is returned, and a winning
+     * candidate is moved to probation. Returns null if every entry weighs zero.
+     */
+    @Nullable
+    ReferenceEntry<K, V> selectVictim() {
+      ReferenceEntry<K, V> candidate =
+          (windowWeight > maxWindowWeight) ? firstEvictable(window) : null;
+      ReferenceEntry<K, V> victim = firstEvictable(probation);
+      if (victim == null) {
+        victim = firstEvictable(protectedQueue);
+      }
+      if (candidate == null) {
+        if (victim == null) {
+          victim = firstEvictable(window);
+        }
+        return victim;
+      } else if (victim == null) {
+        return candidate;
+      } else if (admit(candidate.getHash(), victim.getHash())) {
+        moveToProbation(candidate, candidate.getValueReference().getWeight());
+        return victim;
+      }
+      return candidate;
+    }
+
+    /**
+     * Determines if the candidate should be accepted into the main region, displacing the victim.
+     */
+    boolean admit(int candidateHash, int victimHash) {
+      int victimFreq = sketch.frequency(victimHash);
+      int candidateFreq = sketch.frequency(candidateHash);
+      if (candidateFreq > victimFreq) {
+        return true;
+      } else if (candidateFreq < ADMIT_HASHDOS_THRESHOLD) {
+        return false;
+      }
+      return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
 
-      return true;
+    @Nullable
+    static <K, V> ReferenceEntry<K, V> firstEvictable(AccessQueue<K, V> queue) {
+      for (ReferenceEntry<K, V> e : queue) {
+        if (e.getValueReference().getWeight() > 0) {
+          return e;
+        }
+      }
+      return null;
     }
 
+    // implements Queue
+
+    /**
+     * Returns the least recently accessed of the regions' heads. As promotion and demotion don't
+     * preserve access order across regions, this is only an approximation of the globally least
+     * recently accessed entry; entries that expire out of order are removed once they are reached.
+     */
     @Override
     public ReferenceEntry<K, V> peek() {
-      ReferenceEntry<K, V> next = head.getNextInAccessQueue();
-      return (next == head) ? null : next;
+      ReferenceEntry<K, V> result = window.peek();
+      ReferenceEntry<K, V> next = probation.peek();
+      if (result == null || (next != null && next.getAccessTime() < result.getAccessTime())) {
+        result = next;
+      }
+      next = protectedQueue.peek();
+      if (result == null || (next != null && next.getAccessTime() < result.getAccessTime())) {
+        result = next;
+      }
+      return result;
     }
 
     @Override
     public ReferenceEntry<K, V> poll() {
-      ReferenceEntry<K, V> next = head.getNextInAccessQueue();
-      if (next == head) {
+      ReferenceEntry<K, V> next = peek();
+      if (next == null) {
         return null;
       }
 
@@ -3840,12 +6025,23 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     @SuppressWarnings("unchecked")
     public boolean remove(Object o) {
       ReferenceEntry<K, V> e = (ReferenceEntry<K, V>) o;
-      ReferenceEntry<K, V> previous = e.getPreviousInAccessQueue();
-      ReferenceEntry<K, V> next = e.getNextInAccessQueue();
-      connectAccessOrder(previous, next);
-      nullifyAccessOrder(e);
-
-      return next != NullEntry.INSTANCE;
+      int weight = e.getValueReference().getWeight();
+      switch (e.getAccessRegion()) {
+        case WINDOW:
+          windowWeight -= weight;
+          break;
+        case PROBATION:
+          probationWeight -= weight;
+          break;
+        case PROTECTED:
+          protectedWeight -= weight;
+          break;
+        default:
+          break;
+      }
+      e.setAccessRegion(0);
+      // AccessQueue.remove only relinks the entry's neighbors, whichever region they are in
+      return window.remove(e);
     }
 
     @Override
@@ -3857,42 +6053,30 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @Override
     public boolean isEmpty() {
-      return head.getNextInAccessQueue() == head;
+      return window.isEmpty() && probation.isEmpty() && protectedQueue.isEmpty();
     }
 
     @Override
     public int size() {
-      int size = 0;
-      for (ReferenceEntry<K, V> e = head.getNextInAccessQueue();
-          e != head;
-          e = e.getNextInAccessQueue()) {
-        size++;
-      }
-      return size;
+      return window.size() + probation.size() + protectedQueue.size();
     }
 
     @Override
     public void clear() {
-      ReferenceEntry<K, V> e = head.getNextInAccessQueue();
-      while (e != head) {
-        ReferenceEntry<K, V> next = e.getNextInAccessQueue();
-        nullifyAccessOrder(e);
-        e = next;
+      for (ReferenceEntry<K, V> e : this) {
+        e.setAccessRegion(0);
       }
-
-      head.setNextInAccessQueue(head);
-      head.setPreviousInAccessQueue(head);
+      window.clear();
+      probation.clear();
+      protectedQueue.clear();
+      windowWeight = 0;
+      probationWeight = 0;
+      protectedWeight = 0;
     }
 
     @Override
     public Iterator<ReferenceEntry<K, V>> iterator() {
-      return new AbstractSequentialIterator<ReferenceEntry<K, V>>(peek()) {
-        @Override
-        protected ReferenceEntry<K, V> computeNext(ReferenceEntry<K, V> previous) {
-          ReferenceEntry<K, V> next = previous.getNextInAccessQueue();
-          return (next == head) ? null : next;
-        }
-      };
+      return Iterators.concat(window.iterator(), probation.iterator(), protectedQueue.iterator());
     }
   }
 
@@ -3945,6 +6129,200 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return sum;
   }
 
+  /**
+   * Evaluates the contention of the segment locks of an adaptive cache, unless that was done less
+   * than {@link #CONTENTION_POLL_NANOS} ago. This is done on the maintenance executor if the cache
+   * has one; otherwise the caller must not hold any segment lock.
+   */
+  void pollContention() {
+    long now = System.nanoTime();
+    long next = nextContentionPollNanos.get();
+    if (now - next < 0
+        || !nextContentionPollNanos.compareAndSet(next, now + CONTENTION_POLL_NANOS)) {
+      return;
+    }
+    if (maintenanceExecutor != null) {
+      try {
+        maintenanceExecutor.execute(this::adaptSegmentCount);
+        return;
+      } catch (RejectedExecutionException e) {
+        // adapt on this thread instead
+      }
+    }
+    adaptSegmentCount();
+  }
+
+  /**
+   * Doubles the number of segments if their locks were often contended since the last poll, or
+   * halves it if they were rarely contended for {@link #QUIET_POLLS_TO_MERGE} polls in a row.
+   */
+  void adaptSegmentCount() {
+    if (!resizeLock.tryLock()) {
+      return;
+    }
+    try {
+      Segment<K, V>[] segments = this.segments;
+      long acquisitions = 0;
+      long contendedAcquisitions = 0;
+      for (Segment<K, V> segment : segments) {
+        if (segment.isHeldByCurrentThread()) {
+          return; // resizing would wait for this thread
+        }
+        acquisitions += segment.lockAcquisitions;
+        contendedAcquisitions += segment.contendedLockAcquisitions;
+      }
+      long recentAcquisitions = acquisitions - polledLockAcquisitions;
+      long recentContendedAcquisitions = contendedAcquisitions - polledContendedLockAcquisitions;
+      polledLockAcquisitions = acquisitions;
+      polledContendedLockAcquisitions = contendedAcquisitions;
+
+      int segmentCount = segments.length;
+      if (recentAcquisitions >= MIN_ACQUISITIONS_TO_SPLIT
+          && recentContendedAcquisitions * SPLIT_CONTENTION_RATIO > recentAcquisitions) {
+        quietContentionPolls = 0;
+        if (segmentCount < maxSegmentCount && canSplitSegments(segmentCount)) {
+          resizeSegments(segments, segmentCount * 2);
+        }
+      } else if (recentContendedAcquisitions * MERGE_CONTENTION_RATIO <= recentAcquisitions) {
+        if (++quietContentionPolls >= QUIET_POLLS_TO_MERGE && segmentCount > 1) {
+          quietContentionPolls = 0;
+          resizeSegments(segments, segmentCount / 2);
+        }
+      } else {
+        quietContentionPolls = 0;
+      }
+    } finally {
+      resizeLock.unlock();
+    }
+  }
+
+  /**
+   * Replaces {@code oldSegments} by {@code segmentCount} new segments, copying each entry into the
+   * new segment chosen by its hash. Every old segment lock is held meanwhile; the old segments are
+   * then {@linkplain Segment#retired retired}, so that writers waiting for their locks retry on the
+   * new segments. Readers keep seeing the old segments, which are no longer modified, until they
+   * read {@link #segments} again.
+   */
+  @GuardedBy("resizeLock")
+  void resizeSegments(Segment<K, V>[] oldSegments, int segmentCount) {
+    for (Segment<K, V> segment : oldSegments) {
+      segment.lock();
+    }
+    try {
+      for (Segment<K, V> segment : oldSegments) {
+        segment.drainReferenceQueues();
+        segment.drainReadBuffer();
+      }
+      Segment<K, V>[] newSegments = createSegments(segmentCount, 1);
+      int sourcesPerSegment = Math.max(1, oldSegments.length / segmentCount);
+      int segmentsPerSource = Math.max(1, segmentCount / oldSegments.length);
+      for (int i = 0; i < newSegments.length; i++) {
+        Segment<K, V> segment = newSegments[i];
+        int firstSource = i / segmentsPerSource * sourcesPerSegment;
+        segment.lock();
+        try {
+          segment.adoptEntries(
+              Arrays.asList(oldSegments).subList(firstSource, firstSource + sourcesPerSegment),
+              newSegments);
+        } finally {
+          segment.unlock();
+        }
+      }
+
+      StatsSources<K, V> sources = statsSources;
+      CacheStats foldedStats = sources.foldedStats;
+      for (StatsCounter counter : sources.retiredCounters) {
+        CacheStats stats = counter.snapshot();
+        foldedStats = (foldedStats == null) ? stats : foldedStats.plus(stats);
+      }
+      ImmutableList.Builder<StatsCounter> retiredCounters = ImmutableList.builder();
+      for (Segment<K, V> segment : oldSegments) {
+        segment.retired = true;
+        retiredCounters.add(segment.statsCounter);
+      }
+      this.segments = newSegments;
+      statsSources = new StatsSources<>(newSegments, retiredCounters.build(), foldedStats);
+      polledLockAcquisitions = 0;
+      polledContendedLockAcquisitions = 0;
+    } finally {
+      for (Segment<K, V> segment : oldSegments) {
+        segment.unlock();
+      }
+    }
+    processPendingNotifications();
+  }
+
+  /**
+   * Evicts entries from each segment until it is within its reduced maximum weight. This may be
+   * called on the JVM's notification thread, so the eviction is handed to {@link
+   * #maintenanceExecutor} if the cache has one. Otherwise it is performed on the calling thread,
+   * but its removal notifications are left for the next operation on the cache to deliver.
+   */
+  void evictToPressureTarget() {
+    if (maintenanceExecutor != null) {
+      try {
+        maintenanceExecutor.execute(
+            () -> {
+              evictSegmentsToPressureTarget();
+              processPendingNotifications();
+            });
+        return;
+      } catch (RejectedExecutionException e) {
+        // evict on this thread instead
+      }
+    }
+    evictSegmentsToPressureTarget();
+  }
+
+  void evictSegmentsToPressureTarget() {
+    for (Segment<K, V> segment : segments) {
+      segment.evictToPressureTarget();
+    }
+  }
+
+  /**
+   * Evicts entries weighing about {@code weight} in total, on behalf of the cache's weight budget,
+   * and returns the weight actually evicted. The weight is spread over the segments, starting from
+   * a different segment each time.
+   */
+  long shedWeight(long weight) {
+    Segment<K, V>[] segments = this.segments;
+    int segmentMask = segments.length - 1;
+    int start = (budgetShedIndex++) & segmentMask;
+    long share = LongMath.divide(weight, segments.length, RoundingMode.CEILING);
+    long shed = 0;
+    for (int i = 0; i < segments.length && shed < weight; i++) {
+      Segment<K, V> segment = segments[(start + i) & segmentMask];
+      shed += segment.shedWeight(Math.min(share, weight - shed));
+    }
+    return shed;
+  }
+
+  /**
+   * Returns up to {@code limit} live entries, hottest first. Each segment contributes its entries
+   * in most recently used order, and the segments are interleaved; since keys are spread evenly
+   * across segments, this approximates the cache-wide access order without a global sort.
+   */
+  List<Map.Entry<K, V>> hottestEntries(int limit) {
+    Segment<K, V>[] segments = this.segments;
+    List<List<Map.Entry<K, V>>> perSegment = new ArrayList<>(segments.length);
+    int longest = 0;
+    for (Segment<K, V> segment : segments) {
+      List<Map.Entry<K, V>> entries = segment.hottestEntries(limit);
+      perSegment.add(entries);
+      longest = Math.max(longest, entries.size());
+    }
+    List<Map.Entry<K, V>> result = new ArrayList<>();
+    for (int i = 0; i < longest && result.size() < limit; i++) {
+      for (List<Map.Entry<K, V>> entries : perSegment) {
+        if (i < entries.size() && result.size() < limit) {
+          result.add(entries.get(i));
+        }
+      }
+    }
+    return result;
+  }
+
   @Override
   public int size() {
     return Ints.saturatedCast(longSize());
@@ -3967,6 +6345,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   public @Nullable V getIfPresent(Object key) {
     int hash = hash(checkNotNull(key));
     V value = segmentFor(hash).get(key, hash);
+    if (value == null && spillover != null) {
+      value = segmentFor(hash).promoteSpilled(key, hash);
+    }
     if (value == null) {
       globalStatsCounter.recordMisses(1);
     } else {
@@ -3987,6 +6368,111 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return get(key, defaultLoader);
   }
 
+  ListenableFuture<V> getOrLoadAsync(K key, Executor executor) {
+    int hash = hash(checkNotNull(key));
+    return segmentFor(hash).getAsync(key, hash, defaultLoader, executor);
+  }
+
+  /**
+   * Returns a future of the values of {@code keys}. Values that are present are read on the calling
+   * thread. The others are loaded on {@code executor} by a single call to {@link
+   * CacheLoader#loadAll}, or individually by {@link #getOrLoadAsync} if the loader doesn't
+   * implement it.
+   */
+  ListenableFuture<ImmutableMap<K, V>> getAllAsync(
+      Iterable<? extends K> keys, final Executor executor) {
+    int hits = 0;
+    int misses = 0;
+
+    final Map<K, V> result = Maps.newLinkedHashMap();
+    final Set<K> keysToLoad = Sets.newLinkedHashSet();
+    for (K key : keys) {
+      int hash = hash(checkNotNull(key));
+      V value = segmentFor(hash).getPresent(key, hash, executor);
+      if (!result.containsKey(key)) {
+        result.put(key, value);
+        if (value == null) {
+          misses++;
+          keysToLoad.add(key);
+        } else {
+          hits++;
+        }
+      }
+    }
+    globalStatsCounter.recordHits(hits);
+    if (keysToLoad.isEmpty()) {
+      return Futures.immediateFuture(ImmutableMap.copyOf(result));
+    }
+
+    final int loadMisses = misses;
+    ListenableFuture<Map<K, V>> newEntries =
+        Futures.submitAsync(
+            new AsyncCallable<Map<K, V>>() {
+              @Override
+              public ListenableFuture<Map<K, V>> call() {
+                return loadAllAsync(keysToLoad, loadMisses, executor);
+              }
+            },
+            executor);
+    return transform(
+        newEntries,
+        new com.google.common.base.Function<Map<K, V>, ImmutableMap<K, V>>() {
+          @Override
+          public ImmutableMap<K, V> apply(Map<K, V> newEntries) {
+            result.putAll(newEntries); // keeps the order of the requested keys
+            return ImmutableMap.copyOf(result);
+          }
+        },
+        directExecutor());
+  }
+
+  /**
+   * Loads {@code keys} with {@link CacheLoader#loadAll}, falling back to loading them individually
+   * on {@code executor} if the default loader doesn't implement it. {@code misses} are recorded
+   * unless the individual loads record them.
+   */
+  ListenableFuture<Map<K, V>> loadAllAsync(Set<K> keys, int misses, Executor executor) {
+    try {
+      Map<K, V> newEntries = loadAll(keys, defaultLoader);
+      Map<K, V> result = Maps.newLinkedHashMap();
+      for (K key : keys) {
+        V value = newEntries.get(key);
+        if (value == null) {
+          throw new InvalidCacheLoadException("loadAll failed to return a value for " + key);
+        }
+        result.put(key, value);
+      }
+      globalStatsCounter.recordMisses(misses);
+      return Futures.immediateFuture(result);
+    } catch (UnsupportedLoadingOperationException e) {
+      // loadAll not implemented, fallback to load
+      final List<K> keyList = new ArrayList<>(keys);
+      List<ListenableFuture<V>> futures = new ArrayList<>();
+      for (K key : keyList) {
+        futures.add(getOrLoadAsync(key, executor));
+      }
+      return transform(
+          Futures.allAsList(futures),
+          new com.google.common.base.Function<List<V>, Map<K, V>>() {
+            @Override
+            public Map<K, V> apply(List<V> values) {
+              Map<K, V> result = Maps.newLinkedHashMap();
+              for (int i = 0; i < keyList.size(); i++) {
+                result.put(keyList.get(i), values.get(i));
+              }
+              return result;
+            }
+          },
+          directExecutor());
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      globalStatsCounter.recordMisses(misses);
+      return Futures.immediateFailedFuture(e.getCause());
+    } catch (RuntimeException e) {
+      globalStatsCounter.recordMisses(misses);
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
   ImmutableMap<K, V> getAllPresent(Iterable<?> keys) {
     int hits = 0;
     int misses = 0;
@@ -4028,6 +6514,20 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
+    if (spillover != null) {
+      for (Iterator<K> it = keysToLoad.iterator(); it.hasNext(); ) {
+        K key = it.next();
+        int hash = hash(key);
+        V value = segmentFor(hash).promoteSpilled(key, hash);
+        if (value != null) {
+          result.put(key, value);
+          it.remove();
+          misses--;
+          hits++;
+        }
+      }
+    }
+
     try {
       if (!keysToLoad.isEmpty()) {
         try {
@@ -4041,9 +6541,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           }
         } catch (UnsupportedLoadingOperationException e) {
           // loadAll not implemented, fallback to load
-          for (K key : keysToLoad) {
-            misses--; // get will count this miss
-            result.put(key, get(key, defaultLoader));
+          misses -= keysToLoad.size(); // get will count these misses
+          if (getAllExecutor != null && keysToLoad.size() > 1) {
+            result.putAll(loadInParallel(keysToLoad));
+          } else {
+            for (K key : keysToLoad) {
+              result.put(key, get(key, defaultLoader));
+            }
           }
         }
       }
@@ -4054,6 +6558,54 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  /**
+   * Loads {@code keys} individually on {@link #getAllExecutor}, running at most {@link
+   * #getAllParallelism} loads at once. Keys that are already being loaded are not loaded again, but
+   * are waited for.
+   */
+  Map<K, V> loadInParallel(Set<? extends K> keys) throws ExecutionException {
+    final Semaphore permits = new Semaphore(getAllParallelism);
+    Map<K, ListenableFuture<V>> futures = Maps.newLinkedHashMap();
+    for (K key : keys) {
+      permits.acquireUninterruptibly();
+      ListenableFuture<V> future;
+      try {
+        future = getOrLoadAsync(key, getAllExecutor);
+      } catch (Throwable t) {
+        permits.release();
+        throw t;
+      }
+      future.addListener(
+          new Runnable() {
+            @Override
+            public void run() {
+              permits.release();
+            }
+          },
+          directExecutor());
+      futures.put(key, future);
+    }
+
+    Map<K, V> result = Maps.newLinkedHashMap();
+    for (Entry<K, ListenableFuture<V>> entry : futures.entrySet()) {
+      try {
+        result.put(entry.getKey(), getUninterruptibly(entry.getValue()));
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof InvalidCacheLoadException) {
+          // thrown directly, as when the key is loaded on the calling thread
+          throw (InvalidCacheLoadException) cause;
+        } else if (cause instanceof Error) {
+          throw new ExecutionError((Error) cause);
+        } else if (cause instanceof RuntimeException) {
+          throw new UncheckedExecutionException(cause);
+        }
+        throw ee;
+      }
+    }
+    return result;
+  }
+
   /**
    * Returns the result of calling {@link CacheLoader#loadAll}, or null if {@code loader} doesn't
    * implement {@code loadAll}.
@@ -4214,7 +6766,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
     checkNotNull(key);
     checkNotNull(function);
-    return compute(key, (k, oldValue) -> (oldValue == null) ? function.apply(key) : oldValue);
+    int hash = hash(key);
+    Segment<K, V> segment = segmentFor(hash);
+    // a live value is returned without locking the segment or installing a placeholder
+    V value = segment.get(key, hash);
+    if (value != null) {
+      return value;
+    }
+    return segment.compute(
+        key, hash, (k, oldValue) -> (oldValue == null) ? function.apply(key) : oldValue);
   }
 
   @Override
@@ -4279,8 +6839,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
   @Override
   public void clear() {
-    for (Segment<K, V> segment : segments) {
-      segment.clear();
+    Segment<K, V>[] segments;
+    do {
+      segments = this.segments;
+      for (Segment<K, V> segment : segments) {
+        segment.clear();
+      }
+    } while (segments != this.segments); // resized meanwhile, so the new segments may hold entries
+    if (spillover != null) {
+      spillover.clear();
     }
   }
 
@@ -4323,6 +6890,8 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
   abstract class HashIterator<T> implements Iterator<T> {
 
+    // the segments when the iteration started, which a resize may replace
+    final Segment<K, V>[] segments = LocalCache.this.segments;
     int nextSegmentIndex;
     int nextTableIndex;
     @Nullable Segment<K, V> currentSegment;
@@ -4683,12 +7252,22 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     final Equivalence<Object> valueEquivalence;
     final long expireAfterWriteNanos;
     final long expireAfterAccessNanos;
+    final @Nullable Expiry<K, V> expiry;
     final long maxWeight;
     final Weigher<K, V> weigher;
+    final boolean windowTinyLfu;
+    final int maxBatchSize;
+    final long batchDelayNanos;
     final int concurrencyLevel;
+    final boolean adaptiveConcurrency;
     final RemovalListener<? super K, ? super V> removalListener;
     final @Nullable Ticker ticker;
     final CacheLoader<? super K, V> loader;
+    final @Nullable Executor getAllExecutor;
+    final int getAllParallelism;
+    final @Nullable Executor maintenanceExecutor;
+    final boolean evictOnMemoryPressure;
+    final @Nullable Tagger<K, V> tagger;
 
     transient @Nullable Cache<K, V> delegate;
 
@@ -4700,12 +7279,22 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           cache.valueEquivalence,
           cache.expireAfterWriteNanos,
           cache.expireAfterAccessNanos,
+          cache.expiry,
           cache.maxWeight,
           cache.weigher,
+          cache.windowTinyLfu,
+          (cache.loadBatcher == null) ? UNSET_INT : cache.loadBatcher.maxBatchSize,
+          (cache.loadBatcher == null) ? UNSET_INT : cache.loadBatcher.maxDelayNanos,
           cache.concurrencyLevel,
+          cache.adaptsConcurrency,
           cache.removalListener,
           cache.ticker,
-          cache.defaultLoader);
+          cache.defaultLoader,
+          cache.getAllExecutor,
+          cache.getAllParallelism,
+          cache.maintenanceExecutor,
+          cache.memoryPressureMonitor != null,
+          cache.tagger);
     }
 
     private ManualSerializationProxy(
@@ -4715,24 +7304,44 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         Equivalence<Object> valueEquivalence,
         long expireAfterWriteNanos,
         long expireAfterAccessNanos,
+        @Nullable Expiry<K, V> expiry,
         long maxWeight,
         Weigher<K, V> weigher,
+        boolean windowTinyLfu,
+        int maxBatchSize,
+        long batchDelayNanos,
         int concurrencyLevel,
+        boolean adaptiveConcurrency,
         RemovalListener<? super K, ? super V> removalListener,
         Ticker ticker,
-        CacheLoader<? super K, V> loader) {
+        CacheLoader<? super K, V> loader,
+        @Nullable Executor getAllExecutor,
+        int getAllParallelism,
+        @Nullable Executor maintenanceExecutor,
+        boolean evictOnMemoryPressure,
+        @Nullable Tagger<K, V> tagger) {
       this.keyStrength = keyStrength;
       this.valueStrength = valueStrength;
       this.keyEquivalence = keyEquivalence;
       this.valueEquivalence = valueEquivalence;
       this.expireAfterWriteNanos = expireAfterWriteNanos;
       this.expireAfterAccessNanos = expireAfterAccessNanos;
+      this.expiry = expiry;
       this.maxWeight = maxWeight;
       this.weigher = weigher;
+      this.windowTinyLfu = windowTinyLfu;
+      this.maxBatchSize = maxBatchSize;
+      this.batchDelayNanos = batchDelayNanos;
       this.concurrencyLevel = concurrencyLevel;
+      this.adaptiveConcurrency = adaptiveConcurrency;
       this.removalListener = removalListener;
       this.ticker = (ticker == Ticker.systemTicker() || ticker == NULL_TICKER) ? null : ticker;
       this.loader = loader;
+      this.getAllExecutor = getAllExecutor;
+      this.getAllParallelism = getAllParallelism;
+      this.maintenanceExecutor = maintenanceExecutor;
+      this.evictOnMemoryPressure = evictOnMemoryPressure;
+      this.tagger = tagger;
     }
 
     CacheBuilder<K, V> recreateCacheBuilder() {
@@ -4751,6 +7360,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (expireAfterAccessNanos > 0) {
         builder.expireAfterAccess(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
       }
+      if (expiry != null) {
+        builder.expireAfter(expiry);
+      }
       if (weigher != OneWeigher.INSTANCE) {
         builder.weigher(weigher);
         if (maxWeight != UNSET_INT) {
@@ -4761,6 +7373,27 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           builder.maximumSize(maxWeight);
         }
       }
+      if (windowTinyLfu && maxWeight != UNSET_INT) {
+        builder.windowTinyLfu();
+      }
+      if (adaptiveConcurrency) {
+        builder.adaptiveConcurrency();
+      }
+      if (maxBatchSize != UNSET_INT) {
+        builder.batchLoads(maxBatchSize, batchDelayNanos, TimeUnit.NANOSECONDS);
+      }
+      if (getAllExecutor != null) {
+        builder.parallelGetAll(getAllExecutor, getAllParallelism);
+      }
+      if (maintenanceExecutor != null) {
+        builder.executor(maintenanceExecutor);
+      }
+      if (evictOnMemoryPressure && maxWeight != UNSET_INT) {
+        builder.evictOnMemoryPressure();
+      }
+      if (tagger != null) {
+        builder.tagger(tagger);
+      }
       if (ticker != null) {
         builder.ticker(ticker);
       }
@@ -4769,8 +7402,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
       in.defaultReadObject();
-      CacheBuilder<K, V> builder = recreateCacheBuilder();
-      this.delegate = builder.build();
+      if (loader == null) {
+        // a loading cache's configuration may not be valid for a manual one, so
+        // LoadingSerializationProxy builds the delegate itself
+        CacheBuilder<K, V> builder = recreateCacheBuilder();
+        this.delegate = builder.build();
+      }
     }
 
     private Object readResolve() {
@@ -4805,6 +7442,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       in.defaultReadObject();
       CacheBuilder<K, V> builder = recreateCacheBuilder();
       this.autoDelegate = builder.build(loader);
+      this.delegate = autoDelegate;
     }
 
     @Override
@@ -4899,6 +7537,21 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       localCache.clear();
     }
 
+    @Override
+    public void invalidateByTag(Object tag) {
+      checkNotNull(tag);
+      if (localCache.tagger == null) {
+        throw new UnsupportedOperationException("invalidateByTag requires a tagger");
+      }
+      Segment<K, V>[] segments;
+      do {
+        segments = localCache.segments;
+        for (Segment<K, V> segment : segments) {
+          segment.invalidateByTag(tag);
+        }
+      } while (segments != localCache.segments); // resized meanwhile
+    }
+
     @Override
     public long size() {
       return localCache.longSize();
@@ -4911,12 +7564,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @Override
     public CacheStats stats() {
-      SimpleStatsCounter aggregator = new SimpleStatsCounter();
-      aggregator.incrementBy(localCache.globalStatsCounter);
-      for (Segment<K, V> segment : localCache.segments) {
-        aggregator.incrementBy(segment.statsCounter);
+      // summing snapshots, rather than SimpleStatsCounter.incrementBy, keeps detailed statistics
+      CacheStats stats = localCache.globalStatsCounter.snapshot();
+      StatsSources<K, V> sources = localCache.statsSources;
+      if (sources.foldedStats != null) {
+        stats = stats.plus(sources.foldedStats);
+      }
+      for (StatsCounter counter : sources.retiredCounters) {
+        stats = stats.plus(counter.snapshot());
       }
-      return aggregator.snapshot();
+      for (Segment<K, V> segment : sources.segments) {
+        stats = stats.plus(segment.statsCounter.snapshot());
+      }
+      return stats;
     }
 
     @Override
@@ -4981,4 +7641,33 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       return new LoadingSerializationProxy<>(localCache);
     }
   }
+
+  @GwtIncompatible
+  static class LocalAsyncLoadingCache<K, V> implements AsyncLoadingCache<K, V> {
+    final LocalLoadingCache<K, V> synchronous;
+    final Executor executor;
+
+    LocalAsyncLoadingCache(
+        CacheBuilder<? super K, ? super V> builder,
+        CacheLoader<? super K, V> loader,
+        Executor executor) {
+      this.synchronous = new LocalLoadingCache<>(builder, loader);
+      this.executor = checkNotNull(executor);
+    }
+
+    @Override
+    public ListenableFuture<V> get(K key) {
+      return synchronous.localCache.getOrLoadAsync(key, executor);
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys) {
+      return synchronous.localCache.getAllAsync(keys, executor);
+    }
+
+    @Override
+    public LoadingCache<K, V> synchronous() {
+      return synchronous;
+    }
+  }
 }
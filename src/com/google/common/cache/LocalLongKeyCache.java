@@ -0,0 +1,763 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.CacheBuilder.NullListener;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The implementation of {@link LongKeyLoadingCache}.
+ *
+ * <p>Like {@link LocalCache}, the cache is partitioned into segments, each guarded by its own lock.
+ * Each segment is an open-addressing hash table with linear probing, whose keys, values and
+ * timestamps are kept in parallel arrays. A slot holds either nothing, a live value, a {@link
+ * Loading} placeholder for a value being loaded, or a {@link #TOMBSTONE} left behind by a removal;
+ * tombstones are purged when the table is rebuilt.
+ *
+ * <p>Reads are optimistic: they probe the table under a {@link StampedLock} stamp and only take the
+ * read lock if a write intervened. Reads record recency by setting a reference bit, and the
+ * segment's CLOCK hand clears these bits as it looks for an entry to evict. Entries that expired
+ * are never returned; they are purged by writes, which inspect a few slots each, by eviction, and
+ * by {@link #cleanUp}.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class LocalLongKeyCache<V> implements LongKeyLoadingCache<V> {
+  static final Logger logger = Logger.getLogger(LocalLongKeyCache.class.getName());
+
+  /** The maximum capacity of a segment's table. */
+  static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  /** The maximum number of segments. */
+  static final int MAX_SEGMENTS = 1 << 16;
+
+  /** The minimum capacity of a segment's table. */
+  static final int MINIMUM_CAPACITY = 8;
+
+  /** The number of slots that each write inspects for expired entries. */
+  static final int EXPIRATION_SWEEP = 8;
+
+  /** The value of a slot whose entry was removed. */
+  static final Object TOMBSTONE = new Object();
+
+  final Loader<? extends V> loader;
+  final Segment<V>[] segments;
+  final int segmentShift;
+  final int segmentMask;
+
+  /** The maximum number of entries, or a negative value if the cache is not bounded by size. */
+  final long maxSize;
+
+  final long expireAfterWriteNanos;
+  final long expireAfterAccessNanos;
+  final Ticker ticker;
+
+  final RemovalListener<Long, V> removalListener;
+  final boolean notifiesRemovals;
+  final Queue<RemovalNotification<Long, V>> removalNotificationQueue;
+
+  @SuppressWarnings("unchecked") // removal listeners of long-keyed caches receive Long keys
+  LocalLongKeyCache(CacheBuilder<?, ? super V> builder, Loader<? extends V> loader) {
+    this.loader = checkNotNull(loader);
+    maxSize = builder.getMaximumSize();
+    expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
+    expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
+    ticker = builder.getTicker(expiresAfterWrite() || expiresAfterAccess());
+    RemovalListener<?, ?> listener = builder.getRemovalListener();
+    notifiesRemovals = listener != NullListener.INSTANCE;
+    removalListener = (RemovalListener<Long, V>) listener;
+    removalNotificationQueue = new ConcurrentLinkedQueue<>();
+
+    int concurrencyLevel = Math.min(builder.getConcurrencyLevel(), MAX_SEGMENTS);
+    int segmentShift = 0;
+    int segmentCount = 1;
+    while (segmentCount < concurrencyLevel && (maxSize < 0 || segmentCount * 20 <= maxSize)) {
+      ++segmentShift;
+      segmentCount <<= 1;
+    }
+    this.segmentShift = 32 - segmentShift;
+    segmentMask = segmentCount - 1;
+
+    int initialCapacity = Math.min(builder.getInitialCapacity(), MAXIMUM_CAPACITY);
+    int segmentCapacity = initialCapacity / segmentCount;
+    if (segmentCapacity * segmentCount < initialCapacity) {
+      ++segmentCapacity;
+    }
+
+    this.segments = newSegmentArray(segmentCount);
+    long maxSegmentSize = (maxSize < 0) ? -1 : maxSize / segmentCount + 1;
+    long remainder = (maxSize < 0) ? -1 : maxSize % segmentCount;
+    for (int i = 0; i < segmentCount; i++) {
+      if (i == remainder) {
+        // ensure that the segment sizes add up to the maximum size
+        maxSegmentSize--;
+      }
+      segments[i] =
+          new Segment<V>(
+              this, segmentCapacity, maxSegmentSize, builder.getStatsCounterSupplier().get());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static <V> Segment<V>[] newSegmentArray(int size) {
+    return (Segment<V>[]) new Segment<?>[size];
+  }
+
+  boolean expiresAfterWrite() {
+    return expireAfterWriteNanos > 0;
+  }
+
+  boolean expiresAfterAccess() {
+    return expireAfterAccessNanos > 0;
+  }
+
+  boolean expires() {
+    return expiresAfterWrite() || expiresAfterAccess();
+  }
+
+  /** Spreads the bits of a key, which are used both to select a segment and a slot. */
+  static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  Segment<V> segmentFor(int hash) {
+    return segments[(hash >>> segmentShift) & segmentMask];
+  }
+
+  @Override
+  public V get(long key) throws ExecutionException {
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+    Object value = segment.read(key, hash, ticker.read());
+    if (value != null && !(value instanceof Loading)) {
+      segment.statsCounter.recordHits(1);
+      @SuppressWarnings("unchecked") // only values of type V and placeholders are stored
+      V v = (V) value;
+      return v;
+    }
+    return segment.lockedGetOrLoad(key, hash);
+  }
+
+  @Override
+  public V getUnchecked(long key) {
+    try {
+      return get(key);
+    } catch (ExecutionException e) {
+      throw new UncheckedExecutionException(e.getCause());
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public V getIfPresent(long key) {
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+    Object value = segment.read(key, hash, ticker.read());
+    if (value == null || value instanceof Loading) {
+      segment.statsCounter.recordMisses(1);
+      return null;
+    }
+    segment.statsCounter.recordHits(1);
+    @SuppressWarnings("unchecked") // only values of type V and placeholders are stored
+    V v = (V) value;
+    return v;
+  }
+
+  @Override
+  public void put(long key, V value) {
+    checkNotNull(value);
+    int hash = hash(key);
+    segmentFor(hash).put(key, hash, value);
+  }
+
+  @Override
+  public void invalidate(long key) {
+    int hash = hash(key);
+    segmentFor(hash).remove(key, hash);
+  }
+
+  @Override
+  public void invalidateAll() {
+    for (Segment<V> segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public long size() {
+    long sum = 0;
+    for (Segment<V> segment : segments) {
+      sum += segment.count;
+    }
+    return sum;
+  }
+
+  @Override
+  public CacheStats stats() {
+    CacheStats stats = segments[0].statsCounter.snapshot();
+    for (int i = 1; i < segments.length; i++) {
+      stats = stats.plus(segments[i].statsCounter.snapshot());
+    }
+    return stats;
+  }
+
+  @Override
+  public void cleanUp() {
+    for (Segment<V> segment : segments) {
+      segment.cleanUp();
+    }
+  }
+
+  /** Notifies the removal listener of removals, once the segment lock has been released. */
+  void processPendingNotifications() {
+    RemovalNotification<Long, V> notification;
+    while ((notification = removalNotificationQueue.poll()) != null) {
+      try {
+        removalListener.onRemoval(notification);
+      } catch (Throwable e) {
+        logger.log(Level.WARNING, "Exception thrown by removal listener", e);
+      }
+    }
+  }
+
+  /**
+   * Rethrows a failure of the loader the way {@link LoadingCache#get} does: checked exceptions are
+   * wrapped in an {@link ExecutionException}, unchecked exceptions in an {@link
+   * UncheckedExecutionException} and errors in an {@link ExecutionError}.
+   */
+  static ExecutionException rethrow(Throwable t) throws ExecutionException {
+    if (t instanceof InvalidCacheLoadException) {
+      throw (InvalidCacheLoadException) t;
+    } else if (t instanceof Error) {
+      throw new ExecutionError((Error) t);
+    } else if (t instanceof RuntimeException) {
+      throw new UncheckedExecutionException(t);
+    }
+    throw new ExecutionException(t);
+  }
+
+  /** A placeholder for a value being loaded, on which concurrent readers of the key wait. */
+  static final class Loading<V> {
+    final SettableFuture<V> future = SettableFuture.create();
+
+    /** The thread running the load, which must not wait for it. */
+    final Thread thread = Thread.currentThread();
+  }
+
+  /**
+   * The arrays of a segment's hash table. They are replaced as a whole when the table is rebuilt,
+   * so that an optimistic reader always sees arrays of the same length.
+   */
+  static final class Table {
+    final long[] keys;
+    final @Nullable Object[] values;
+    final byte[] referenced;
+    final long @Nullable [] writeTimes;
+    final long @Nullable [] accessTimes;
+
+    Table(int capacity, boolean recordsWrite, boolean recordsAccess) {
+      keys = new long[capacity];
+      values = new Object[capacity];
+      referenced = new byte[capacity];
+      writeTimes = recordsWrite ? new long[capacity] : null;
+      accessTimes = recordsAccess ? new long[capacity] : null;
+    }
+
+    int mask() {
+      return keys.length - 1;
+    }
+
+    /** Returns the slot holding {@code key}, or -1 if there is none. */
+    int find(long key, int hash) {
+      int mask = mask();
+      for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+        Object value = values[i];
+        if (value == null) {
+          return -1;
+        } else if (value != TOMBSTONE && keys[i] == key) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /** A partition of the cache, with its own table, lock, CLOCK hand and statistics. */
+  static final class Segment<V> {
+    final LocalLongKeyCache<V> cache;
+    final StampedLock lock = new StampedLock();
+
+    /** The maximum number of entries in this segment, or a negative value if it is unbounded. */
+    final long maxSegmentSize;
+
+    final StatsCounter statsCounter;
+
+    /** The current table, replaced under the write lock when it is rebuilt. */
+    volatile Table table;
+
+    /** The number of live values in this segment. */
+    volatile int count;
+
+    /** The number of slots holding a value, a placeholder or a tombstone. */
+    @GuardedBy("lock")
+    int used;
+
+    /** The number of slots holding a placeholder. */
+    @GuardedBy("lock")
+    int loadingCount;
+
+    @GuardedBy("lock")
+    int clockHand;
+
+    @GuardedBy("lock")
+    int sweepCursor;
+
+    Segment(
+        LocalLongKeyCache<V> cache,
+        int initialCapacity,
+        long maxSegmentSize,
+        StatsCounter statsCounter) {
+      this.cache = cache;
+      this.maxSegmentSize = maxSegmentSize;
+      this.statsCounter = statsCounter;
+      this.table = newTable(initialCapacity);
+    }
+
+    Table newTable(int minimumCapacity) {
+      int capacity = MINIMUM_CAPACITY;
+      while (capacity < minimumCapacity && capacity < MAXIMUM_CAPACITY) {
+        capacity <<= 1;
+      }
+      return new Table(capacity, cache.expiresAfterWrite(), cache.expiresAfterAccess());
+    }
+
+    boolean isExpired(Table table, int i, long now) {
+      return (cache.expiresAfterWrite()
+              && now - table.writeTimes[i] >= cache.expireAfterWriteNanos)
+          || (cache.expiresAfterAccess()
+              && now - table.accessTimes[i] >= cache.expireAfterAccessNanos);
+    }
+
+    /**
+     * Returns the live value or placeholder for {@code key}, or null if there is none, recording
+     * the read of a live value. Reads that race with a write are retried under the read lock.
+     */
+    @CheckForNull
+    Object read(long key, int hash, long now) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        Object value = readUnlocked(key, hash, now);
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        return readUnlocked(key, hash, now);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    /**
+     * Probes the table without locking. Recording the read is racy, but only readers write the
+     * reference bits and access times outside of the write lock, and any of their writes will do.
+     */
+    @CheckForNull
+    Object readUnlocked(long key, int hash, long now) {
+      Table table = this.table;
+      int i = table.find(key, hash);
+      if (i < 0) {
+        return null;
+      }
+      Object value = table.values[i];
+      if (value instanceof Loading) {
+        return value;
+      } else if (value == null || value == TOMBSTONE || isExpired(table, i, now)) {
+        return null;
+      }
+      table.referenced[i] = 1;
+      if (table.accessTimes != null) {
+        table.accessTimes[i] = now;
+      }
+      return value;
+    }
+
+    V lockedGetOrLoad(long key, int hash) throws ExecutionException {
+      Loading<V> loading;
+      boolean createdLoading = false;
+      long stamp = lock.writeLock();
+      try {
+        long now = cache.ticker.read();
+        Table table = this.table;
+        int i = table.find(key, hash);
+        Object value = (i < 0) ? null : table.values[i];
+        if (value instanceof Loading) {
+          @SuppressWarnings("unchecked") // only placeholders of type V are stored
+          Loading<V> existing = (Loading<V>) value;
+          loading = existing;
+        } else if (value != null && !isExpired(table, i, now)) {
+          recordLockedRead(table, i, now);
+          statsCounter.recordHits(1);
+          @SuppressWarnings("unchecked") // only values of type V and placeholders are stored
+          V v = (V) value;
+          return v;
+        } else {
+          if (value != null) {
+            removeAt(table, i, RemovalCause.EXPIRED);
+          }
+          loading = new Loading<>();
+          insert(key, hash, loading, now);
+          loadingCount++;
+          createdLoading = true;
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+        cache.processPendingNotifications();
+      }
+
+      statsCounter.recordMisses(1);
+      if (!createdLoading) {
+        checkState(loading.thread != Thread.currentThread(), "Recursive load of: %s", key);
+        try {
+          return getUninterruptibly(loading.future);
+        } catch (ExecutionException e) {
+          throw rethrow(e.getCause());
+        }
+      }
+      return load(key, hash, loading);
+    }
+
+    V load(long key, int hash, Loading<V> loading) throws ExecutionException {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      V value;
+      try {
+        value = cache.loader.load(key);
+        if (value == null) {
+          throw new InvalidCacheLoadException("Loader returned null for key " + key + ".");
+        }
+      } catch (Throwable t) {
+        statsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
+        removeLoading(key, hash, loading);
+        loading.future.setException(t);
+        if (t instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        throw rethrow(t);
+      }
+      statsCounter.recordLoadSuccess(stopwatch.elapsed(NANOSECONDS));
+      storeLoadedValue(key, hash, loading, value);
+      loading.future.set(value);
+      return value;
+    }
+
+    void storeLoadedValue(long key, int hash, Loading<V> loading, V value) {
+      long stamp = lock.writeLock();
+      try {
+        long now = cache.ticker.read();
+        Table table = this.table;
+        int i = table.find(key, hash);
+        if (i >= 0 && table.values[i] == loading) {
+          loadingCount--;
+          setAt(table, i, value, now);
+          count++;
+          evictEntries(now);
+        } else {
+          // the load was clobbered by a put
+          enqueueNotification(key, value, RemovalCause.REPLACED);
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+        cache.processPendingNotifications();
+      }
+    }
+
+    void removeLoading(long key, int hash, Loading<V> loading) {
+      long stamp = lock.writeLock();
+      try {
+        Table table = this.table;
+        int i = table.find(key, hash);
+        if (i >= 0 && table.values[i] == loading) {
+          table.values[i] = TOMBSTONE;
+          loadingCount--;
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    void put(long key, int hash, V value) {
+      long stamp = lock.writeLock();
+      try {
+        long now = cache.ticker.read();
+        sweepExpired(now);
+        Table table = this.table;
+        int i = table.find(key, hash);
+        Object previous = (i < 0) ? null : table.values[i];
+        if (previous == null) {
+          insert(key, hash, value, now);
+          count++;
+        } else if (previous instanceof Loading) {
+          // complete the pending load with the new value, as LocalCache does
+          @SuppressWarnings("unchecked") // only placeholders of type V are stored
+          Loading<V> loading = (Loading<V>) previous;
+          loading.future.set(value);
+          loadingCount--;
+          setAt(table, i, value, now);
+          count++;
+        } else {
+          @SuppressWarnings("unchecked") // only values of type V and placeholders are stored
+          V previousValue = (V) previous;
+          enqueueNotification(
+              key,
+              previousValue,
+              isExpired(table, i, now) ? RemovalCause.EXPIRED : RemovalCause.REPLACED);
+          setAt(table, i, value, now);
+        }
+        evictEntries(now);
+      } finally {
+        lock.unlockWrite(stamp);
+        cache.processPendingNotifications();
+      }
+    }
+
+    void remove(long key, int hash) {
+      long stamp = lock.writeLock();
+      try {
+        long now = cache.ticker.read();
+        sweepExpired(now);
+        Table table = this.table;
+        int i = table.find(key, hash);
+        if (i >= 0 && !(table.values[i] instanceof Loading)) {
+          // like LocalCache, pending loads are not cancelled
+          removeAt(
+              table, i, isExpired(table, i, now) ? RemovalCause.EXPIRED : RemovalCause.EXPLICIT);
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+        cache.processPendingNotifications();
+      }
+    }
+
+    void clear() {
+      long stamp = lock.writeLock();
+      try {
+        Table table = this.table;
+        for (int i = 0; i < table.values.length; i++) {
+          Object value = table.values[i];
+          if (value != null && value != TOMBSTONE && !(value instanceof Loading)) {
+            removeAt(table, i, RemovalCause.EXPLICIT);
+          }
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+        cache.processPendingNotifications();
+      }
+    }
+
+    void cleanUp() {
+      long stamp = lock.writeLock();
+      try {
+        if (cache.expires()) {
+          long now = cache.ticker.read();
+          Table table = this.table;
+          for (int i = 0; i < table.values.length; i++) {
+            if (isLive(table, i) && isExpired(table, i, now)) {
+              removeAt(table, i, RemovalCause.EXPIRED);
+            }
+          }
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+        cache.processPendingNotifications();
+      }
+    }
+
+    @GuardedBy("lock")
+    void recordLockedRead(Table table, int i, long now) {
+      table.referenced[i] = 1;
+      if (table.accessTimes != null) {
+        table.accessTimes[i] = now;
+      }
+    }
+
+    static boolean isLive(Table table, int i) {
+      Object value = table.values[i];
+      return value != null && value != TOMBSTONE && !(value instanceof Loading);
+    }
+
+    /** Stores {@code value} in slot {@code i}, as a newly written entry. */
+    @GuardedBy("lock")
+    void setAt(Table table, int i, Object value, long now) {
+      table.values[i] = value;
+      table.referenced[i] = 1; // give new entries a chance to be read before they are evicted
+      if (table.writeTimes != null) {
+        table.writeTimes[i] = now;
+      }
+      if (table.accessTimes != null) {
+        table.accessTimes[i] = now;
+      }
+    }
+
+    /** Inserts {@code key}, which is absent from the table, rebuilding the table if necessary. */
+    @GuardedBy("lock")
+    void insert(long key, int hash, Object value, long now) {
+      Table table = this.table;
+      if (used + 1 > table.keys.length - (table.keys.length >>> 2)) {
+        table = rebuild(now);
+      }
+      int mask = table.mask();
+      int i = hash & mask;
+      while (table.values[i] != null && table.values[i] != TOMBSTONE) {
+        i = (i + 1) & mask;
+      }
+      if (table.values[i] == null) {
+        used++;
+      }
+      table.keys[i] = key;
+      setAt(table, i, value, now);
+    }
+
+    /**
+     * Replaces the table by one without tombstones or expired entries, at most half full. The new
+     * table is published only once it is complete, so optimistic readers never observe it partially
+     * filled.
+     */
+    @GuardedBy("lock")
+    Table rebuild(long now) {
+      Table old = this.table;
+      for (int i = 0; i < old.values.length; i++) {
+        if (cache.expires() && isLive(old, i) && isExpired(old, i, now)) {
+          removeAt(old, i, RemovalCause.EXPIRED);
+        }
+      }
+      int entries = count + loadingCount;
+      Table table = newTable(Math.max(2 * (entries + 1), MINIMUM_CAPACITY));
+      int mask = table.mask();
+      for (int i = 0; i < old.values.length; i++) {
+        Object value = old.values[i];
+        if (value == null || value == TOMBSTONE) {
+          continue;
+        }
+        int j = hash(old.keys[i]) & mask;
+        while (table.values[j] != null) {
+          j = (j + 1) & mask;
+        }
+        table.keys[j] = old.keys[i];
+        table.values[j] = value;
+        table.referenced[j] = old.referenced[i];
+        if (table.writeTimes != null) {
+          table.writeTimes[j] = old.writeTimes[i];
+        }
+        if (table.accessTimes != null) {
+          table.accessTimes[j] = old.accessTimes[i];
+        }
+      }
+      used = entries;
+      clockHand = 0;
+      sweepCursor = 0;
+      this.table = table;
+      return table;
+    }
+
+    /** Removes the live value in slot {@code i}. */
+    @GuardedBy("lock")
+    void removeAt(Table table, int i, RemovalCause cause) {
+      @SuppressWarnings("unchecked") // only values of type V and placeholders are stored
+      V value = (V) table.values[i];
+      table.values[i] = TOMBSTONE;
+      count--;
+      if (cause.wasEvicted()) {
+        statsCounter.recordEviction(cause);
+      }
+      enqueueNotification(table.keys[i], value, cause);
+    }
+
+    @GuardedBy("lock")
+    void enqueueNotification(long key, V value, RemovalCause cause) {
+      if (cache.notifiesRemovals) {
+        cache.removalNotificationQueue.offer(RemovalNotification.create(key, value, cause));
+      }
+    }
+
+    /** Purges the expired entries among the next few slots, so that they don't linger. */
+    @GuardedBy("lock")
+    void sweepExpired(long now) {
+      if (!cache.expires()) {
+        return;
+      }
+      Table table = this.table;
+      int mask = table.mask();
+      for (int n = 0; n < EXPIRATION_SWEEP; n++) {
+        int i = sweepCursor;
+        sweepCursor = (i + 1) & mask;
+        if (isLive(table, i) && isExpired(table, i, now)) {
+          removeAt(table, i, RemovalCause.EXPIRED);
+        }
+      }
+    }
+
+    /**
+     * Evicts entries while the segment is over its maximum size. The CLOCK hand skips recently read
+     * entries, clearing their reference bit, and evicts the first entry that was not read since the
+     * hand last passed it; expired entries it passes are purged along the way.
+     */
+    @GuardedBy("lock")
+    void evictEntries(long now) {
+      if (maxSegmentSize < 0) {
+        return;
+      }
+      Table table = this.table;
+      int mask = table.mask();
+      // two revolutions always find a victim, as the first clears all reference bits
+      for (int n = 0; count > maxSegmentSize && n <= 2 * mask + 1; n++) {
+        int i = clockHand;
+        clockHand = (i + 1) & mask;
+        if (!isLive(table, i)) {
+          continue;
+        }
+        if (cache.expires() && isExpired(table, i, now)) {
+          removeAt(table, i, RemovalCause.EXPIRED);
+        } else if (table.referenced[i] != 0) {
+          table.referenced[i] = 0;
+        } else {
+          removeAt(table, i, RemovalCause.SIZE);
+        }
+      }
+    }
+  }
+}
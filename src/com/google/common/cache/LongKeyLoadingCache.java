@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.CheckForNull;
+
+/**
+ * A semi-persistent mapping from {@code long} keys to values, which are automatically loaded by the
+ * cache. Unlike a {@code LoadingCache<Long, V>}, keys are stored in primitive arrays: lookups don't
+ * box their key, and entries are not represented by objects of their own, which considerably
+ * reduces the memory used per entry and the allocation on the hit path. Instances are built using
+ * {@link CacheBuilder#buildLongKeyed}.
+ *
+ * <p>Eviction, expiration and statistics follow the semantics described for {@link LoadingCache},
+ * except that entries evicted by size are chosen by the CLOCK algorithm, which approximates the
+ * least-recently-used order of {@code LoadingCache}.
+ *
+ * <p>Implementations of this interface are expected to be thread-safe, and can be safely accessed
+ * by multiple concurrent threads.
+ *
+ * @param <V> the type of the cache's values, which are not permitted to be null
+ * @since 32.0
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+public interface LongKeyLoadingCache<V> {
+
+  /**
+   * Computes the values of a {@link LongKeyLoadingCache}.
+   *
+   * @since 32.0
+   */
+  @FunctionalInterface
+  interface Loader<V> {
+    /**
+     * Computes or retrieves the value corresponding to {@code key}.
+     *
+     * @return the value associated with {@code key}; <b>must not be null</b>
+     * @throws Exception if unable to load the result
+     */
+    V load(long key) throws Exception;
+  }
+
+  /**
+   * Returns the value associated with {@code key} in this cache, first loading that value if
+   * necessary, as described for {@link LoadingCache#get}.
+   *
+   * @throws ExecutionException if a checked exception was thrown while loading the value
+   * @throws UncheckedExecutionException if an unchecked exception was thrown while loading the
+   *     value
+   * @throws ExecutionError if an error was thrown while loading the value
+   */
+  V get(long key) throws ExecutionException;
+
+  /**
+   * Returns the value associated with {@code key} in this cache, first loading that value if
+   * necessary. Unlike {@link #get}, this method does not throw a checked exception, and thus should
+   * only be used in situations where checked exceptions are not thrown by the loader.
+   *
+   * @throws UncheckedExecutionException if an exception was thrown while loading the value
+   * @throws ExecutionError if an error was thrown while loading the value
+   */
+  V getUnchecked(long key);
+
+  /**
+   * Returns the value associated with {@code key} in this cache, or {@code null} if there is no
+   * cached value for {@code key}.
+   */
+  @CheckForNull
+  V getIfPresent(long key);
+
+  /**
+   * Associates {@code value} with {@code key} in this cache. If the cache previously contained a
+   * value associated with {@code key}, the old value is replaced by {@code value}.
+   */
+  void put(long key, V value);
+
+  /** Discards any cached value for key {@code key}. */
+  void invalidate(long key);
+
+  /** Discards all entries in the cache. */
+  void invalidateAll();
+
+  /** Returns the approximate number of entries in this cache. */
+  long size();
+
+  /**
+   * Returns a current snapshot of this cache's cumulative statistics, or a set of default values if
+   * the cache is not recording statistics. All statistics begin at zero and never decrease over the
+   * lifetime of the cache.
+   */
+  CacheStats stats();
+
+  /**
+   * Performs any pending maintenance operations needed by the cache. Exactly which activities are
+   * performed -- if any -- is implementation-dependent.
+   */
+  void cleanUp();
+}
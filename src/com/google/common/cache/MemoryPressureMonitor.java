@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.util.concurrent.AtomicDouble;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.NotificationEmitter;
+
+/**
+ * Scales the size bounds of the caches built with {@link CacheBuilder#evictOnMemoryPressure} by
+ * the occupancy of the tenured heap pools.
+ *
+ * <p>The monitor asks the JVM to notify it when a tenured pool is more than {@link
+ * #HIGH_OCCUPANCY} full after a garbage collection, and then halves the fraction of their maximum
+ * weight that the caches may use, evicting their least recently used entries at once. The
+ * occupancy is also polled at most once per {@link #POLL_INTERVAL_NANOS} by threads writing to the
+ * caches: while it stays above {@link #HIGH_OCCUPANCY} the fraction keeps shrinking, and once it
+ * falls below {@link #LOW_OCCUPANCY} the fraction grows back in steps of {@link #GROWTH_STEP}.
+ * Since the occupancy after a collection only changes with the next collection, the fraction is
+ * halved at most once per collection of the tenured pools, whether the notification or a poll
+ * reports it first.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class MemoryPressureMonitor {
+  private static final Logger logger = Logger.getLogger(MemoryPressureMonitor.class.getName());
+
+  static final double HIGH_OCCUPANCY = 0.85;
+  static final double LOW_OCCUPANCY = 0.70;
+  static final double MIN_FRACTION = 1.0 / 16;
+  static final double GROWTH_STEP = 1.0 / 8;
+  static final long POLL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final class Holder {
+    static final MemoryPressureMonitor INSTANCE = create();
+  }
+
+  /** Returns the monitor shared by all caches, creating it on first use. */
+  static MemoryPressureMonitor getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  private static MemoryPressureMonitor create() {
+    List<MemoryPoolMXBean> pools = tenuredPools();
+    MemoryPressureMonitor monitor = new MemoryPressureMonitor(pools, collectorsOf(pools));
+    monitor.listenForThresholds();
+    return monitor;
+  }
+
+  private final List<MemoryPoolMXBean> pools;
+  private final List<GarbageCollectorMXBean> collectors;
+  private final List<WeakReference<LocalCache<?, ?>>> caches = new CopyOnWriteArrayList<>();
+  private final AtomicLong nextPollNanos = new AtomicLong(System.nanoTime());
+
+  /** The number of collections of the tenured pools when the capacity was last shrunk. */
+  private final AtomicLong shrunkAtCollectionCount = new AtomicLong(-1);
+
+  /**
+   * The fraction of their maximum weight that the registered caches may currently use. It is
+   * updated with compare-and-set, as both the notification thread and polling writers adjust it.
+   */
+  private final AtomicDouble capacityFraction = new AtomicDouble(1.0);
+
+  MemoryPressureMonitor(List<MemoryPoolMXBean> pools, List<GarbageCollectorMXBean> collectors) {
+    this.pools = pools;
+    this.collectors = collectors;
+  }
+
+  /** Returns the heap pools holding long-lived objects, which are those with a usage threshold. */
+  static List<MemoryPoolMXBean> tenuredPools() {
+    List<MemoryPoolMXBean> pools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP
+          && pool.isUsageThresholdSupported()
+          && pool.isCollectionUsageThresholdSupported()) {
+        pools.add(pool);
+      }
+    }
+    return pools;
+  }
+
+  /** Returns the garbage collectors that collect any of {@code pools}. */
+  static List<GarbageCollectorMXBean> collectorsOf(List<MemoryPoolMXBean> pools) {
+    List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      for (MemoryPoolMXBean pool : pools) {
+        if (Arrays.asList(collector.getMemoryPoolNames()).contains(pool.getName())) {
+          collectors.add(collector);
+          break;
+        }
+      }
+    }
+    return collectors;
+  }
+
+  /**
+   * Sets a collection usage threshold on each pool that doesn't have one yet, and listens for it
+   * being exceeded.
+   */
+  void listenForThresholds() {
+    if (pools.isEmpty()) {
+      logger.log(Level.WARNING, "No tenured heap pool found; caches will ignore memory pressure");
+      return;
+    }
+    try {
+      for (MemoryPoolMXBean pool : pools) {
+        long max = maxOf(pool.getUsage());
+        if (pool.getCollectionUsageThreshold() == 0 && max > 0) {
+          pool.setCollectionUsageThreshold((long) (max * HIGH_OCCUPANCY));
+        }
+      }
+      NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+      emitter.addNotificationListener(
+          (notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+                notification.getType())) {
+              shrinkOncePerCollection();
+            }
+          },
+          null,
+          null);
+    } catch (RuntimeException e) {
+      // e.g. a SecurityException; polling still works
+      logger.log(Level.WARNING, "Failed to listen for memory pressure", e);
+    }
+  }
+
+  /** Returns {@code maxWeight} scaled by the current capacity fraction. */
+  long scale(long maxWeight) {
+    double fraction = capacityFraction.get();
+    return (fraction >= 1.0) ? maxWeight : (long) (maxWeight * fraction);
+  }
+
+  void register(LocalCache<?, ?> cache) {
+    caches.add(new WeakReference<LocalCache<?, ?>>(cache));
+  }
+
+  /**
+   * Checks the occupancy of the tenured pools, unless that was done less than {@link
+   * #POLL_INTERVAL_NANOS} ago, and adjusts the capacity of the caches.
+   */
+  void poll() {
+    long now = System.nanoTime();
+    long next = nextPollNanos.get();
+    if (now - next < 0 || !nextPollNanos.compareAndSet(next, now + POLL_INTERVAL_NANOS)) {
+      return;
+    }
+    double occupancy = occupancy();
+    if (occupancy > HIGH_OCCUPANCY) {
+      shrinkOncePerCollection();
+    } else if (occupancy < LOW_OCCUPANCY) {
+      grow();
+    }
+  }
+
+  /** Grows the capacity of the caches by {@link #GROWTH_STEP}, up to their maximum weight. */
+  void grow() {
+    double fraction;
+    do {
+      fraction = capacityFraction.get();
+      if (fraction >= 1.0) {
+        return;
+      }
+    } while (!capacityFraction.compareAndSet(fraction, Math.min(1.0, fraction + GROWTH_STEP)));
+  }
+
+  /** Returns the highest occupancy of the tenured pools after their last collection. */
+  double occupancy() {
+    double occupancy = 0;
+    for (MemoryPoolMXBean pool : pools) {
+      MemoryUsage usage = pool.getCollectionUsage();
+      if (usage == null) {
+        usage = pool.getUsage();
+      }
+      long max = maxOf(usage);
+      if (max > 0) {
+        occupancy = Math.max(occupancy, (double) usage.getUsed() / max);
+      }
+    }
+    return occupancy;
+  }
+
+  /**
+   * Shrinks the capacity of the caches, unless it was already shrunk since the tenured pools were
+   * last collected. If the collection count is unavailable, always shrinks.
+   */
+  void shrinkOncePerCollection() {
+    long collectionCount = collectionCount();
+    if (collectionCount >= 0) {
+      long shrunkAt = shrunkAtCollectionCount.get();
+      if (collectionCount == shrunkAt
+          || !shrunkAtCollectionCount.compareAndSet(shrunkAt, collectionCount)) {
+        return; // another thread already reacted to this collection
+      }
+    }
+    shrink();
+  }
+
+  /**
+   * Returns the total number of collections of the tenured pools, or -1 if no collector reports
+   * it.
+   */
+  long collectionCount() {
+    long count = -1;
+    for (GarbageCollectorMXBean collector : collectors) {
+      long collections = collector.getCollectionCount();
+      if (collections >= 0) {
+        count = Math.max(count, 0) + collections;
+      }
+    }
+    return count;
+  }
+
+  /** Halves the capacity of the caches, and evicts their entries beyond it. */
+  void shrink() {
+    double fraction;
+    do {
+      fraction = capacityFraction.get();
+    } while (!capacityFraction.compareAndSet(fraction, Math.max(MIN_FRACTION, fraction / 2)));
+    for (WeakReference<LocalCache<?, ?>> reference : caches) {
+      LocalCache<?, ?> cache = reference.get();
+      if (cache == null) {
+        caches.remove(reference);
+      } else {
+        cache.evictToPressureTarget();
+      }
+    }
+  }
+
+  private static long maxOf(MemoryUsage usage) {
+    return (usage.getMax() > 0) ? usage.getMax() : usage.getCommitted();
+  }
+}
@@ -85,6 +85,15 @@ interface ReferenceEntry<K, V> {
   /** Sets the previous entry in the access queue. */
   void setPreviousInAccessQueue(ReferenceEntry<K, V> previous);
 
+  /**
+   * Returns the region of a segmented access queue that this entry currently belongs to, or
+   * {@code 0} if it is not in such a queue.
+   */
+  int getAccessRegion();
+
+  /** Sets the region of a segmented access queue that this entry belongs to. */
+  void setAccessRegion(int region);
+
   /*
    * Implemented by entries that use write order. Write entries are maintained in a doubly-linked
    * list. New entries are added at the tail of the list at write time and stale entries are
@@ -99,6 +108,24 @@ interface ReferenceEntry<K, V> {
   @SuppressWarnings("GoodTime") // b/122668874
   void setWriteTime(long time);
 
+  /**
+   * Returns the time at which this entry expires, in ns, when the cache uses a per-entry {@link
+   * Expiry}.
+   */
+  @SuppressWarnings("GoodTime")
+  long getExpirationTime();
+
+  /** Sets the entry expiration time in ns. */
+  @SuppressWarnings("GoodTime")
+  void setExpirationTime(long time);
+
+  /**
+   * Atomically sets the entry expiration time to {@code update} if it is currently {@code expect},
+   * returning whether it was set.
+   */
+  @SuppressWarnings("GoodTime")
+  boolean casExpirationTime(long expect, long update);
+
   /** Returns the next entry in the write queue. */
   ReferenceEntry<K, V> getNextInWriteQueue();
 
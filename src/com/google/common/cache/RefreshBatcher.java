@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
+import com.google.common.cache.LocalCache.LoadingValueReference;
+import com.google.common.cache.LocalCache.Segment;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Groups the refreshes of distinct keys into a single call to {@link CacheLoader#reloadAll}.
+ *
+ * <p>The first refresh to arrive opens a batch and submits a task to {@link #executor}: the task
+ * waits until either the batch holds {@code maxBatchSize} keys or {@code maxDelayNanos} have
+ * elapsed, and then reloads the whole batch. Refreshes arriving in the meantime join the batch.
+ * Unlike {@link LoadBatcher}, nobody waits for the batch: readers keep returning the old values
+ * until the {@link LoadingValueReference} of their key is completed. If the loader implements
+ * neither {@code reloadAll} nor {@code loadAll}, the batched keys are reloaded individually.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class RefreshBatcher<K, V> {
+  private static final Logger logger = Logger.getLogger(RefreshBatcher.class.getName());
+
+  final CacheLoader<? super K, V> loader;
+  final int maxBatchSize;
+  final long maxDelayNanos;
+  final Executor executor;
+
+  final ReentrantLock lock = new ReentrantLock();
+
+  /** Signaled when the open batch is closed because it became full. */
+  final Condition closed = lock.newCondition();
+
+  /** The batch that new refreshes join. */
+  @GuardedBy("lock")
+  List<Request<K, V>> batch = new ArrayList<>();
+
+  RefreshBatcher(
+      CacheLoader<? super K, V> loader, int maxBatchSize, long maxDelayNanos, Executor executor) {
+    this.loader = loader;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelayNanos;
+    this.executor = executor;
+  }
+
+  /** A pending refresh of a single key. */
+  static final class Request<K, V> {
+    final Segment<K, V> segment;
+    final K key;
+    final int hash;
+    final V oldValue;
+    final LoadingValueReference<K, V> loadingValueReference;
+
+    Request(
+        Segment<K, V> segment,
+        K key,
+        int hash,
+        V oldValue,
+        LoadingValueReference<K, V> loadingValueReference) {
+      this.segment = segment;
+      this.key = key;
+      this.hash = hash;
+      this.oldValue = oldValue;
+      this.loadingValueReference = loadingValueReference;
+    }
+  }
+
+  /**
+   * Adds the refresh of {@code key} to a batch, without waiting for it. The caller must have
+   * installed {@code loadingValueReference} for {@code key} in {@code segment}, in place of {@code
+   * oldValue}.
+   */
+  void refresh(
+      Segment<K, V> segment,
+      K key,
+      int hash,
+      V oldValue,
+      LoadingValueReference<K, V> loadingValueReference) {
+    loadingValueReference.stopwatch.start();
+    List<Request<K, V>> opened = null;
+    lock.lock();
+    try {
+      List<Request<K, V>> current = batch;
+      current.add(new Request<>(segment, key, hash, oldValue, loadingValueReference));
+      if (current.size() >= maxBatchSize) {
+        // close the batch, so that later refreshes start a new one
+        batch = new ArrayList<>();
+        closed.signalAll();
+      }
+      if (current.size() == 1) {
+        opened = current;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (opened != null) {
+      List<Request<K, V>> requests = opened;
+      try {
+        executor.execute(() -> collectAndReload(requests));
+      } catch (RejectedExecutionException e) {
+        close(requests);
+        reloadBatch(requests);
+      }
+    }
+  }
+
+  /** Waits for {@code requests} to fill, for at most the maximum delay, and reloads the batch. */
+  void collectAndReload(List<Request<K, V>> requests) {
+    boolean interrupted = false;
+    lock.lock();
+    try {
+      long remainingNanos = maxDelayNanos;
+      while ((batch == requests) && (remainingNanos > 0)) {
+        try {
+          remainingNanos = closed.awaitNanos(remainingNanos);
+        } catch (InterruptedException e) {
+          interrupted = true;
+          break;
+        }
+      }
+      if (batch == requests) {
+        batch = new ArrayList<>();
+      }
+    } finally {
+      lock.unlock();
+    }
+    reloadBatch(requests);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  void close(List<Request<K, V>> requests) {
+    lock.lock();
+    try {
+      if (batch == requests) {
+        batch = new ArrayList<>();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Reloads the values of a closed batch, completing all of its requests. */
+  void reloadBatch(List<Request<K, V>> requests) {
+    Map<K, V> oldValues = new LinkedHashMap<>();
+    for (Request<K, V> request : requests) {
+      oldValues.put(request.key, request.oldValue);
+    }
+
+    ListenableFuture<Map<K, V>> result;
+    try {
+      @SuppressWarnings("unchecked") // safe since all keys extend K
+      ListenableFuture<Map<K, V>> future =
+          (ListenableFuture<Map<K, V>>) (ListenableFuture<?>) loader.reloadAll(oldValues);
+      result = future;
+    } catch (Throwable t) {
+      completeAll(requests, Futures.immediateFailedFuture(t));
+      if (t instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+    if (result == null) {
+      completeAll(
+          requests,
+          Futures.immediateFailedFuture(
+              new InvalidCacheLoadException(loader + " returned null future from reloadAll")));
+      return;
+    }
+    result.addListener(() -> completeAll(requests, result), directExecutor());
+  }
+
+  /** Completes the requests of a batch from the done result of {@link CacheLoader#reloadAll}. */
+  void completeAll(List<Request<K, V>> requests, ListenableFuture<Map<K, V>> result) {
+    Map<K, V> values;
+    try {
+      values = Futures.getDone(result);
+    } catch (ExecutionException | RuntimeException e) {
+      Throwable t = (e instanceof ExecutionException) ? e.getCause() : e;
+      if (t instanceof UnsupportedLoadingOperationException) {
+        // neither reloadAll nor loadAll implemented, fallback to reload
+        for (Request<K, V> request : requests) {
+          reloadIndividually(request);
+        }
+      } else {
+        failAll(requests, t);
+      }
+      return;
+    }
+
+    if (values == null) {
+      failAll(
+          requests, new InvalidCacheLoadException(loader + " returned null map from reloadAll"));
+      return;
+    }
+    for (Request<K, V> request : requests) {
+      V value = values.get(request.key);
+      if (value == null) {
+        complete(
+            request,
+            Futures.immediateFailedFuture(
+                new InvalidCacheLoadException(
+                    "reloadAll failed to return a value for " + request.key)));
+      } else {
+        complete(request, Futures.immediateFuture(value));
+      }
+    }
+  }
+
+  /** Fails all requests of a batch, logging the exception once rather than for every key. */
+  static <K, V> void failAll(List<Request<K, V>> requests, Throwable t) {
+    logger.log(Level.WARNING, "Exception thrown during batched refresh", t);
+    for (Request<K, V> request : requests) {
+      LoadingValueReference<K, V> loadingValueReference = request.loadingValueReference;
+      loadingValueReference.setException(t);
+      request.segment.statsCounter.recordLoadException(loadingValueReference.elapsedNanos());
+      request.segment.removeLoadingValue(request.key, request.hash, loadingValueReference);
+    }
+  }
+
+  void reloadIndividually(Request<K, V> request) {
+    ListenableFuture<V> newValue;
+    try {
+      newValue = loader.reload(request.key, request.oldValue);
+    } catch (Throwable t) {
+      complete(request, Futures.immediateFailedFuture(t));
+      if (t instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+    if (newValue == null) {
+      newValue = Futures.immediateFuture(null);
+    }
+    ListenableFuture<V> reloaded = newValue;
+    reloaded.addListener(() -> complete(request, reloaded), directExecutor());
+  }
+
+  /**
+   * Stores the reloaded value, or restores the old value if the reload failed, and completes the
+   * loading value reference.
+   */
+  static <K, V> void complete(Request<K, V> request, ListenableFuture<V> newValue) {
+    LoadingValueReference<K, V> loadingValueReference = request.loadingValueReference;
+    try {
+      V value =
+          request.segment.getAndRecordStats(
+              request.key, request.hash, loadingValueReference, newValue);
+      // a no-op unless the store was clobbered by a concurrent write
+      loadingValueReference.set(value);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown during refresh", t);
+      loadingValueReference.setException(t);
+    }
+  }
+}
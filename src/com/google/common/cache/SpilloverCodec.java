@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts cache keys or values to and from bytes, so that entries evicted by size can be kept in
+ * a cache's spillover tier (see {@link CacheBuilder#spillover}), and so that caches can be saved to
+ * and warmed from snapshots (see {@link CacheSnapshots}).
+ *
+ * <p>These methods may be invoked while the cache holds a lock on the entry's segment, so they
+ * should be fast and must not access the cache.
+ *
+ * @param <V> the type of the encoded keys or values
+ * @since 32.0
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+public interface SpilloverCodec<V> {
+
+  /** Returns the serialized form of {@code value}. */
+  byte[] encode(V value);
+
+  /**
+   * Returns the value serialized in the remaining bytes of {@code bytes}, which is a read-only
+   * buffer that the codec may consume.
+   */
+  V decode(ByteBuffer bytes);
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.math.RoundingMode.CEILING;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.math.LongMath;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * A bounded, memory-mapped store for entries that were evicted from a cache by size.
+ *
+ * <p>The backing file is split into stripes, and each key is spilled to the stripe selected by its
+ * hash code, so that segments evicting different keys rarely contend. Each stripe is split into
+ * fixed-size regions that are written as a circular log: values are appended to the current
+ * region, and once the stripe is full its oldest region is reused. An in-memory index maps each
+ * spilled key to the position of its value in the log; index entries whose value was overwritten
+ * are purged when their region is reused, looking only at the keys written to that region. As the
+ * log is only ever appended to, replacing or removing a key leaves garbage behind that is reclaimed
+ * when the log wraps around.
+ *
+ * <p>All writes to a stripe are guarded by the stripe's monitor. Its index may be queried without
+ * the lock, and values are decoded outside of the lock from a copy of their bytes.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class SpilloverTier<K, V> {
+  /** The maximum size of a mapped region of the spillover file. */
+  static final int MAX_REGION_SIZE = 64 << 20;
+
+  /**
+   * The minimum size of a region, unless the whole stripe is smaller, so that reasonably large
+   * values can still be spilled.
+   */
+  static final int MIN_REGION_SIZE = 64 << 10;
+
+  /**
+   * The number of regions a stripe is split into, unless that would make them smaller than {@link
+   * #MIN_REGION_SIZE} or larger than {@link #MAX_REGION_SIZE}. Wrapping around the log only drops
+   * the values in its oldest region.
+   */
+  static final int REGIONS_PER_STRIPE = 8;
+
+  /** The maximum number of stripes. */
+  static final int MAX_STRIPES = 16;
+
+  /** The minimum size of a stripe, so that small tiers can still hold reasonably large values. */
+  static final long MIN_STRIPE_SIZE = 1 << 20;
+
+  final SpilloverCodec<V> codec;
+  final Stripe<K>[] stripes;
+
+  SpilloverTier(File file, long maxBytes, SpilloverCodec<V> codec) throws IOException {
+    checkArgument(maxBytes > 0, "maxBytes must be positive: %s", maxBytes);
+    this.codec = codec;
+    int stripeCount =
+        Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors()), MAX_STRIPES);
+    while (stripeCount > 1 && maxBytes / stripeCount < MIN_STRIPE_SIZE) {
+      stripeCount >>= 1;
+    }
+    long stripeSize = maxBytes / stripeCount;
+    this.stripes = newStripeArray(stripeCount);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = raf.getChannel();
+      for (int i = 0; i < stripeCount; i++) {
+        // the mapping remains valid after the channel is closed
+        stripes[i] = new Stripe<>(channel, i * stripeSize, stripeSize);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K> Stripe<K>[] newStripeArray(int size) {
+    return (Stripe<K>[]) new Stripe<?>[size];
+  }
+
+  Stripe<K> stripeFor(Object key) {
+    int h = key.hashCode();
+    return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+  }
+
+  /**
+   * Spills {@code value}, replacing any value previously spilled for {@code key}. Values larger
+   * than a region are not spilled.
+   *
+   * @param expirationTime the ticker time at which the entry expires
+   */
+  void put(K key, V value, long expirationTime) {
+    stripeFor(key).put(key, codec.encode(value), expirationTime);
+  }
+
+  /** Returns whether a value may be spilled for {@code key}, without taking any lock. */
+  boolean mightContain(Object key) {
+    return stripeFor(key).index.containsKey(key);
+  }
+
+  /**
+   * Removes and returns the value spilled for {@code key}, or returns null if there is none or it
+   * has expired.
+   */
+  @CheckForNull
+  V remove(Object key, long now) {
+    Stripe<K> stripe = stripeFor(key);
+    if (!stripe.index.containsKey(key)) {
+      return null;
+    }
+    Location location;
+    byte[] bytes;
+    synchronized (stripe) {
+      location = stripe.index.remove(key);
+      if (location == null) {
+        return null;
+      }
+      bytes = stripe.read(location);
+    }
+    if (now - location.expirationTime >= 0) {
+      return null;
+    }
+    return codec.decode(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+  }
+
+  /** Discards the value spilled for {@code key}, if any. */
+  void invalidate(Object key) {
+    Stripe<K> stripe = stripeFor(key);
+    if (stripe.index.containsKey(key)) {
+      synchronized (stripe) {
+        stripe.index.remove(key);
+      }
+    }
+  }
+
+  /** Discards all spilled values. */
+  void clear() {
+    for (Stripe<K> stripe : stripes) {
+      synchronized (stripe) {
+        stripe.index.clear();
+      }
+    }
+  }
+
+  /** Returns the number of spilled values, including ones that may have expired. */
+  int size() {
+    int size = 0;
+    for (Stripe<K> stripe : stripes) {
+      size += stripe.index.size();
+    }
+    return size;
+  }
+
+  /** The position of a spilled value in the log of its stripe. */
+  static final class Location {
+    final long position;
+    final int length;
+    final long expirationTime;
+
+    Location(long position, int length, long expirationTime) {
+      this.position = position;
+      this.length = length;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  /** A circular log over a contiguous part of the spillover file, with the index of its keys. */
+  static final class Stripe<K> {
+    final MappedByteBuffer[] regions;
+    final int regionSize;
+
+    /** The total size of the log, in bytes. */
+    final long capacity;
+
+    /** The position in the log at which the next value will be written. */
+    @GuardedBy("this")
+    long writePosition;
+
+    /** The spilled keys; only modified while holding this stripe's monitor. */
+    final Map<K, Location> index = new ConcurrentHashMap<>();
+
+    /** The keys written to each region since it was last reused, some of them since rewritten. */
+    @GuardedBy("this")
+    final List<List<K>> regionKeys;
+
+    Stripe(FileChannel channel, long start, long size) throws IOException {
+      long regionCount = Math.max(1, Math.min(size / MIN_REGION_SIZE, REGIONS_PER_STRIPE));
+      regionCount = Math.max(regionCount, LongMath.divide(size, MAX_REGION_SIZE, CEILING));
+      this.regionSize = (int) (size / regionCount);
+      this.capacity = regionCount * regionSize;
+      this.regions = new MappedByteBuffer[(int) regionCount];
+      this.regionKeys = new ArrayList<>((int) regionCount);
+      for (int i = 0; i < regionCount; i++) {
+        regions[i] = channel.map(MapMode.READ_WRITE, start + (long) i * regionSize, regionSize);
+        regionKeys.add(new ArrayList<K>());
+      }
+    }
+
+    synchronized void put(K key, byte[] bytes, long expirationTime) {
+      if (bytes.length > regionSize) {
+        index.remove(key);
+        return;
+      }
+      int offset = (int) (writePosition % regionSize);
+      if (offset + bytes.length > regionSize) {
+        // values never straddle regions; skip to the start of the next one
+        writePosition += regionSize - offset;
+        offset = 0;
+      }
+      if (offset == 0) {
+        purgeOverwritten(writePosition);
+      }
+      ByteBuffer region = regions[regionIndex(writePosition)].duplicate();
+      region.position(offset);
+      region.put(bytes);
+      index.put(key, new Location(writePosition, bytes.length, expirationTime));
+      regionKeys.get(regionIndex(writePosition)).add(key);
+      writePosition += bytes.length;
+    }
+
+    /** Returns a copy of the bytes at {@code location}. */
+    @GuardedBy("this")
+    byte[] read(Location location) {
+      byte[] bytes = new byte[location.length];
+      ByteBuffer region = regions[regionIndex(location.position)].duplicate();
+      region.position((int) (location.position % regionSize));
+      region.get(bytes);
+      return bytes;
+    }
+
+    int regionIndex(long position) {
+      return (int) ((position / regionSize) % regions.length);
+    }
+
+    /** Removes the index entries of the values in the region starting at {@code regionStart}. */
+    @GuardedBy("this")
+    void purgeOverwritten(long regionStart) {
+      if (regionStart < capacity) {
+        return; // first pass over the stripe
+      }
+      long overwrittenEnd = regionStart - capacity + regionSize;
+      List<K> keys = regionKeys.get(regionIndex(regionStart));
+      for (K key : keys) {
+        Location location = index.get(key);
+        // the key may have been spilled again since, to a later region
+        if (location != null && location.position < overwrittenEnd) {
+          index.remove(key);
+        }
+      }
+      keys.clear();
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.Striped64.NCPU;
+import static com.google.common.cache.Striped64.rng;
+import static com.google.common.cache.Striped64.threadHashCode;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.math.IntMath;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A lossy, bounded buffer of elements recorded by many producers and drained by a single consumer.
+ * It is used to record cache reads without blocking or allocating: elements are published into one
+ * of several small ring buffers, chosen by the producing thread's probe as in {@link Striped64}, so
+ * that concurrent readers rarely contend on the same counters.
+ *
+ * <p>An element is rejected rather than blocking the producer when its ring buffer is full or when
+ * another producer won the race for the same slot. This is acceptable because the buffer only
+ * carries hints for the access order policy; losing a few of them makes the policy less precise
+ * but never incorrect.
+ *
+ * <p>{@link #offer} may be called by any thread. {@link #drainTo} must only be called by one thread
+ * at a time; the cache calls it while holding the segment lock.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class StripedReadBuffer<E> {
+  /** The element was recorded. */
+  static final int SUCCESS = 0;
+
+  /** The element was dropped because another producer raced for the same slot. */
+  static final int FAILED = 1;
+
+  /** The element was dropped because the ring buffer is full and should be drained. */
+  static final int FULL = -1;
+
+  /** The capacity of each ring buffer. This must be a power of two. */
+  static final int BUFFER_SIZE = 16;
+
+  /** The mask for computing a ring buffer slot index. */
+  static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+  /** The maximum number of ring buffers, which bounds the memory used by an idle buffer. */
+  static final int MAX_STRIPES = IntMath.ceilingPowerOfTwo(NCPU);
+
+  /** Ring buffers, lazily created the first time a thread is mapped to them. */
+  final AtomicReferenceArray<RingBuffer<E>> stripes;
+
+  StripedReadBuffer() {
+    stripes = new AtomicReferenceArray<>(MAX_STRIPES);
+  }
+
+  /**
+   * Inserts the specified element into this buffer if it is possible to do so immediately without
+   * violating capacity restrictions.
+   *
+   * @return {@link #SUCCESS}, {@link #FAILED}, or {@link #FULL}
+   */
+  int offer(E e) {
+    int[] hc = threadHashCode.get();
+    int h;
+    if (hc == null) {
+      threadHashCode.set(hc = new int[1]); // Initialize randomly
+      int r = rng.nextInt(); // Avoid zero to allow xorShift rehash
+      h = hc[0] = (r == 0) ? 1 : r;
+    } else {
+      h = hc[0];
+    }
+
+    int index = h & (MAX_STRIPES - 1);
+    RingBuffer<E> buffer = stripes.get(index);
+    if (buffer == null) {
+      stripes.compareAndSet(index, null, new RingBuffer<E>());
+      buffer = stripes.get(index);
+    }
+
+    int result = buffer.offer(e);
+    if (result == FAILED) {
+      // Move to a different stripe so that two threads don't keep colliding
+      h ^= h << 13; // xorshift
+      h ^= h >>> 17;
+      h ^= h << 5;
+      hc[0] = h;
+    }
+    return result;
+  }
+
+  /**
+   * Removes the buffered elements, in per-stripe insertion order, and passes them to {@code
+   * consumer}.
+   */
+  void drainTo(Consumer<E> consumer) {
+    for (int i = 0; i < stripes.length(); i++) {
+      RingBuffer<E> buffer = stripes.get(i);
+      if (buffer != null) {
+        buffer.drainTo(consumer);
+      }
+    }
+  }
+
+  /** A bounded multiple-producer, single-consumer ring buffer that rejects rather than blocks. */
+  static final class RingBuffer<E> {
+    final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+    final AtomicLong writeCounter = new AtomicLong();
+    volatile long readCounter;
+
+    int offer(E e) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      if (tail - head >= BUFFER_SIZE) {
+        return FULL;
+      }
+      if (writeCounter.compareAndSet(tail, tail + 1)) {
+        buffer.lazySet((int) (tail & BUFFER_MASK), e);
+        return SUCCESS;
+      }
+      return FAILED;
+    }
+
+    void drainTo(Consumer<E> consumer) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      if (head == tail) {
+        return;
+      }
+      for (; head != tail; head++) {
+        int index = (int) (head & BUFFER_MASK);
+        E e = buffer.get(index);
+        if (e == null) {
+          // not published yet; the producer will be caught up with on the next drain
+          break;
+        }
+        buffer.lazySet(index, null);
+        consumer.accept(e);
+      }
+      readCounter = head;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tags of the entries of a segment, indexed in both directions so that the keys with a given
+ * tag are found without scanning the segment. Instances are not thread-safe; they are guarded by
+ * the lock of their segment.
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+final class TagIndex<K> {
+  private final Map<Object, Set<K>> keysByTag = new HashMap<>();
+  private final Map<K, ImmutableSet<Object>> tagsByKey = new HashMap<>();
+
+  /** Replaces the tags of {@code key} with {@code newTags}. */
+  void tag(K key, ImmutableSet<Object> newTags) {
+    ImmutableSet<Object> oldTags =
+        newTags.isEmpty() ? tagsByKey.remove(key) : tagsByKey.put(key, newTags);
+    if (oldTags != null) {
+      for (Object tag : oldTags) {
+        if (!newTags.contains(tag)) {
+          removeFromTag(tag, key);
+        }
+      }
+    }
+    for (Object tag : newTags) {
+      if (oldTags == null || !oldTags.contains(tag)) {
+        keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+      }
+    }
+  }
+
+  /** Removes the tags of {@code key}. */
+  void untag(K key) {
+    ImmutableSet<Object> oldTags = tagsByKey.remove(key);
+    if (oldTags != null) {
+      for (Object tag : oldTags) {
+        removeFromTag(tag, key);
+      }
+    }
+  }
+
+  private void removeFromTag(Object tag, K key) {
+    Set<K> keys = keysByTag.get(tag);
+    if (keys != null && keys.remove(key) && keys.isEmpty()) {
+      keysByTag.remove(tag);
+    }
+  }
+
+  /** Returns the tags of {@code key}. */
+  ImmutableSet<Object> tagsOf(K key) {
+    ImmutableSet<Object> tags = tagsByKey.get(key);
+    return (tags == null) ? ImmutableSet.of() : tags;
+  }
+
+  /** Returns a copy of the keys tagged with {@code tag}. */
+  ImmutableList<K> keysTagged(Object tag) {
+    Set<K> keys = keysByTag.get(tag);
+    return (keys == null) ? ImmutableList.of() : ImmutableList.copyOf(keys);
+  }
+
+  void clear() {
+    keysByTag.clear();
+    tagsByKey.clear();
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+
+/**
+ * Calculates the tags of cache entries, by which they can be invalidated in bulk with {@link
+ * Cache#invalidateByTag}.
+ *
+ * <p>Tags are compared with {@link Object#equals}. This method is invoked while the cache holds a
+ * lock on the entry's segment, so it should be fast and must not access the cache.
+ *
+ * @since 32.0
+ */
+@GwtIncompatible
+@FunctionalInterface
+@ElementTypesAreNonnullByDefault
+public interface Tagger<K, V> {
+
+  /**
+   * Returns the tags of a cache entry, which replace any tags of its previous value. This is
+   * invoked whenever a value is stored in the cache, whether it was put or loaded.
+   *
+   * @return the tags of the entry, which may be empty but must not contain null
+   */
+  Iterable<?> tagsOf(K key, V value);
+}
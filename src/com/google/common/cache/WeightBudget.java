@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bound on the total weight of the entries of several caches. Caches are attached to a budget
+ * with {@link CacheBuilder#weightBudget}; memory then moves between them as their workloads shift,
+ * instead of being stranded in caches that are rarely read.
+ *
+ * <p>Whenever the attached caches together exceed {@link #maximumWeight}, entries are evicted, in
+ * least-recently-used order, from the cache with the lowest hit density: the number of recent hits
+ * per unit of weight it holds. This is the cache whose entries are expected to yield the fewest
+ * hits for the memory they use, so shrinking it costs the fewest hits overall. Hits are counted
+ * with exponential decay, halving every second, so that the ranking follows changes in the
+ * workload.
+ *
+ * <p>The budget is enforced by the thread writing to an attached cache, after it has released the
+ * cache's locks. Segments that are busy at that time are skipped, so the total weight may exceed
+ * the budget briefly. Caches that are garbage collected are detached automatically.
+ *
+ * @since 32.0
+ */
+@GwtIncompatible
+@ElementTypesAreNonnullByDefault
+public final class WeightBudget {
+  private static final long DECAY_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final long maximumWeight;
+  private final LongAddable weight = LongAddables.create();
+  private final List<Member> members = new CopyOnWriteArrayList<>();
+
+  /** Held by the thread enforcing the budget; other writers leave the enforcement to it. */
+  private final ReentrantLock enforcementLock = new ReentrantLock();
+
+  @GuardedBy("enforcementLock")
+  private long lastDecayNanos = System.nanoTime();
+
+  private WeightBudget(long maximumWeight) {
+    this.maximumWeight = maximumWeight;
+  }
+
+  /**
+   * Returns a new budget bounding the total weight of the entries of the caches attached to it.
+   *
+   * @throws IllegalArgumentException if {@code maximumWeight} is negative
+   */
+  public static WeightBudget create(long maximumWeight) {
+    checkArgument(maximumWeight >= 0, "maximumWeight must not be negative: %s", maximumWeight);
+    return new WeightBudget(maximumWeight);
+  }
+
+  /** Returns the maximum total weight of the entries of the attached caches. */
+  public long maximumWeight() {
+    return maximumWeight;
+  }
+
+  /**
+   * Returns the approximate total weight of the entries of the attached caches. This may briefly
+   * exceed {@link #maximumWeight}.
+   */
+  public long weight() {
+    return weight.sum();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("maximumWeight", maximumWeight)
+        .add("weight", weight())
+        .add("caches", members.size())
+        .toString();
+  }
+
+  /**
+   * Returns the member through which {@code cache} draws from this budget. The member must be
+   * {@linkplain Member#attach attached} once the cache is fully constructed.
+   */
+  Member newMember(LocalCache<?, ?> cache) {
+    return new Member(cache);
+  }
+
+  /**
+   * Evicts entries from the attached caches with the lowest hit density until the budget is met,
+   * unless another thread is already doing so.
+   */
+  void enforce() {
+    if (weight.sum() <= maximumWeight || !enforcementLock.tryLock()) {
+      return;
+    }
+    try {
+      long now = System.nanoTime();
+      boolean decay = now - lastDecayNanos >= DECAY_PERIOD_NANOS;
+      if (decay) {
+        lastDecayNanos = now;
+      }
+      List<Member> candidates = new ArrayList<>(members.size());
+      for (Member member : members) {
+        if (member.cache.get() == null) {
+          members.remove(member);
+          weight.add(-member.weight.sum());
+        } else {
+          member.updateHitDensity(decay);
+          candidates.add(member);
+        }
+      }
+      candidates.sort(Comparator.comparingDouble(member -> member.hitDensity));
+
+      long excess = weight.sum() - maximumWeight;
+      for (Member member : candidates) {
+        if (excess <= 0) {
+          break;
+        }
+        excess -= member.shed(excess);
+      }
+    } finally {
+      enforcementLock.unlock();
+    }
+  }
+
+  /** The share of the budget drawn by a single cache. */
+  final class Member {
+    final WeakReference<LocalCache<?, ?>> cache;
+    final LongAddable weight = LongAddables.create();
+    final LongAddable hits = LongAddables.create();
+
+    /** Recent hits, decayed by half every {@link #DECAY_PERIOD_NANOS}. */
+    @GuardedBy("enforcementLock")
+    long decayedHits;
+
+    /** The value of {@link #hits} when {@link #decayedHits} was last decayed. */
+    @GuardedBy("enforcementLock")
+    long decayedHitsAsOf;
+
+    @GuardedBy("enforcementLock")
+    double hitDensity;
+
+    Member(LocalCache<?, ?> cache) {
+      this.cache = new WeakReference<LocalCache<?, ?>>(cache);
+    }
+
+    void attach() {
+      members.add(this);
+    }
+
+    /** Records that the weight of the cache's entries changed by {@code delta}. */
+    void charge(long delta) {
+      weight.add(delta);
+      WeightBudget.this.weight.add(delta);
+    }
+
+    void enforce() {
+      WeightBudget.this.enforce();
+    }
+
+    @GuardedBy("enforcementLock")
+    void updateHitDensity(boolean decay) {
+      long totalHits = hits.sum();
+      long recentHits = decayedHits + (totalHits - decayedHitsAsOf);
+      if (decay) {
+        decayedHits = (decayedHits >> 1) + (totalHits - decayedHitsAsOf);
+        decayedHitsAsOf = totalHits;
+      }
+      hitDensity = (double) recentHits / Math.max(1, weight.sum());
+    }
+
+    /** Evicts about {@code excessWeight} from the cache, returning the weight actually evicted. */
+    long shed(long excessWeight) {
+      LocalCache<?, ?> localCache = cache.get();
+      return (localCache == null) ? 0 : localCache.shedWeight(excessWeight);
+    }
+
+    /** Returns a stats counter that counts the hits of the cache before delegating. */
+    StatsCounter countingHits(StatsCounter delegate) {
+      return new StatsCounter() {
+        @Override
+        public void recordHits(int count) {
+          hits.add(count);
+          delegate.recordHits(count);
+        }
+
+        @Override
+        public void recordMisses(int count) {
+          delegate.recordMisses(count);
+        }
+
+        @Override
+        public void recordLoadSuccess(long loadTime) {
+          delegate.recordLoadSuccess(loadTime);
+        }
+
+        @Override
+        public void recordLoadException(long loadTime) {
+          delegate.recordLoadException(loadTime);
+        }
+
+        @Override
+        public void recordEviction() {
+          delegate.recordEviction();
+        }
+
+        @Override
+        public void recordEviction(RemovalCause cause) {
+          delegate.recordEviction(cause);
+        }
+
+        @Override
+        public void recordLockWait(long waitTime) {
+          delegate.recordLockWait(waitTime);
+        }
+
+        @Override
+        public CacheStats snapshot() {
+          return delegate.snapshot();
+        }
+      };
+    }
+  }
+}
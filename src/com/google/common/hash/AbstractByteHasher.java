@@ -34,6 +34,9 @@ import java.nio.ByteOrder;
 @CanIgnoreReturnValue
 @ElementTypesAreNonnullByDefault
 abstract class AbstractByteHasher extends AbstractHasher {
+  /** Maximum number of bytes copied at once out of a buffer that is not backed by an array. */
+  private static final int BULK_CHUNK_SIZE = 8192;
+
   private final ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
 
   /** Updates this hasher with the given byte. */
@@ -57,8 +60,12 @@ abstract class AbstractByteHasher extends AbstractHasher {
       update(b.array(), b.arrayOffset() + b.position(), b.remaining());
       Java8Compatibility.position(b, b.limit());
     } else {
-      for (int remaining = b.remaining(); remaining > 0; remaining--) {
-        update(b.get());
+      // e.g. a direct or memory-mapped buffer: bulk-copy bounded chunks rather than single bytes
+      byte[] chunk = new byte[Math.min(b.remaining(), BULK_CHUNK_SIZE)];
+      while (b.hasRemaining()) {
+        int length = Math.min(b.remaining(), chunk.length);
+        b.get(chunk, 0, length);
+        update(chunk, 0, length);
       }
     }
   }
@@ -115,12 +115,15 @@ abstract class AbstractStreamingHasher extends AbstractHasher {
       return this;
     }
 
-    // First add just enough to fill buffer size, and munch that
-    int bytesToCopy = bufferSize - buffer.position();
-    for (int i = 0; i < bytesToCopy; i++) {
-      buffer.put(readBuffer.get());
+    // First add just enough to fill buffer size, and munch that. If the buffer is already empty,
+    // skip the copy: process() reads straight from the input, even if it is a direct buffer.
+    if (buffer.position() > 0) {
+      int limit = readBuffer.limit();
+      Java8Compatibility.limit(readBuffer, readBuffer.position() + bufferSize - buffer.position());
+      buffer.put(readBuffer);
+      Java8Compatibility.limit(readBuffer, limit);
+      munch(); // buffer becomes empty here, since chunkSize divides bufferSize
     }
-    munch(); // buffer becomes empty here, since chunkSize divides bufferSize
 
     // Now process directly from the rest of the input buffer
     while (readBuffer.remaining() >= chunkSize) {
@@ -23,6 +23,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.hash.BloomFilterStrategies.LockFreeBitArray;
 import com.google.common.math.DoubleMath;
+import com.google.common.math.LongMath;
 import com.google.common.primitives.SignedBytes;
 import com.google.common.primitives.UnsignedBytes;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
@@ -127,6 +128,12 @@ public final class BloomFilter<T extends @Nullable Object> implements Predicate<
     this.numHashFunctions = numHashFunctions;
     this.funnel = checkNotNull(funnel);
     this.strategy = checkNotNull(strategy);
+    checkArgument(
+        strategy != BloomFilterStrategies.MURMUR128_BLOCKED_512
+            || bits.data.length() % BloomFilterStrategies.BLOCK_LONGS == 0,
+        "bit array length (%s longs) must be a multiple of the block length (%s longs)",
+        bits.data.length(),
+        BloomFilterStrategies.BLOCK_LONGS);
   }
 
   /**
@@ -182,6 +189,10 @@ public final class BloomFilter<T extends @Nullable Object> implements Predicate<
    * case that too many elements (more than expected) have been put in the {@code BloomFilter},
    * degenerating it.
    *
+   * <p>This estimate assumes that the bits of each element are spread over the whole bit array. A
+   * filter created by {@link #createBlocked} confines them to a single block, so its actual false
+   * positive probability is somewhat higher than this estimate.
+   *
    * @since 14.0 (since 11.0 as expectedFalsePositiveProbability())
    */
   public double expectedFpp() {
@@ -412,6 +423,36 @@ public final class BloomFilter<T extends @Nullable Object> implements Predicate<
     return create(funnel, expectedInsertions, fpp, BloomFilterStrategies.MURMUR128_MITZ_64);
   }
 
+  /**
+   * Creates a cache-friendly {@link BloomFilter} with the expected number of insertions and
+   * expected false positive probability. All bits of an element fall into a single block of 512
+   * bits, the size of a typical CPU cache line, so {@link #mightContain} and {@link #put} cost a
+   * single cache miss instead of one per hash function. This makes them considerably faster on
+   * filters too large for the CPU caches.
+   *
+   * <p>The price is a higher false positive probability than that of a filter created by {@link
+   * #create(Funnel, long, double)}, since elements are not spread evenly across the blocks. For
+   * example, a requested probability of 3% yields about 3.2%, 1% about 1.2%, 0.1% about 0.16% and
+   * 0.01% about 0.03%. Request a lower {@code fpp} if the target must be met.
+   *
+   * <p>Note that overflowing a {@code BloomFilter} with significantly more elements than specified,
+   * will result in its saturation, and a sharp deterioration of its false positive probability.
+   *
+   * <p>The constructed {@code BloomFilter} will be serializable if the provided {@code Funnel<T>}
+   * is. Its serialized form cannot be read by versions of Guava before 32.0.
+   *
+   * @param funnel the funnel of T's that the constructed {@code BloomFilter} will use
+   * @param expectedInsertions the number of expected insertions to the constructed {@code
+   *     BloomFilter}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code BloomFilter}
+   * @since 32.0
+   */
+  public static <T extends @Nullable Object> BloomFilter<T> createBlocked(
+      Funnel<? super T> funnel, long expectedInsertions, double fpp) {
+    return create(funnel, expectedInsertions, fpp, BloomFilterStrategies.MURMUR128_BLOCKED_512);
+  }
+
   @VisibleForTesting
   static <T extends @Nullable Object> BloomFilter<T> create(
       Funnel<? super T> funnel, long expectedInsertions, double fpp, Strategy strategy) {
@@ -431,6 +472,11 @@ public final class BloomFilter<T extends @Nullable Object> implements Predicate<
      * optimalM(1000, 0.0000000000000001) = 76680 which is less than 10kb. Who cares!
      */
     long numBits = optimalNumOfBits(expectedInsertions, fpp);
+    if (strategy == BloomFilterStrategies.MURMUR128_BLOCKED_512) {
+      // the bit array must hold a whole number of blocks
+      long blockBits = (long) BloomFilterStrategies.BLOCK_LONGS * Long.SIZE;
+      numBits = LongMath.divide(numBits, blockBits, RoundingMode.CEILING) * blockBits;
+    }
     int numHashFunctions = optimalNumOfHashFunctions(expectedInsertions, numBits);
     try {
       return new BloomFilter<T>(new LockFreeBitArray(numBits), numHashFunctions, funnel, strategy);
@@ -19,6 +19,9 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.errorprone.annotations.Immutable;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 /**
@@ -74,6 +77,18 @@ final class ChecksumHashFunction extends AbstractHashFunction implements Seriali
       checksum.update(bytes, off, len);
     }
 
+    @Override
+    protected void update(ByteBuffer b) {
+      // Checksum.update(ByteBuffer) only exists as of Java 9, but these two have it in Java 8
+      if (checksum instanceof CRC32) {
+        ((CRC32) checksum).update(b);
+      } else if (checksum instanceof Adler32) {
+        ((Adler32) checksum).update(b);
+      } else {
+        super.update(b);
+      }
+    }
+
     @Override
     public HashCode hash() {
       long value = checksum.getValue();
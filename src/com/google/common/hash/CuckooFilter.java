@@ -0,0 +1,670 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import javax.annotation.CheckForNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A cuckoo filter for instances of {@code T}. Like a {@link BloomFilter}, a cuckoo filter offers an
+ * approximate containment test with one-sided error: if it claims that an element is contained in
+ * it, this might be in error, but if it claims that an element is <i>not</i> contained in it, then
+ * this is definitely true. Unlike a Bloom filter, it also supports {@linkplain #delete deleting}
+ * elements, and for false positive probabilities below about 0.3% it needs fewer bits per element.
+ *
+ * <p>See "Cuckoo Filter: Practically Better Than Bloom" by Bin Fan, David G. Andersen, Michael
+ * Kaminsky and Michael D. Mitzenmacher. Each element is represented by a short fingerprint, stored
+ * in one of two candidate buckets of four fingerprints each. When both are full, a fingerprint is
+ * evicted to its own alternate bucket, and so on. The alternate bucket is computed from the
+ * fingerprint alone, which is what allows relocating and deleting fingerprints without knowing the
+ * elements they came from.
+ *
+ * <p>Unlike a Bloom filter, which merely degrades, a cuckoo filter can become full: once about 95%
+ * of its slots are in use, {@link #put} may fail and return {@code false}. Deleting an element that
+ * was never put may delete the fingerprint of another element, thereby causing false negatives.
+ * Putting the same element several times stores several fingerprints, and it has to be deleted as
+ * many times.
+ *
+ * <p>Cuckoo filters are serializable. They also support a more compact serial representation via
+ * the {@link #writeTo} and {@link #readFrom} methods.
+ *
+ * <p>This class is thread-safe. {@link #mightContain} does not block: it reads the buckets
+ * optimistically and only takes a lock when a concurrent {@link #put} or {@link #delete} moved
+ * fingerprints under it. {@link #put} and {@link #delete} are serialized by an internal lock.
+ *
+ * @param <T> the type of instances that the {@code CuckooFilter} accepts
+ * @since 32.0
+ */
+@Beta
+@ElementTypesAreNonnullByDefault
+public final class CuckooFilter<T extends @Nullable Object> implements Predicate<T>, Serializable {
+  /** Number of fingerprints per bucket. */
+  private static final int BUCKET_SIZE = 4;
+
+  /** Fraction of slots that {@link #create} sizes the filter to use for the expected insertions. */
+  private static final double LOAD_FACTOR = 0.95;
+
+  /** Maximum number of evictions that a single {@link #put} may perform. */
+  private static final int MAX_KICKS = 500;
+
+  private static final int MAX_FINGERPRINT_BITS = 32;
+
+  private final StampedLock lock = new StampedLock();
+
+  /** The fingerprints, {@code fingerprintBits} each, packed bucket by bucket. Zero means empty. */
+  @GuardedBy("lock")
+  private final long[] data;
+
+  private final int numBuckets;
+  private final int fingerprintBits;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<? super T> funnel;
+
+  /** Number of fingerprints stored, including the victim. */
+  @GuardedBy("lock")
+  private long count;
+
+  /**
+   * A fingerprint evicted by a {@link #put} that ran out of kicks, or zero. It remains a member of
+   * the filter, and is moved back into the table by the next {@link #delete}.
+   */
+  @GuardedBy("lock")
+  private int victimFingerprint;
+
+  /** One of the two candidate buckets of {@link #victimFingerprint}. */
+  @GuardedBy("lock")
+  private int victimIndex;
+
+  /** State of the generator choosing which fingerprint to evict. */
+  @GuardedBy("lock")
+  private int kickState = 0x9E3779B9;
+
+  /** Creates a CuckooFilter. */
+  private CuckooFilter(
+      long[] data,
+      int numBuckets,
+      int fingerprintBits,
+      long count,
+      int victimIndex,
+      int victimFingerprint,
+      Funnel<? super T> funnel) {
+    checkArgument(numBuckets > 0, "numBuckets (%s) must be > 0", numBuckets);
+    checkArgument(
+        fingerprintBits > 0 && fingerprintBits <= MAX_FINGERPRINT_BITS,
+        "fingerprintBits (%s) must be in [1, %s]",
+        fingerprintBits,
+        MAX_FINGERPRINT_BITS);
+    checkArgument(
+        data.length == dataLength(numBuckets, fingerprintBits),
+        "data length (%s) does not match %s buckets of %s-bit fingerprints",
+        data.length,
+        numBuckets,
+        fingerprintBits);
+    checkArgument(count >= 0, "count (%s) must be >= 0", count);
+    checkArgument(
+        victimIndex >= 0 && victimIndex < numBuckets,
+        "victimIndex (%s) must be in [0, %s)",
+        victimIndex,
+        numBuckets);
+    checkArgument(
+        (victimFingerprint & 0xFFFFFFFFL) < (1L << fingerprintBits),
+        "victimFingerprint (%s) must fit in %s bits",
+        victimFingerprint & 0xFFFFFFFFL,
+        fingerprintBits);
+    this.data = data;
+    this.numBuckets = numBuckets;
+    this.fingerprintBits = fingerprintBits;
+    this.count = count;
+    this.victimIndex = victimIndex;
+    this.victimFingerprint = victimFingerprint;
+    this.funnel = checkNotNull(funnel);
+  }
+
+  /**
+   * Creates a new {@code CuckooFilter} that's a copy of this instance. The new instance is equal to
+   * this instance but shares no mutable state.
+   */
+  public CuckooFilter<T> copy() {
+    long stamp = lock.readLock();
+    try {
+      return new CuckooFilter<T>(
+          data.clone(),
+          numBuckets,
+          fingerprintBits,
+          count,
+          victimIndex,
+          victimFingerprint,
+          funnel);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this cuckoo filter, {@code
+   * false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(@ParametricNullness T object) {
+    byte[] hash = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+    int fingerprint = fingerprint(hash);
+    int index1 = index(hash);
+    int index2 = alternateIndex(index1, fingerprint);
+
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      boolean result = contains(index1, index2, fingerprint);
+      if (lock.validate(stamp)) {
+        return result;
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return contains(index1, index2, fingerprint);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * @deprecated Provided only to satisfy the {@link Predicate} interface; use {@link #mightContain}
+   *     instead.
+   */
+  @Deprecated
+  @Override
+  public boolean apply(@ParametricNullness T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code CuckooFilter}. If this returns {@code true}, subsequent
+   * invocations of {@link #mightContain(Object)} with the same element will return {@code true},
+   * until it is {@linkplain #delete deleted}.
+   *
+   * @return true if the element was put, false if the filter is full
+   */
+  public boolean put(@ParametricNullness T object) {
+    byte[] hash = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+    int fingerprint = fingerprint(hash);
+    int index = index(hash);
+
+    long stamp = lock.writeLock();
+    try {
+      if (victimFingerprint != 0) {
+        return false;
+      }
+      int alternateIndex = alternateIndex(index, fingerprint);
+      if (insert(index, fingerprint) || insert(alternateIndex, fingerprint)) {
+        count++;
+        return true;
+      }
+
+      if ((nextKick() & 1) != 0) {
+        index = alternateIndex;
+      }
+      for (int kick = 0; kick < MAX_KICKS; kick++) {
+        int slot = nextKick() & (BUCKET_SIZE - 1);
+        int evicted = fingerprintAt(index, slot);
+        setFingerprintAt(index, slot, fingerprint);
+        fingerprint = evicted;
+        index = alternateIndex(index, fingerprint);
+        if (insert(index, fingerprint)) {
+          count++;
+          return true;
+        }
+      }
+      // Our element is in the table, but the last evicted fingerprint did not find room
+      victimIndex = index;
+      victimFingerprint = fingerprint;
+      count++;
+      return true;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Deletes one occurrence of an element from this {@code CuckooFilter}.
+   *
+   * <p><b>Warning:</b> only delete elements that were put in this filter. Deleting any other
+   * element may delete the fingerprint of an element that was, which would then no longer be
+   * reported by {@link #mightContain}.
+   *
+   * @return true if a fingerprint of the element was found and deleted
+   */
+  @CanIgnoreReturnValue
+  public boolean delete(@ParametricNullness T object) {
+    byte[] hash = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+    int fingerprint = fingerprint(hash);
+    int index1 = index(hash);
+    int index2 = alternateIndex(index1, fingerprint);
+
+    long stamp = lock.writeLock();
+    try {
+      if (remove(index1, fingerprint) || remove(index2, fingerprint)) {
+        count--;
+        if (victimFingerprint != 0) {
+          // there is room now, at least in one of the buckets of the victim
+          int victimAlternateIndex = alternateIndex(victimIndex, victimFingerprint);
+          if (insert(victimIndex, victimFingerprint)
+              || insert(victimAlternateIndex, victimFingerprint)) {
+            victimFingerprint = 0;
+          }
+        }
+        return true;
+      }
+      if (victimFingerprint == fingerprint && (victimIndex == index1 || victimIndex == index2)) {
+        victimFingerprint = 0;
+        count--;
+        return true;
+      }
+      return false;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return {@code
+   * true} for an object that has not actually been put in the {@code CuckooFilter}.
+   *
+   * <p>Ideally, this number should be close to the {@code fpp} parameter passed in {@linkplain
+   * #create(Funnel, long, double)}, or smaller.
+   */
+  public double expectedFpp() {
+    // a lookup compares its fingerprint with those of two buckets, of about 2 * count / numBuckets
+    return -Math.expm1(
+        2.0 * approximateElementCount() / numBuckets * Math.log1p(-1.0 / maxFingerprint()));
+  }
+
+  /**
+   * Returns the number of elements in this cuckoo filter: the number of successful {@link #put}
+   * calls, minus the number of successful {@link #delete} calls. It is approximate only if {@link
+   * #delete} was called with elements that were never put.
+   */
+  public long approximateElementCount() {
+    long stamp = lock.readLock();
+    try {
+      return count;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /** Returns the number of fingerprints that this filter has room for. */
+  @VisibleForTesting
+  long capacity() {
+    return (long) numBuckets * BUCKET_SIZE;
+  }
+
+  @Override
+  public boolean equals(@CheckForNull Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof CuckooFilter) {
+      CuckooFilter<?> that = (CuckooFilter<?>) object;
+      return this.numBuckets == that.numBuckets
+          && this.fingerprintBits == that.fingerprintBits
+          && this.funnel.equals(that.funnel)
+          && Arrays.equals(this.snapshot(), that.snapshot());
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(numBuckets, fingerprintBits, funnel) * 31
+        + Arrays.hashCode(snapshot());
+  }
+
+  /**
+   * Returns the stored fingerprints, followed by the victim and its bucket. Two filters with equal
+   * snapshots report the same elements.
+   */
+  private long[] snapshot() {
+    long stamp = lock.readLock();
+    try {
+      long[] snapshot = Arrays.copyOf(data, data.length + 1);
+      if (victimFingerprint != 0) {
+        snapshot[data.length] = ((long) victimIndex << 32) | (victimFingerprint & 0xFFFFFFFFL);
+      }
+      return snapshot;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Creates a {@link CuckooFilter} with the expected number of insertions and expected false
+   * positive probability.
+   *
+   * <p>Fingerprints are {@code ceil(log2(8 / fpp))} bits long, and the filter is sized so that the
+   * expected insertions fill 95% of its slots, that is about {@code (log2(1 / fpp) + 3) / 0.95}
+   * bits per element. A {@link BloomFilter} needs {@code 1.44 * log2(1 / fpp)} bits per element,
+   * which is less for probabilities above about 0.3%, and more below.
+   *
+   * <p>{@link #put} may start failing once more elements than expected have been put.
+   *
+   * <p>The constructed {@code CuckooFilter} will be serializable if the provided {@code Funnel<T>}
+   * is.
+   *
+   * <p>It is recommended that the funnel be implemented as a Java enum. This has the benefit of
+   * ensuring proper serialization and deserialization, which is important since {@link #equals}
+   * also relies on object identity of funnels.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CuckooFilter} will use
+   * @param expectedInsertions the number of expected insertions to the constructed {@code
+   *     CuckooFilter}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code CuckooFilter}
+   */
+  public static <T extends @Nullable Object> CuckooFilter<T> create(
+      Funnel<? super T> funnel, long expectedInsertions, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(
+        expectedInsertions >= 0, "Expected insertions (%s) must be >= 0", expectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+
+    if (expectedInsertions == 0) {
+      expectedInsertions = 1;
+    }
+    int fingerprintBits = optimalFingerprintBits(fpp);
+    long numBuckets = (long) Math.ceil(expectedInsertions / (BUCKET_SIZE * LOAD_FACTOR));
+    long dataLength = dataLength(numBuckets, fingerprintBits);
+    checkArgument(
+        numBuckets <= Integer.MAX_VALUE && dataLength <= Integer.MAX_VALUE,
+        "Could not create CuckooFilter of %s buckets of %s-bit fingerprints",
+        numBuckets,
+        fingerprintBits);
+    return new CuckooFilter<T>(
+        new long[(int) dataLength], (int) numBuckets, fingerprintBits, 0, 0, 0, funnel);
+  }
+
+  /**
+   * Creates a {@link CuckooFilter} with the expected number of insertions and a default expected
+   * false positive probability of 3%.
+   *
+   * <p>{@link #put} may start failing once more elements than expected have been put.
+   *
+   * <p>The constructed {@code CuckooFilter} will be serializable if the provided {@code Funnel<T>}
+   * is.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CuckooFilter} will use
+   * @param expectedInsertions the number of expected insertions to the constructed {@code
+   *     CuckooFilter}; must be positive
+   * @return a {@code CuckooFilter}
+   */
+  public static <T extends @Nullable Object> CuckooFilter<T> create(
+      Funnel<? super T> funnel, long expectedInsertions) {
+    return create(funnel, expectedInsertions, 0.03);
+  }
+
+  /**
+   * Computes the number of bits per fingerprint achieving, at full load, the required false
+   * positive probability. A lookup compares its fingerprint with the {@code 2 * BUCKET_SIZE}
+   * fingerprints of two buckets, so p is about {@code 2 * BUCKET_SIZE / 2^f}.
+   *
+   * @param p false positive rate (must be 0 < p < 1)
+   */
+  @VisibleForTesting
+  static int optimalFingerprintBits(double p) {
+    double bits = Math.ceil(Math.log(2 * BUCKET_SIZE / p) / Math.log(2));
+    return (int) Math.min(bits, MAX_FINGERPRINT_BITS);
+  }
+
+  private static long dataLength(long numBuckets, int fingerprintBits) {
+    return LongMath.divide(
+        numBuckets * BUCKET_SIZE * fingerprintBits, Long.SIZE, RoundingMode.CEILING);
+  }
+
+  private long maxFingerprint() {
+    return (1L << fingerprintBits) - 1;
+  }
+
+  /** Returns the nonzero fingerprint taken from the upper eight bytes of {@code hash}. */
+  private int fingerprint(byte[] hash) {
+    long fingerprint = LittleEndianByteArray.load64(hash, 8) >>> (Long.SIZE - fingerprintBits);
+    return (fingerprint == 0) ? 1 : (int) fingerprint;
+  }
+
+  /** Returns the first candidate bucket, taken from the lower eight bytes of {@code hash}. */
+  private int index(byte[] hash) {
+    return reduce(LittleEndianByteArray.load64(hash, 0) >>> 32);
+  }
+
+  /**
+   * Returns the other candidate bucket of {@code fingerprint}, given one of them. {@code (h - i)
+   * mod numBuckets} maps each bucket to the other for any number of buckets, which spares the
+   * filter from being sized to a power of two, as the {@code xor} of the original paper requires.
+   */
+  private int alternateIndex(int index, int fingerprint) {
+    int alternateIndex = reduce(((fingerprint & 0xFFFFFFFFL) * 0xC6A4A7935BD1E995L) >>> 32) - index;
+    return (alternateIndex < 0) ? alternateIndex + numBuckets : alternateIndex;
+  }
+
+  /** Maps a 32-bit hash uniformly onto [0, numBuckets), without a division. */
+  private int reduce(long hash32) {
+    return (int) ((hash32 * numBuckets) >>> 32);
+  }
+
+  @GuardedBy("lock")
+  private int nextKick() {
+    // xorshift, see "Xorshift RNGs" by George Marsaglia
+    int x = kickState;
+    x ^= x << 13;
+    x ^= x >>> 17;
+    x ^= x << 5;
+    kickState = x;
+    return x;
+  }
+
+  /**
+   * Returns whether either bucket, or the victim, holds {@code fingerprint}. May be called
+   * without the lock, if the result is then validated.
+   */
+  private boolean contains(int index1, int index2, int fingerprint) {
+    for (int slot = 0; slot < BUCKET_SIZE; slot++) {
+      if (fingerprintAt(index1, slot) == fingerprint
+          || fingerprintAt(index2, slot) == fingerprint) {
+        return true;
+      }
+    }
+    return victimFingerprint == fingerprint && (victimIndex == index1 || victimIndex == index2);
+  }
+
+  @GuardedBy("lock")
+  private boolean insert(int index, int fingerprint) {
+    for (int slot = 0; slot < BUCKET_SIZE; slot++) {
+      if (fingerprintAt(index, slot) == 0) {
+        setFingerprintAt(index, slot, fingerprint);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @GuardedBy("lock")
+  private boolean remove(int index, int fingerprint) {
+    for (int slot = 0; slot < BUCKET_SIZE; slot++) {
+      if (fingerprintAt(index, slot) == fingerprint) {
+        setFingerprintAt(index, slot, 0);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int fingerprintAt(int index, int slot) {
+    long bitIndex = ((long) index * BUCKET_SIZE + slot) * fingerprintBits;
+    int longIndex = (int) (bitIndex >>> 6);
+    int shift = (int) bitIndex & 63;
+    long value = data[longIndex] >>> shift;
+    if (shift + fingerprintBits > Long.SIZE) {
+      value |= data[longIndex + 1] << (Long.SIZE - shift);
+    }
+    return (int) (value & maxFingerprint());
+  }
+
+  @GuardedBy("lock")
+  private void setFingerprintAt(int index, int slot, int fingerprint) {
+    long bitIndex = ((long) index * BUCKET_SIZE + slot) * fingerprintBits;
+    int longIndex = (int) (bitIndex >>> 6);
+    int shift = (int) bitIndex & 63;
+    long value = fingerprint & 0xFFFFFFFFL;
+    data[longIndex] = (data[longIndex] & ~(maxFingerprint() << shift)) | (value << shift);
+    if (shift + fingerprintBits > Long.SIZE) {
+      int highShift = Long.SIZE - shift;
+      data[longIndex + 1] =
+          (data[longIndex + 1] & ~(maxFingerprint() >>> highShift)) | (value >>> highShift);
+    }
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T extends @Nullable Object> implements Serializable {
+    final long[] data;
+    final int numBuckets;
+    final int fingerprintBits;
+    final long count;
+    final int victimIndex;
+    final int victimFingerprint;
+    final Funnel<? super T> funnel;
+
+    SerialForm(CuckooFilter<T> cf) {
+      long stamp = cf.lock.readLock();
+      try {
+        this.data = cf.data.clone();
+        this.count = cf.count;
+        this.victimIndex = cf.victimIndex;
+        this.victimFingerprint = cf.victimFingerprint;
+      } finally {
+        cf.lock.unlockRead(stamp);
+      }
+      this.numBuckets = cf.numBuckets;
+      this.fingerprintBits = cf.fingerprintBits;
+      this.funnel = cf.funnel;
+    }
+
+    Object readResolve() {
+      return new CuckooFilter<T>(
+          data, numBuckets, fingerprintBits, count, victimIndex, victimFingerprint, funnel);
+    }
+
+    private static final long serialVersionUID = 1;
+  }
+
+  /**
+   * Writes this {@code CuckooFilter} to an output stream, with a custom format (not Java
+   * serialization).
+   *
+   * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written CuckooFilter.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    // Serial form:
+    // 1 unsigned byte for the number of bits per fingerprint
+    // 1 big endian int, the number of buckets
+    // 1 big endian long, the number of fingerprints stored
+    // 1 big endian int, the bucket of the victim
+    // 1 big endian int, the victim fingerprint, or 0 if there is none
+    // 1 big endian int, the number of longs holding the fingerprints
+    // N big endian longs holding the fingerprints
+    DataOutputStream dout = new DataOutputStream(out);
+    long stamp = lock.readLock();
+    try {
+      dout.writeByte(UnsignedBytes.checkedCast(fingerprintBits)); // note: checked at the c'tor
+      dout.writeInt(numBuckets);
+      dout.writeLong(count);
+      dout.writeInt(victimIndex);
+      dout.writeInt(victimFingerprint);
+      dout.writeInt(data.length);
+      for (long value : data) {
+        dout.writeLong(value);
+      }
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Reads a byte stream, which was written by {@linkplain #writeTo(OutputStream)}, into a {@code
+   * CuckooFilter}.
+   *
+   * <p>The {@code Funnel} to be used is not encoded in the stream, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to populate
+   * the original cuckoo filter!
+   *
+   * @throws IOException if the InputStream throws an {@code IOException}, or if its data does not
+   *     appear to be a CuckooFilter serialized using the {@linkplain #writeTo(OutputStream)}
+   *     method.
+   */
+  public static <T extends @Nullable Object> CuckooFilter<T> readFrom(
+      InputStream in, Funnel<? super T> funnel) throws IOException {
+    checkNotNull(in, "InputStream");
+    checkNotNull(funnel, "Funnel");
+    int fingerprintBits = -1;
+    int numBuckets = -1;
+    int dataLength = -1;
+    try {
+      DataInputStream din = new DataInputStream(in);
+      fingerprintBits = UnsignedBytes.toInt(din.readByte());
+      numBuckets = din.readInt();
+      long count = din.readLong();
+      int victimIndex = din.readInt();
+      int victimFingerprint = din.readInt();
+      dataLength = din.readInt();
+
+      long[] data = new long[dataLength];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = din.readLong();
+      }
+      return new CuckooFilter<T>(
+          data, numBuckets, fingerprintBits, count, victimIndex, victimFingerprint, funnel);
+    } catch (RuntimeException e) {
+      String message =
+          "Unable to deserialize CuckooFilter from InputStream."
+              + " fingerprintBits: "
+              + fingerprintBits
+              + " numBuckets: "
+              + numBuckets
+              + " dataLength: "
+              + dataLength;
+      throw new IOException(message, e);
+    }
+  }
+}
@@ -53,6 +53,32 @@ final class FarmHashFingerprint64 extends AbstractNonStreamingHashFunction {
     return HashCode.fromLong(fingerprint(input, off, len));
   }
 
+  @Override
+  public HashCode hashInt(int input) {
+    return HashCode.fromLong(fingerprintInt(input));
+  }
+
+  @Override
+  public HashCode hashLong(long input) {
+    return HashCode.fromLong(fingerprintLong(input));
+  }
+
+  @Override
+  public void hashInts(int[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    for (int i = 0; i < input.length; i++) {
+      output[i] = fingerprintInt(input[i]);
+    }
+  }
+
+  @Override
+  public void hashLongs(long[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    for (int i = 0; i < input.length; i++) {
+      output[i] = fingerprintLong(input[i]);
+    }
+  }
+
   @Override
   public int bits() {
     return 64;
@@ -80,6 +106,22 @@ final class FarmHashFingerprint64 extends AbstractNonStreamingHashFunction {
     }
   }
 
+  /** Returns the fingerprint of the 4 little-endian bytes of {@code value}. */
+  static long fingerprintInt(int value) {
+    long mul = K2 + 4 * 2;
+    long a = value & 0xFFFFFFFFL;
+    return hashLength16(4 + (a << 3), a, mul);
+  }
+
+  /** Returns the fingerprint of the 8 little-endian bytes of {@code value}. */
+  static long fingerprintLong(long value) {
+    long mul = K2 + 8 * 2;
+    long a = value + K2;
+    long c = rotateRight(value, 37) * mul + a;
+    long d = (rotateRight(a, 25) + value) * mul;
+    return hashLength16(c, d, mul);
+  }
+
   private static long shiftMix(long val) {
     return val ^ (val >>> 47);
   }
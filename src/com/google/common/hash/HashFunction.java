@@ -155,6 +155,40 @@ public interface HashFunction {
    */
   HashCode hashLong(long input);
 
+  /**
+   * Hashes each element of {@code input} as if by {@link #hashInt}, storing {@code
+   * hashInt(input[i]).padToLong()} in {@code output[i]}. The hash functions returned by {@link
+   * Hashing#murmur3_32_fixed()}, {@link Hashing#murmur3_128()} and {@link
+   * Hashing#farmHashFingerprint64()} do so without allocating any {@link HashCode}, which makes
+   * hashing large arrays of identifiers considerably cheaper.
+   *
+   * @throws IllegalArgumentException if {@code output} is shorter than {@code input}
+   * @since 32.0
+   */
+  default void hashInts(int[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    for (int i = 0; i < input.length; i++) {
+      output[i] = hashInt(input[i]).padToLong();
+    }
+  }
+
+  /**
+   * Hashes each element of {@code input} as if by {@link #hashLong}, storing {@code
+   * hashLong(input[i]).padToLong()} in {@code output[i]}. The hash functions returned by {@link
+   * Hashing#murmur3_32_fixed()}, {@link Hashing#murmur3_128()} and {@link
+   * Hashing#farmHashFingerprint64()} do so without allocating any {@link HashCode}, which makes
+   * hashing large arrays of identifiers considerably cheaper.
+   *
+   * @throws IllegalArgumentException if {@code output} is shorter than {@code input}
+   * @since 32.0
+   */
+  default void hashLongs(long[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    for (int i = 0; i < input.length; i++) {
+      output[i] = hashLong(input[i]).padToLong();
+    }
+  }
+
   /**
    * Shortcut for {@code newHasher().putBytes(input).hash()}. The implementation <i>might</i>
    * perform better than its longhand equivalent, but should not perform worse.
@@ -470,6 +470,85 @@ public final class Hashing {
     return FarmHashFingerprint64.FARMHASH_FINGERPRINT_64;
   }
 
+  /**
+   * Returns a hash function implementing the 64-bit <a href="https://github.com/Cyan4973/xxHash">
+   * xxHash algorithm</a> (XXH64), using a seed value of zero.
+   *
+   * <p>xxHash is not cryptographically secure, but it is considerably faster than {@link
+   * #murmur3_128()} on long inputs and hashes streamed input as fast as a single array. {@link
+   * HashCode#asLong} returns the same value that XXH64() would for the same input.
+   *
+   * @since 32.0
+   */
+  public static HashFunction xxHash64() {
+    return XxHash64HashFunction.XX_HASH_64;
+  }
+
+  /**
+   * Returns a hash function implementing the 64-bit <a href="https://github.com/Cyan4973/xxHash">
+   * xxHash algorithm</a> (XXH64), using the given seed value.
+   *
+   * <p>{@link HashCode#asLong} returns the same value that XXH64() would for the same input and
+   * seed.
+   *
+   * @since 32.0
+   */
+  public static HashFunction xxHash64(long seed) {
+    return new XxHash64HashFunction(seed);
+  }
+
+  /**
+   * Returns a hash function implementing the 64-bit variant of <a
+   * href="https://github.com/Cyan4973/xxHash">XXH3</a>, using a seed value of zero.
+   *
+   * <p>XXH3 is not cryptographically secure. It is the fastest of the non-cryptographic hash
+   * functions provided here on both short and long inputs. {@link HashCode#asLong} returns the same
+   * value that XXH3_64bits() would for the same input.
+   *
+   * @since 32.0
+   */
+  public static HashFunction xxh3_64() {
+    return Xxh3HashFunction.XXH3_64;
+  }
+
+  /**
+   * Returns a hash function implementing the 64-bit variant of <a
+   * href="https://github.com/Cyan4973/xxHash">XXH3</a>, using the given seed value.
+   *
+   * <p>{@link HashCode#asLong} returns the same value that XXH3_64bits_withSeed() would for the
+   * same input and seed.
+   *
+   * @since 32.0
+   */
+  public static HashFunction xxh3_64(long seed) {
+    return new Xxh3HashFunction(64, seed);
+  }
+
+  /**
+   * Returns a hash function implementing the 128-bit variant of <a
+   * href="https://github.com/Cyan4973/xxHash">XXH3</a> (XXH128), using a seed value of zero.
+   *
+   * <p>The hash codes are encoded by {@link HashCode#asBytes} as the low 64 bits of the XXH128()
+   * result followed by its high 64 bits, each in little-endian order, so that {@link
+   * HashCode#asLong} returns the low 64 bits.
+   *
+   * @since 32.0
+   */
+  public static HashFunction xxh3_128() {
+    return Xxh3HashFunction.XXH3_128;
+  }
+
+  /**
+   * Returns a hash function implementing the 128-bit variant of <a
+   * href="https://github.com/Cyan4973/xxHash">XXH3</a> (XXH128), using the given seed value. The
+   * hash codes are encoded as described for {@link #xxh3_128()}.
+   *
+   * @since 32.0
+   */
+  public static HashFunction xxh3_128(long seed) {
+    return new Xxh3HashFunction(128, seed);
+  }
+
   /**
    * Assigns to {@code hashCode} a "bucket" in the range {@code [0, buckets)}, in a uniform manner
    * that minimizes the need for remapping as {@code buckets} grows. That is, {@code
@@ -600,6 +679,15 @@ public final class Hashing {
     return HashCode.fromBytesNoCopy(resultBytes);
   }
 
+  /** Checks that an output array of a bulk hashing method is long enough for its input array. */
+  static void checkBulkOutput(int inputLength, int outputLength) {
+    checkArgument(
+        outputLength >= inputLength,
+        "output length (%s) is less than input length (%s)",
+        outputLength,
+        inputLength);
+  }
+
   /** Checks that the passed argument is positive, and ceils it to a multiple of 32. */
   static int checkPositiveAndMakeMultipleOf32(int bits) {
     checkArgument(bits > 0, "Number of bits must be positive");
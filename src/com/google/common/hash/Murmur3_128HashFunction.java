@@ -84,6 +84,45 @@ final class Murmur3_128HashFunction extends AbstractHashFunction implements Seri
     return getClass().hashCode() ^ seed;
   }
 
+  @Override
+  public void hashInts(int[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    long seed = this.seed;
+    for (int i = 0; i < input.length; i++) {
+      output[i] = hashShort(seed, input[i] & 0xFFFFFFFFL, 4);
+    }
+  }
+
+  @Override
+  public void hashLongs(long[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    long seed = this.seed;
+    for (int i = 0; i < input.length; i++) {
+      output[i] = hashShort(seed, input[i], 8);
+    }
+  }
+
+  /**
+   * Returns the first 64 bits of the hash of an input of at most 8 bytes, {@code k1} holding them
+   * in little-endian order. This is what {@link Murmur3_128Hasher} computes for such an input,
+   * without a hasher or a buffer.
+   */
+  private static long hashShort(long seed, long k1, int length) {
+    long h1 = seed ^ Murmur3_128Hasher.mixK1(k1);
+    long h2 = seed;
+
+    h1 ^= length;
+    h2 ^= length;
+
+    h1 += h2;
+    h2 += h1;
+
+    h1 = Murmur3_128Hasher.fmix64(h1);
+    h2 = Murmur3_128Hasher.fmix64(h2);
+
+    return h1 + h2;
+  }
+
   private static final class Murmur3_128Hasher extends AbstractStreamingHasher {
     private static final int CHUNK_SIZE = 16;
     private static final long C1 = 0x87c37b91114253d5L;
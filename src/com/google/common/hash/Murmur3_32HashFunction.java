@@ -28,6 +28,7 @@ package com.google.common.hash;
 import static com.google.common.base.Preconditions.checkPositionIndexes;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.primitives.UnsignedBytes.toInt;
+import static com.google.common.primitives.UnsignedInts.toLong;
 
 import com.google.common.base.Charsets;
 import com.google.common.primitives.Chars;
@@ -127,6 +128,57 @@ final class Murmur3_32HashFunction extends AbstractHashFunction implements Seria
     return fmix(h1, Longs.BYTES);
   }
 
+  @Override
+  public void hashInts(int[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    int seed = this.seed;
+    int i = 0;
+    // four independent hashes per iteration, so that their multiplications overlap
+    for (int limit = input.length - 3; i < limit; i += 4) {
+      int h0 = mixH1(seed, mixK1(input[i]));
+      int h1 = mixH1(seed, mixK1(input[i + 1]));
+      int h2 = mixH1(seed, mixK1(input[i + 2]));
+      int h3 = mixH1(seed, mixK1(input[i + 3]));
+      output[i] = toLong(fmixInt(h0, Ints.BYTES));
+      output[i + 1] = toLong(fmixInt(h1, Ints.BYTES));
+      output[i + 2] = toLong(fmixInt(h2, Ints.BYTES));
+      output[i + 3] = toLong(fmixInt(h3, Ints.BYTES));
+    }
+    for (; i < input.length; i++) {
+      output[i] = toLong(fmixInt(mixH1(seed, mixK1(input[i])), Ints.BYTES));
+    }
+  }
+
+  @Override
+  public void hashLongs(long[] input, long[] output) {
+    Hashing.checkBulkOutput(input.length, output.length);
+    int seed = this.seed;
+    int i = 0;
+    for (int limit = input.length - 3; i < limit; i += 4) {
+      long k0 = input[i];
+      long k1 = input[i + 1];
+      long k2 = input[i + 2];
+      long k3 = input[i + 3];
+      int h0 = mixH1(seed, mixK1((int) k0));
+      int h1 = mixH1(seed, mixK1((int) k1));
+      int h2 = mixH1(seed, mixK1((int) k2));
+      int h3 = mixH1(seed, mixK1((int) k3));
+      h0 = mixH1(h0, mixK1((int) (k0 >>> 32)));
+      h1 = mixH1(h1, mixK1((int) (k1 >>> 32)));
+      h2 = mixH1(h2, mixK1((int) (k2 >>> 32)));
+      h3 = mixH1(h3, mixK1((int) (k3 >>> 32)));
+      output[i] = toLong(fmixInt(h0, Longs.BYTES));
+      output[i + 1] = toLong(fmixInt(h1, Longs.BYTES));
+      output[i + 2] = toLong(fmixInt(h2, Longs.BYTES));
+      output[i + 3] = toLong(fmixInt(h3, Longs.BYTES));
+    }
+    for (; i < input.length; i++) {
+      long k = input[i];
+      int h = mixH1(mixH1(seed, mixK1((int) k)), mixK1((int) (k >>> 32)));
+      output[i] = toLong(fmixInt(h, Longs.BYTES));
+    }
+  }
+
   @Override
   public HashCode hashUnencodedChars(CharSequence input) {
     int h1 = seed;
@@ -258,13 +310,17 @@ final class Murmur3_32HashFunction extends AbstractHashFunction implements Seria
 
   // Finalization mix - force all bits of a hash block to avalanche
   private static HashCode fmix(int h1, int length) {
+    return HashCode.fromInt(fmixInt(h1, length));
+  }
+
+  private static int fmixInt(int h1, int length) {
     h1 ^= length;
     h1 ^= h1 >>> 16;
     h1 *= 0x85ebca6b;
     h1 ^= h1 >>> 13;
     h1 *= 0xc2b2ae35;
     h1 ^= h1 >>> 16;
-    return HashCode.fromInt(h1);
+    return h1;
   }
 
   @CanIgnoreReturnValue
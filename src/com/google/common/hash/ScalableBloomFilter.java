@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.math.LongMath;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.CheckForNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A Bloom filter that grows with the number of elements put in it, so that it needs no {@code
+ * expectedInsertions} up front. A plain {@link BloomFilter} that receives more elements than
+ * expected degrades sharply, and one that receives far fewer wastes its memory.
+ *
+ * <p>See "Scalable Bloom Filters" by Paulo Sergio Almeida, Carlos Baquero, Nuno Preguica and David
+ * Hutchison. The filter is a chain of {@link BloomFilter} stages. Elements are put in the newest
+ * stage only; once it holds as many elements as it was created for, a stage twice as large is
+ * added, with a false positive probability 0.8 times as large. Since these probabilities form a
+ * geometric series, the false positive probability targeted for the whole filter stays below the
+ * requested one however much it grows. The actual rate can exceed it somewhat: a {@link
+ * BloomFilter} of a few hundred elements only approximates its target, and stages are overfilled by
+ * concurrent puts while the next stage is added (see below). {@link #mightContain} queries every
+ * stage, that is about {@code log2(n / initialExpectedInsertions)} of them.
+ *
+ * <p>Scalable Bloom filters are serializable. They also support a more compact serial
+ * representation via the {@link #writeTo} and {@link #readFrom} methods, which store the stages in
+ * the format of {@link BloomFilter#writeTo}.
+ *
+ * <p>Like {@link BloomFilter}, this class is thread-safe and lock-free: the stages are themselves
+ * lock-free, and a new stage is published with a compare-and-swap. While one thread allocates the
+ * new stage, concurrent {@link #put} calls still go to the full one, which may thus end up holding
+ * slightly more elements than it was created for.
+ *
+ * @param <T> the type of instances that the {@code ScalableBloomFilter} accepts
+ * @since 32.0
+ */
+@Beta
+@ElementTypesAreNonnullByDefault
+public final class ScalableBloomFilter<T extends @Nullable Object>
+    implements Predicate<T>, Serializable {
+  /** Factor by which the expected insertions grow from one stage to the next. */
+  private static final int GROWTH_FACTOR = 2;
+
+  /** Factor by which the false positive probability shrinks from one stage to the next. */
+  private static final double TIGHTENING_RATIO = 0.8;
+
+  /** Expected insertions of the first stage, if none are specified. */
+  private static final long DEFAULT_INITIAL_EXPECTED_INSERTIONS = 1024;
+
+  /** A stage of the filter: a Bloom filter, and how many elements were put in it. */
+  private static final class Stage<T extends @Nullable Object> {
+    final BloomFilter<T> filter;
+    final long expectedInsertions;
+    final AtomicLong insertions;
+
+    /** Set by the one thread that adds the next stage. */
+    final AtomicBoolean full = new AtomicBoolean();
+
+    Stage(BloomFilter<T> filter, long expectedInsertions, long insertions) {
+      this.filter = filter;
+      this.expectedInsertions = expectedInsertions;
+      this.insertions = new AtomicLong(insertions);
+    }
+  }
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<? super T> funnel;
+
+  /** Expected insertions of the first stage. */
+  private final long initialExpectedInsertions;
+
+  /** The false positive probability of the whole filter. */
+  private final double fpp;
+
+  /** The stages, oldest first. Never empty. */
+  private final AtomicReference<ImmutableList<Stage<T>>> stages;
+
+  /** Creates a ScalableBloomFilter. */
+  private ScalableBloomFilter(
+      Funnel<? super T> funnel,
+      long initialExpectedInsertions,
+      double fpp,
+      ImmutableList<Stage<T>> stages) {
+    this.funnel = checkNotNull(funnel);
+    this.initialExpectedInsertions = initialExpectedInsertions;
+    this.fpp = fpp;
+    this.stages = new AtomicReference<>(stages);
+  }
+
+  /**
+   * Creates a new {@code ScalableBloomFilter} that's a copy of this instance. The new instance is
+   * equal to this instance but shares no mutable state.
+   */
+  public ScalableBloomFilter<T> copy() {
+    ImmutableList.Builder<Stage<T>> copies = ImmutableList.builder();
+    for (Stage<T> stage : stages.get()) {
+      copies.add(
+          new Stage<T>(stage.filter.copy(), stage.expectedInsertions, stage.insertions.get()));
+    }
+    return new ScalableBloomFilter<T>(funnel, initialExpectedInsertions, fpp, copies.build());
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this Bloom filter, {@code
+   * false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(@ParametricNullness T object) {
+    List<Stage<T>> stages = this.stages.get();
+    // the newest stage holds most of the elements
+    for (int i = stages.size() - 1; i >= 0; i--) {
+      if (stages.get(i).filter.mightContain(object)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @deprecated Provided only to satisfy the {@link Predicate} interface; use {@link #mightContain}
+   *     instead.
+   */
+  @Deprecated
+  @Override
+  public boolean apply(@ParametricNullness T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code ScalableBloomFilter}. Ensures that subsequent invocations of
+   * {@link #mightContain(Object)} with the same element will always return {@code true}.
+   *
+   * @return true if the element was put in the newest stage. If so, this is <i>definitely</i> the
+   *     first time {@code object} has been added to the filter. If not, this <i>might</i> be the
+   *     first time {@code object} has been added to the filter. Like {@link BloomFilter#put}, this
+   *     is the <i>opposite</i> of what {@code mightContain(t)} would have returned.
+   */
+  @CanIgnoreReturnValue
+  public boolean put(@ParametricNullness T object) {
+    if (mightContain(object)) {
+      return false;
+    }
+    ImmutableList<Stage<T>> stages = this.stages.get();
+    Stage<T> stage = stages.get(stages.size() - 1);
+    if (stage.insertions.get() >= stage.expectedInsertions
+        && stage.full.compareAndSet(false, true)) {
+      addStage(stages, stage);
+      stages = this.stages.get();
+      stage = stages.get(stages.size() - 1);
+    }
+    // if another thread is adding the next stage, put in the full one rather than wait
+    if (!stage.filter.put(object)) {
+      return false;
+    }
+    stage.insertions.incrementAndGet();
+    return true;
+  }
+
+  /** Appends a new stage to {@code stages}, whose newest stage {@code full} is full. */
+  private void addStage(ImmutableList<Stage<T>> stages, Stage<T> full) {
+    boolean added = false;
+    try {
+      Stage<T> stage = newStage(funnel, initialExpectedInsertions, fpp, stages.size());
+      while (stages.get(stages.size() - 1) == full) {
+        ImmutableList<Stage<T>> newStages =
+            ImmutableList.<Stage<T>>builder().addAll(stages).add(stage).build();
+        if (this.stages.compareAndSet(stages, newStages)) {
+          break;
+        }
+        stages = this.stages.get();
+      }
+      added = true;
+    } finally {
+      if (!added) {
+        // e.g. OutOfMemoryError: let a later put try again
+        full.full.set(false);
+      }
+    }
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return {@code
+   * true} for an object that has not actually been put in the {@code ScalableBloomFilter}. It is
+   * usually below the {@code fpp} parameter passed in {@linkplain #create(Funnel, long, double)},
+   * but may exceed it if concurrent puts overfilled stages, and it shares the approximations of
+   * {@link BloomFilter#expectedFpp}.
+   */
+  public double expectedFpp() {
+    double noFalsePositive = 1.0;
+    for (Stage<T> stage : stages.get()) {
+      noFalsePositive *= 1.0 - stage.filter.expectedFpp();
+    }
+    return 1.0 - noFalsePositive;
+  }
+
+  /**
+   * Returns an estimate for the total number of distinct elements that have been added to this
+   * Bloom filter: the sum of {@link BloomFilter#approximateElementCount} over its stages.
+   */
+  public long approximateElementCount() {
+    long count = 0;
+    for (Stage<T> stage : stages.get()) {
+      count += stage.filter.approximateElementCount();
+    }
+    return count;
+  }
+
+  /** Returns the number of stages. */
+  @VisibleForTesting
+  int stageCount() {
+    return stages.get().size();
+  }
+
+  @Override
+  public boolean equals(@CheckForNull Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof ScalableBloomFilter) {
+      ScalableBloomFilter<?> that = (ScalableBloomFilter<?>) object;
+      return this.initialExpectedInsertions == that.initialExpectedInsertions
+          && this.fpp == that.fpp
+          && this.funnel.equals(that.funnel)
+          && this.filters().equals(that.filters());
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(initialExpectedInsertions, fpp, funnel, filters());
+  }
+
+  private ImmutableList<BloomFilter<T>> filters() {
+    ImmutableList.Builder<BloomFilter<T>> filters = ImmutableList.builder();
+    for (Stage<T> stage : stages.get()) {
+      filters.add(stage.filter);
+    }
+    return filters.build();
+  }
+
+  /**
+   * Creates a {@link ScalableBloomFilter} with the expected false positive probability. The first
+   * stage expects 1024 insertions.
+   *
+   * <p>The constructed {@code ScalableBloomFilter} will be serializable if the provided {@code
+   * Funnel<T>} is.
+   *
+   * <p>It is recommended that the funnel be implemented as a Java enum. This has the benefit of
+   * ensuring proper serialization and deserialization, which is important since {@link #equals}
+   * also relies on object identity of funnels.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ScalableBloomFilter} will use
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code ScalableBloomFilter}
+   */
+  public static <T extends @Nullable Object> ScalableBloomFilter<T> create(
+      Funnel<? super T> funnel, double fpp) {
+    return create(funnel, DEFAULT_INITIAL_EXPECTED_INSERTIONS, fpp);
+  }
+
+  /**
+   * Creates a {@link ScalableBloomFilter} with the expected number of insertions of its first
+   * stage and the expected false positive probability.
+   *
+   * <p>The first stage uses about {@code 1.44 * log2(5 / fpp)} bits per element, a little more
+   * than a {@link BloomFilter} created for {@code fpp}, and each following stage about 0.46 bits
+   * per element more than the one before. Choosing {@code initialExpectedInsertions} close to the
+   * actual number of insertions thus saves memory and lookups, but underestimating it is harmless.
+   *
+   * <p>The constructed {@code ScalableBloomFilter} will be serializable if the provided {@code
+   * Funnel<T>} is.
+   *
+   * <p>It is recommended that the funnel be implemented as a Java enum. This has the benefit of
+   * ensuring proper serialization and deserialization, which is important since {@link #equals}
+   * also relies on object identity of funnels.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ScalableBloomFilter} will use
+   * @param initialExpectedInsertions the number of expected insertions to the first stage of the
+   *     constructed {@code ScalableBloomFilter}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code ScalableBloomFilter}
+   */
+  public static <T extends @Nullable Object> ScalableBloomFilter<T> create(
+      Funnel<? super T> funnel, long initialExpectedInsertions, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(
+        initialExpectedInsertions > 0,
+        "Initial expected insertions (%s) must be > 0",
+        initialExpectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+    return new ScalableBloomFilter<T>(
+        funnel,
+        initialExpectedInsertions,
+        fpp,
+        ImmutableList.of(newStage(funnel, initialExpectedInsertions, fpp, 0)));
+  }
+
+  /** Creates the empty stage at {@code index}. */
+  private static <T extends @Nullable Object> Stage<T> newStage(
+      Funnel<? super T> funnel, long initialExpectedInsertions, double fpp, int index) {
+    long expectedInsertions = expectedInsertions(initialExpectedInsertions, index);
+    return new Stage<T>(
+        BloomFilter.create(funnel, expectedInsertions, stageFpp(fpp, index)),
+        expectedInsertions,
+        0);
+  }
+
+  /** Returns the expected insertions of the stage at {@code index}. */
+  private static long expectedInsertions(long initialExpectedInsertions, int index) {
+    return LongMath.saturatedMultiply(
+        initialExpectedInsertions, LongMath.saturatedPow(GROWTH_FACTOR, index));
+  }
+
+  /**
+   * Returns the false positive probability of the stage at {@code index}. These form a geometric
+   * series adding up to {@code fpp}.
+   */
+  @VisibleForTesting
+  static double stageFpp(double fpp, int index) {
+    return fpp * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, index);
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T extends @Nullable Object> implements Serializable {
+    final Funnel<? super T> funnel;
+    final long initialExpectedInsertions;
+    final double fpp;
+    final BloomFilter<T>[] filters;
+    final long[] insertions;
+
+    @SuppressWarnings("unchecked") // generic array creation
+    SerialForm(ScalableBloomFilter<T> sbf) {
+      List<Stage<T>> stages = sbf.stages.get();
+      this.funnel = sbf.funnel;
+      this.initialExpectedInsertions = sbf.initialExpectedInsertions;
+      this.fpp = sbf.fpp;
+      this.filters = (BloomFilter<T>[]) new BloomFilter<?>[stages.size()];
+      this.insertions = new long[stages.size()];
+      for (int i = 0; i < stages.size(); i++) {
+        filters[i] = stages.get(i).filter;
+        insertions[i] = stages.get(i).insertions.get();
+      }
+    }
+
+    Object readResolve() {
+      ImmutableList.Builder<Stage<T>> stages = ImmutableList.builder();
+      for (int i = 0; i < filters.length; i++) {
+        stages.add(
+            new Stage<T>(
+                filters[i], expectedInsertions(initialExpectedInsertions, i), insertions[i]));
+      }
+      return new ScalableBloomFilter<T>(funnel, initialExpectedInsertions, fpp, stages.build());
+    }
+
+    private static final long serialVersionUID = 1;
+  }
+
+  /**
+   * Writes this {@code ScalableBloomFilter} to an output stream, with a custom format (not Java
+   * serialization).
+   *
+   * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written
+   * ScalableBloomFilter.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    // Serial form:
+    // 1 big endian long, the expected insertions of the first stage
+    // 1 big endian double, the false positive probability
+    // 1 big endian int, the number of stages
+    // for each stage, oldest first:
+    //   1 big endian long, the number of elements put in the stage
+    //   the stage, in the serial form of BloomFilter.writeTo
+    List<Stage<T>> stages = this.stages.get();
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeLong(initialExpectedInsertions);
+    dout.writeDouble(fpp);
+    dout.writeInt(stages.size());
+    for (Stage<T> stage : stages) {
+      dout.writeLong(stage.insertions.get());
+      stage.filter.writeTo(dout);
+    }
+  }
+
+  /**
+   * Reads a byte stream, which was written by {@linkplain #writeTo(OutputStream)}, into a {@code
+   * ScalableBloomFilter}.
+   *
+   * <p>The {@code Funnel} to be used is not encoded in the stream, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to populate
+   * the original Bloom filter!
+   *
+   * @throws IOException if the InputStream throws an {@code IOException}, or if its data does not
+   *     appear to be a ScalableBloomFilter serialized using the {@linkplain
+   *     #writeTo(OutputStream)} method.
+   */
+  public static <T extends @Nullable Object> ScalableBloomFilter<T> readFrom(
+      InputStream in, Funnel<? super T> funnel) throws IOException {
+    checkNotNull(in, "InputStream");
+    checkNotNull(funnel, "Funnel");
+    long initialExpectedInsertions = -1;
+    double fpp = -1;
+    int stageCount = -1;
+    try {
+      DataInputStream din = new DataInputStream(in);
+      initialExpectedInsertions = din.readLong();
+      fpp = din.readDouble();
+      stageCount = din.readInt();
+      checkArgument(
+          initialExpectedInsertions > 0 && fpp > 0.0 && fpp < 1.0 && stageCount > 0,
+          "invalid header");
+
+      ImmutableList.Builder<Stage<T>> stages = ImmutableList.builder();
+      for (int i = 0; i < stageCount; i++) {
+        long insertions = din.readLong();
+        BloomFilter<T> filter = BloomFilter.readFrom(din, funnel);
+        stages.add(
+            new Stage<T>(filter, expectedInsertions(initialExpectedInsertions, i), insertions));
+      }
+      return new ScalableBloomFilter<T>(funnel, initialExpectedInsertions, fpp, stages.build());
+    } catch (RuntimeException e) {
+      String message =
+          "Unable to deserialize ScalableBloomFilter from InputStream."
+              + " initialExpectedInsertions: "
+              + initialExpectedInsertions
+              + " fpp: "
+              + fpp
+              + " stageCount: "
+              + stageCount;
+      throw new IOException(message, e);
+    }
+  }
+}
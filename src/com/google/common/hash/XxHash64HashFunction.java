@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/*
+ * xxHash was designed by Yann Collet and is released under the BSD 2-Clause license. Source:
+ * https://github.com/Cyan4973/xxHash/blob/dev/xxhash.h
+ * (Modified to adapt to Guava coding conventions and to use the HashFunction interface)
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.hash.LittleEndianByteArray.load32;
+import static com.google.common.hash.LittleEndianByteArray.load64;
+
+import com.google.errorprone.annotations.Immutable;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import javax.annotation.CheckForNull;
+
+/**
+ * {@link HashFunction} implementation of XXH64, the 64-bit variant of xxHash.
+ *
+ * @author Yann Collet
+ */
+@Immutable
+@ElementTypesAreNonnullByDefault
+final class XxHash64HashFunction extends AbstractHashFunction implements Serializable {
+  static final HashFunction XX_HASH_64 = new XxHash64HashFunction(0);
+
+  private static final int CHUNK_SIZE = 32;
+
+  private static final long P1 = 0x9E3779B185EBCA87L;
+  private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long P3 = 0x165667B19E3779F9L;
+  private static final long P4 = 0x85EBCA77C2B2AE63L;
+  private static final long P5 = 0x27D4EB2F165667C5L;
+
+  private final long seed;
+
+  XxHash64HashFunction(long seed) {
+    this.seed = seed;
+  }
+
+  @Override
+  public int bits() {
+    return 64;
+  }
+
+  @Override
+  public Hasher newHasher() {
+    return new XxHash64Hasher(seed);
+  }
+
+  @Override
+  public HashCode hashInt(int input) {
+    long h = seed + P5 + 4;
+    h = mixTail4(h, input & 0xFFFFFFFFL);
+    return HashCode.fromLong(avalanche(h));
+  }
+
+  @Override
+  public HashCode hashLong(long input) {
+    long h = seed + P5 + 8;
+    h = mixTail8(h, input);
+    return HashCode.fromLong(avalanche(h));
+  }
+
+  @Override
+  public HashCode hashBytes(byte[] input, int off, int len) {
+    checkPositionIndexes(off, off + len, input.length);
+    return HashCode.fromLong(hash(input, off, len, seed));
+  }
+
+  @Override
+  public String toString() {
+    return "Hashing.xxHash64(" + seed + ")";
+  }
+
+  @Override
+  public boolean equals(@CheckForNull Object object) {
+    if (object instanceof XxHash64HashFunction) {
+      XxHash64HashFunction other = (XxHash64HashFunction) object;
+      return seed == other.seed;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (getClass().hashCode() ^ seed ^ (seed >>> 32));
+  }
+
+  /** Returns the XXH64 hash of {@code length} bytes of {@code input} from {@code offset}. */
+  static long hash(byte[] input, int offset, int length, long seed) {
+    int end = offset + length;
+    long h;
+    if (length >= CHUNK_SIZE) {
+      long v1 = seed + P1 + P2;
+      long v2 = seed + P2;
+      long v3 = seed;
+      long v4 = seed - P1;
+      int limit = end - CHUNK_SIZE;
+      do {
+        v1 = round(v1, load64(input, offset));
+        v2 = round(v2, load64(input, offset + 8));
+        v3 = round(v3, load64(input, offset + 16));
+        v4 = round(v4, load64(input, offset + 24));
+        offset += CHUNK_SIZE;
+      } while (offset <= limit);
+      h = converge(v1, v2, v3, v4);
+    } else {
+      h = seed + P5;
+    }
+    h += length;
+
+    for (; offset + 8 <= end; offset += 8) {
+      h = mixTail8(h, load64(input, offset));
+    }
+    if (offset + 4 <= end) {
+      h = mixTail4(h, load32(input, offset) & 0xFFFFFFFFL);
+      offset += 4;
+    }
+    for (; offset < end; offset++) {
+      h = mixTail1(h, input[offset]);
+    }
+    return avalanche(h);
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * P2;
+    acc = Long.rotateLeft(acc, 31);
+    acc *= P1;
+    return acc;
+  }
+
+  private static long mergeRound(long acc, long value) {
+    acc ^= round(0, value);
+    return acc * P1 + P4;
+  }
+
+  private static long converge(long v1, long v2, long v3, long v4) {
+    long h =
+        Long.rotateLeft(v1, 1)
+            + Long.rotateLeft(v2, 7)
+            + Long.rotateLeft(v3, 12)
+            + Long.rotateLeft(v4, 18);
+    h = mergeRound(h, v1);
+    h = mergeRound(h, v2);
+    h = mergeRound(h, v3);
+    h = mergeRound(h, v4);
+    return h;
+  }
+
+  private static long mixTail8(long h, long k) {
+    h ^= round(0, k);
+    return Long.rotateLeft(h, 27) * P1 + P4;
+  }
+
+  private static long mixTail4(long h, long k) {
+    h ^= k * P1;
+    return Long.rotateLeft(h, 23) * P2 + P3;
+  }
+
+  private static long mixTail1(long h, byte b) {
+    h ^= (b & 0xFFL) * P5;
+    return Long.rotateLeft(h, 11) * P1;
+  }
+
+  // Finalization mix - force all bits of a hash block to avalanche
+  private static long avalanche(long h) {
+    h ^= h >>> 33;
+    h *= P2;
+    h ^= h >>> 29;
+    h *= P3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  private static final class XxHash64Hasher extends AbstractStreamingHasher {
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long length;
+    private final byte[] tail = new byte[CHUNK_SIZE];
+    private int tailLength;
+
+    XxHash64Hasher(long seed) {
+      super(CHUNK_SIZE);
+      this.seed = seed;
+      this.v1 = seed + P1 + P2;
+      this.v2 = seed + P2;
+      this.v3 = seed;
+      this.v4 = seed - P1;
+    }
+
+    @Override
+    protected void process(ByteBuffer bb) {
+      v1 = round(v1, bb.getLong());
+      v2 = round(v2, bb.getLong());
+      v3 = round(v3, bb.getLong());
+      v4 = round(v4, bb.getLong());
+      length += CHUNK_SIZE;
+    }
+
+    @Override
+    protected void processRemaining(ByteBuffer bb) {
+      // mixed in by makeHash, which needs the total length first
+      tailLength = bb.remaining();
+      bb.get(tail, 0, tailLength);
+      length += tailLength;
+    }
+
+    @Override
+    protected HashCode makeHash() {
+      long h = (length >= CHUNK_SIZE) ? converge(v1, v2, v3, v4) : seed + P5;
+      h += length;
+      int offset = 0;
+      for (; offset + 8 <= tailLength; offset += 8) {
+        h = mixTail8(h, load64(tail, offset));
+      }
+      if (offset + 4 <= tailLength) {
+        h = mixTail4(h, load32(tail, offset) & 0xFFFFFFFFL);
+        offset += 4;
+      }
+      for (; offset < tailLength; offset++) {
+        h = mixTail1(h, tail[offset]);
+      }
+      return HashCode.fromLong(avalanche(h));
+    }
+  }
+
+  private static final long serialVersionUID = 0L;
+}
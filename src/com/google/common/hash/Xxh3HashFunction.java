@@ -0,0 +1,548 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/*
+ * xxHash was designed by Yann Collet and is released under the BSD 2-Clause license. Source:
+ * https://github.com/Cyan4973/xxHash/blob/dev/xxhash.h
+ * (Modified to adapt to Guava coding conventions and to use the HashFunction interface)
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.hash.LittleEndianByteArray.load32;
+import static com.google.common.hash.LittleEndianByteArray.load64;
+import static com.google.common.hash.LittleEndianByteArray.store64;
+
+import com.google.common.io.BaseEncoding;
+import com.google.errorprone.annotations.Immutable;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import javax.annotation.CheckForNull;
+
+/**
+ * {@link HashFunction} implementation of XXH3, in its 64-bit and 128-bit variants, with the default
+ * secret.
+ *
+ * <p>Inputs of up to {@link #MIDSIZE_MAX} bytes are hashed by dedicated routines for their length,
+ * so the streaming hasher keeps them until it knows the total length. Longer inputs are hashed
+ * stripe by stripe into eight accumulators; since the last stripe is hashed differently, the hasher
+ * always holds back the most recent stripe until more input arrives.
+ *
+ * @author Yann Collet
+ */
+@Immutable
+@ElementTypesAreNonnullByDefault
+final class Xxh3HashFunction extends AbstractHashFunction implements Serializable {
+  static final HashFunction XXH3_64 = new Xxh3HashFunction(64, 0);
+  static final HashFunction XXH3_128 = new Xxh3HashFunction(128, 0);
+
+  private static final int STRIPE_LENGTH = 64;
+  private static final int SECRET_SIZE = 192;
+  private static final int STRIPES_PER_BLOCK = (SECRET_SIZE - STRIPE_LENGTH) / 8;
+  private static final int BLOCK_LENGTH = STRIPE_LENGTH * STRIPES_PER_BLOCK;
+  private static final int MIDSIZE_MAX = 240;
+  private static final int MIDSIZE_START_OFFSET = 3;
+  private static final int MIDSIZE_LAST_OFFSET = 17;
+  private static final int SECRET_SIZE_MIN = 136;
+  private static final int SECRET_LAST_ACCUMULATOR_START = 7;
+  private static final int SECRET_MERGE_ACCUMULATORS_START = 11;
+
+  private static final long P32_1 = 0x9E3779B1L;
+  private static final long P32_2 = 0x85EBCA77L;
+  private static final long P32_3 = 0xC2B2AE3DL;
+  private static final long P64_1 = 0x9E3779B185EBCA87L;
+  private static final long P64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long P64_3 = 0x165667B19E3779F9L;
+  private static final long P64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long P64_5 = 0x27D4EB2F165667C5L;
+  private static final long PRIME_MX1 = 0x165667919E3779F9L;
+  private static final long PRIME_MX2 = 0x9FB21C651E98DF25L;
+
+  private static final byte[] DEFAULT_SECRET =
+      BaseEncoding.base16()
+          .lowerCase()
+          .decode(
+              "b8fe6c3923a44bbe7c01812cf721ad1cded46de9839097db7240a4a4b7b3671f"
+                  + "cb79e64eccc0e578825ad07dccff7221b8084674f743248ee03590e6813a264c"
+                  + "3c2852bb91c300cb88d0658b1b532ea371644897a20df94e3819ef46a9deacd8"
+                  + "a8fa763fe39c343ff9dcbbc7c70b4f1d8a51e04bcdb45931c89f7ec9d9787364"
+                  + "eac5ac8334d3ebc3c581a0fffa1363eb170ddd51b7f0da49d316552629d4689e"
+                  + "2b16be587d47a1fc8ff8b8d17ad031ce45cb3a8f95160428afd7fbcabb4b407e");
+
+  private final int bits;
+  private final long seed;
+
+  Xxh3HashFunction(int bits, long seed) {
+    checkArgument(bits == 64 || bits == 128, "bits must be 64 or 128: %s", bits);
+    this.bits = bits;
+    this.seed = seed;
+  }
+
+  @Override
+  public int bits() {
+    return bits;
+  }
+
+  @Override
+  public Hasher newHasher() {
+    return new Xxh3Hasher(bits, seed);
+  }
+
+  @Override
+  public HashCode hashBytes(byte[] input, int off, int len) {
+    checkPositionIndexes(off, off + len, input.length);
+    return hash(bits, input, off, len, seed);
+  }
+
+  @Override
+  public String toString() {
+    return "Hashing.xxh3_" + bits + "(" + seed + ")";
+  }
+
+  @Override
+  public boolean equals(@CheckForNull Object object) {
+    if (object instanceof Xxh3HashFunction) {
+      Xxh3HashFunction other = (Xxh3HashFunction) object;
+      return bits == other.bits && seed == other.seed;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (getClass().hashCode() ^ bits ^ seed ^ (seed >>> 32));
+  }
+
+  static HashCode hash(int bits, byte[] input, int offset, int length, long seed) {
+    if (bits == 64) {
+      return HashCode.fromLong(hash64(input, offset, length, seed));
+    }
+    long[] result = new long[2];
+    hash128(input, offset, length, seed, result);
+    return fromLongs(result[0], result[1]);
+  }
+
+  /** Returns the XXH3 64-bit hash of {@code length} bytes of {@code input}. */
+  static long hash64(byte[] input, int offset, int length, long seed) {
+    byte[] secret = DEFAULT_SECRET;
+    if (length <= 16) {
+      if (length > 8) {
+        long bitflip1 = (load64(secret, 24) ^ load64(secret, 32)) + seed;
+        long bitflip2 = (load64(secret, 40) ^ load64(secret, 48)) - seed;
+        long low = load64(input, offset) ^ bitflip1;
+        long high = load64(input, offset + length - 8) ^ bitflip2;
+        long acc = length + Long.reverseBytes(low) + high + multiplyFold64(low, high);
+        return avalanche(acc);
+      }
+      if (length >= 4) {
+        long s = seed ^ ((long) Integer.reverseBytes((int) seed) << 32);
+        long input1 = load32(input, offset) & 0xFFFFFFFFL;
+        long input2 = load32(input, offset + length - 4) & 0xFFFFFFFFL;
+        long bitflip = (load64(secret, 8) ^ load64(secret, 16)) - s;
+        long keyed = (input2 + (input1 << 32)) ^ bitflip;
+        return rrmxmx(keyed, length);
+      }
+      if (length > 0) {
+        int combined = combine1to3(input, offset, length);
+        long bitflip = ((load32(secret, 0) ^ load32(secret, 4)) & 0xFFFFFFFFL) + seed;
+        return xxh64Avalanche((combined & 0xFFFFFFFFL) ^ bitflip);
+      }
+      return xxh64Avalanche(seed ^ load64(secret, 56) ^ load64(secret, 64));
+    }
+    if (length <= 128) {
+      long acc = length * P64_1;
+      if (length > 32) {
+        if (length > 64) {
+          if (length > 96) {
+            acc += mix16(input, offset + 48, secret, 96, seed);
+            acc += mix16(input, offset + length - 64, secret, 112, seed);
+          }
+          acc += mix16(input, offset + 32, secret, 64, seed);
+          acc += mix16(input, offset + length - 48, secret, 80, seed);
+        }
+        acc += mix16(input, offset + 16, secret, 32, seed);
+        acc += mix16(input, offset + length - 32, secret, 48, seed);
+      }
+      acc += mix16(input, offset, secret, 0, seed);
+      acc += mix16(input, offset + length - 16, secret, 16, seed);
+      return avalanche(acc);
+    }
+    if (length <= MIDSIZE_MAX) {
+      long acc = length * P64_1;
+      int rounds = length / 16;
+      for (int i = 0; i < 8; i++) {
+        acc += mix16(input, offset + 16 * i, secret, 16 * i, seed);
+      }
+      acc = avalanche(acc);
+      for (int i = 8; i < rounds; i++) {
+        acc += mix16(input, offset + 16 * i, secret, 16 * (i - 8) + MIDSIZE_START_OFFSET, seed);
+      }
+      acc +=
+          mix16(
+              input, offset + length - 16, secret, SECRET_SIZE_MIN - MIDSIZE_LAST_OFFSET, seed);
+      return avalanche(acc);
+    }
+    secret = secretFor(seed);
+    long[] acc = accumulateLong(input, offset, length, secret);
+    return mergeAccumulators(acc, secret, SECRET_MERGE_ACCUMULATORS_START, length * P64_1);
+  }
+
+  /**
+   * Stores the XXH3 128-bit hash of {@code length} bytes of {@code input} in {@code result}, its
+   * low half first.
+   */
+  static void hash128(byte[] input, int offset, int length, long seed, long[] result) {
+    byte[] secret = DEFAULT_SECRET;
+    if (length <= 16) {
+      if (length > 8) {
+        long bitflipLow = (load64(secret, 32) ^ load64(secret, 40)) - seed;
+        long bitflipHigh = (load64(secret, 48) ^ load64(secret, 56)) + seed;
+        long inputLow = load64(input, offset);
+        long inputHigh = load64(input, offset + length - 8);
+        long x = inputLow ^ inputHigh ^ bitflipLow;
+        long low = x * P64_1;
+        long high = multiplyHigh(x, P64_1);
+        low += (long) (length - 1) << 54;
+        inputHigh ^= bitflipHigh;
+        high += inputHigh + (inputHigh & 0xFFFFFFFFL) * (P32_2 - 1);
+        low ^= Long.reverseBytes(high);
+        long hashLow = low * P64_2;
+        long hashHigh = multiplyHigh(low, P64_2) + high * P64_2;
+        result[0] = avalanche(hashLow);
+        result[1] = avalanche(hashHigh);
+        return;
+      }
+      if (length >= 4) {
+        long s = seed ^ ((long) Integer.reverseBytes((int) seed) << 32);
+        long inputLow = load32(input, offset) & 0xFFFFFFFFL;
+        long inputHigh = load32(input, offset + length - 4) & 0xFFFFFFFFL;
+        long bitflip = (load64(secret, 16) ^ load64(secret, 24)) + s;
+        long keyed = (inputLow + (inputHigh << 32)) ^ bitflip;
+        long multiplier = P64_1 + ((long) length << 2);
+        long low = keyed * multiplier;
+        long high = multiplyHigh(keyed, multiplier);
+        high += low << 1;
+        low ^= high >>> 3;
+        low ^= low >>> 35;
+        low *= PRIME_MX2;
+        low ^= low >>> 28;
+        result[0] = low;
+        result[1] = avalanche(high);
+        return;
+      }
+      if (length > 0) {
+        int combinedLow = combine1to3(input, offset, length);
+        int combinedHigh = Integer.rotateLeft(Integer.reverseBytes(combinedLow), 13);
+        long bitflipLow = ((load32(secret, 0) ^ load32(secret, 4)) & 0xFFFFFFFFL) + seed;
+        long bitflipHigh = ((load32(secret, 8) ^ load32(secret, 12)) & 0xFFFFFFFFL) - seed;
+        result[0] = xxh64Avalanche((combinedLow & 0xFFFFFFFFL) ^ bitflipLow);
+        result[1] = xxh64Avalanche((combinedHigh & 0xFFFFFFFFL) ^ bitflipHigh);
+        return;
+      }
+      result[0] = xxh64Avalanche(seed ^ load64(secret, 64) ^ load64(secret, 72));
+      result[1] = xxh64Avalanche(seed ^ load64(secret, 80) ^ load64(secret, 88));
+      return;
+    }
+    if (length <= MIDSIZE_MAX) {
+      long[] acc = {length * P64_1, 0};
+      if (length <= 128) {
+        if (length > 32) {
+          if (length > 64) {
+            if (length > 96) {
+              mix32(acc, input, offset + 48, offset + length - 64, secret, 96, seed);
+            }
+            mix32(acc, input, offset + 32, offset + length - 48, secret, 64, seed);
+          }
+          mix32(acc, input, offset + 16, offset + length - 32, secret, 32, seed);
+        }
+        mix32(acc, input, offset, offset + length - 16, secret, 0, seed);
+      } else {
+        int rounds = length / 32;
+        for (int i = 0; i < 4; i++) {
+          mix32(acc, input, offset + 32 * i, offset + 32 * i + 16, secret, 32 * i, seed);
+        }
+        acc[0] = avalanche(acc[0]);
+        acc[1] = avalanche(acc[1]);
+        for (int i = 4; i < rounds; i++) {
+          int secretOffset = MIDSIZE_START_OFFSET + 32 * (i - 4);
+          mix32(acc, input, offset + 32 * i, offset + 32 * i + 16, secret, secretOffset, seed);
+        }
+        mix32(
+            acc,
+            input,
+            offset + length - 16,
+            offset + length - 32,
+            secret,
+            SECRET_SIZE_MIN - MIDSIZE_LAST_OFFSET - 16,
+            -seed);
+      }
+      long low = acc[0] + acc[1];
+      long high = acc[0] * P64_1 + acc[1] * P64_4 + (length - seed) * P64_2;
+      result[0] = avalanche(low);
+      result[1] = -avalanche(high);
+      return;
+    }
+    secret = secretFor(seed);
+    long[] acc = accumulateLong(input, offset, length, secret);
+    merge128(acc, secret, length, result);
+  }
+
+  private static int combine1to3(byte[] input, int offset, int length) {
+    int c1 = input[offset] & 0xFF;
+    int c2 = input[offset + (length >> 1)] & 0xFF;
+    int c3 = input[offset + length - 1] & 0xFF;
+    return (c1 << 16) | (c2 << 24) | c3 | (length << 8);
+  }
+
+  private static long mix16(byte[] input, int offset, byte[] secret, int secretOffset, long seed) {
+    long low = load64(input, offset);
+    long high = load64(input, offset + 8);
+    return multiplyFold64(
+        low ^ (load64(secret, secretOffset) + seed),
+        high ^ (load64(secret, secretOffset + 8) - seed));
+  }
+
+  private static void mix32(
+      long[] acc,
+      byte[] input,
+      int offset1,
+      int offset2,
+      byte[] secret,
+      int secretOffset,
+      long seed) {
+    acc[0] += mix16(input, offset1, secret, secretOffset, seed);
+    acc[0] ^= load64(input, offset2) + load64(input, offset2 + 8);
+    acc[1] += mix16(input, offset2, secret, secretOffset + 16, seed);
+    acc[1] ^= load64(input, offset1) + load64(input, offset1 + 8);
+  }
+
+  /** Returns the secret used for long inputs: the default one, shifted by a nonzero seed. */
+  private static byte[] secretFor(long seed) {
+    if (seed == 0) {
+      return DEFAULT_SECRET;
+    }
+    byte[] secret = new byte[SECRET_SIZE];
+    for (int i = 0; i < SECRET_SIZE; i += 16) {
+      store64(secret, i, load64(DEFAULT_SECRET, i) + seed);
+      store64(secret, i + 8, load64(DEFAULT_SECRET, i + 8) - seed);
+    }
+    return secret;
+  }
+
+  private static long[] initialAccumulators() {
+    return new long[] {P32_3, P64_1, P64_2, P64_3, P64_4, P32_2, P64_5, P32_1};
+  }
+
+  /** Accumulates all stripes of a long input, including the last one. */
+  private static long[] accumulateLong(byte[] input, int offset, int length, byte[] secret) {
+    long[] acc = initialAccumulators();
+    int blocks = (length - 1) / BLOCK_LENGTH;
+    for (int block = 0; block < blocks; block++) {
+      int blockOffset = offset + block * BLOCK_LENGTH;
+      for (int stripe = 0; stripe < STRIPES_PER_BLOCK; stripe++) {
+        accumulate(acc, input, blockOffset + stripe * STRIPE_LENGTH, secret, 8 * stripe);
+      }
+      scramble(acc, secret);
+    }
+    int stripes = ((length - 1) - BLOCK_LENGTH * blocks) / STRIPE_LENGTH;
+    int blockOffset = offset + blocks * BLOCK_LENGTH;
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      accumulate(acc, input, blockOffset + stripe * STRIPE_LENGTH, secret, 8 * stripe);
+    }
+    accumulate(
+        acc,
+        input,
+        offset + length - STRIPE_LENGTH,
+        secret,
+        SECRET_SIZE - STRIPE_LENGTH - SECRET_LAST_ACCUMULATOR_START);
+    return acc;
+  }
+
+  private static void accumulate(
+      long[] acc, byte[] input, int offset, byte[] secret, int secretOffset) {
+    for (int i = 0; i < 8; i++) {
+      long data = load64(input, offset + 8 * i);
+      long key = data ^ load64(secret, secretOffset + 8 * i);
+      acc[i ^ 1] += data;
+      acc[i] += (key & 0xFFFFFFFFL) * (key >>> 32);
+    }
+  }
+
+  private static void scramble(long[] acc, byte[] secret) {
+    for (int i = 0; i < 8; i++) {
+      long a = acc[i];
+      a ^= a >>> 47;
+      a ^= load64(secret, SECRET_SIZE - STRIPE_LENGTH + 8 * i);
+      acc[i] = a * P32_1;
+    }
+  }
+
+  private static long mergeAccumulators(long[] acc, byte[] secret, int secretOffset, long start) {
+    long result = start;
+    for (int i = 0; i < 4; i++) {
+      result +=
+          multiplyFold64(
+              acc[2 * i] ^ load64(secret, secretOffset + 16 * i),
+              acc[2 * i + 1] ^ load64(secret, secretOffset + 16 * i + 8));
+    }
+    return avalanche(result);
+  }
+
+  private static void merge128(long[] acc, byte[] secret, long length, long[] result) {
+    result[0] = mergeAccumulators(acc, secret, SECRET_MERGE_ACCUMULATORS_START, length * P64_1);
+    result[1] =
+        mergeAccumulators(
+            acc,
+            secret,
+            SECRET_SIZE - STRIPE_LENGTH - SECRET_MERGE_ACCUMULATORS_START,
+            ~(length * P64_2));
+  }
+
+  /** Returns the high 64 bits of the unsigned 128-bit product of {@code a} and {@code b}. */
+  private static long multiplyHigh(long a, long b) {
+    long aLow = a & 0xFFFFFFFFL;
+    long aHigh = a >>> 32;
+    long bLow = b & 0xFFFFFFFFL;
+    long bHigh = b >>> 32;
+    long t = aHigh * bLow + ((aLow * bLow) >>> 32);
+    long w = aLow * bHigh + (t & 0xFFFFFFFFL);
+    return aHigh * bHigh + (t >>> 32) + (w >>> 32);
+  }
+
+  private static long multiplyFold64(long a, long b) {
+    return (a * b) ^ multiplyHigh(a, b);
+  }
+
+  private static long avalanche(long h) {
+    h ^= h >>> 37;
+    h *= PRIME_MX1;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  private static long xxh64Avalanche(long h) {
+    h ^= h >>> 33;
+    h *= P64_2;
+    h ^= h >>> 29;
+    h *= P64_3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  private static long rrmxmx(long h, int length) {
+    h ^= Long.rotateLeft(h, 49) ^ Long.rotateLeft(h, 24);
+    h *= PRIME_MX2;
+    h ^= (h >>> 35) + length;
+    h *= PRIME_MX2;
+    h ^= h >>> 28;
+    return h;
+  }
+
+  private static HashCode fromLongs(long low, long high) {
+    byte[] bytes = new byte[16];
+    store64(bytes, 0, low);
+    store64(bytes, 8, high);
+    return HashCode.fromBytesNoCopy(bytes);
+  }
+
+  private static final class Xxh3Hasher extends AbstractStreamingHasher {
+    private final int bits;
+    private final long seed;
+
+    /** The first stripes of the input, kept in case it turns out to be short. */
+    private final byte[] head = new byte[MIDSIZE_MAX + STRIPE_LENGTH];
+
+    /** The most recent stripe, which is accumulated only once more input arrives. */
+    private final byte[] pending = new byte[STRIPE_LENGTH];
+
+    private final byte[] tail = new byte[STRIPE_LENGTH];
+    private int tailLength;
+
+    private final long[] acc = initialAccumulators();
+    @CheckForNull private byte[] secret;
+    private long stripes;
+    private int stripesInBlock;
+
+    Xxh3Hasher(int bits, long seed) {
+      super(STRIPE_LENGTH);
+      this.bits = bits;
+      this.seed = seed;
+    }
+
+    @Override
+    protected void process(ByteBuffer bb) {
+      if (stripes > 0) {
+        accumulatePending();
+      }
+      bb.get(pending);
+      if (stripes * STRIPE_LENGTH < MIDSIZE_MAX) {
+        System.arraycopy(pending, 0, head, (int) stripes * STRIPE_LENGTH, STRIPE_LENGTH);
+      }
+      stripes++;
+    }
+
+    private void accumulatePending() {
+      byte[] secret = this.secret;
+      if (secret == null) {
+        secret = this.secret = secretFor(seed);
+      }
+      accumulate(acc, pending, 0, secret, 8 * stripesInBlock);
+      if (++stripesInBlock == STRIPES_PER_BLOCK) {
+        scramble(acc, secret);
+        stripesInBlock = 0;
+      }
+    }
+
+    @Override
+    protected void processRemaining(ByteBuffer bb) {
+      tailLength = bb.remaining();
+      bb.get(tail, 0, tailLength);
+    }
+
+    @Override
+    protected HashCode makeHash() {
+      long length = stripes * STRIPE_LENGTH + tailLength;
+      if (length <= MIDSIZE_MAX) {
+        System.arraycopy(tail, 0, head, (int) stripes * STRIPE_LENGTH, tailLength);
+        return Xxh3HashFunction.hash(bits, head, 0, (int) length, seed);
+      }
+
+      byte[] lastStripe = pending;
+      if (tailLength > 0) {
+        accumulatePending();
+        lastStripe = new byte[STRIPE_LENGTH];
+        System.arraycopy(pending, tailLength, lastStripe, 0, STRIPE_LENGTH - tailLength);
+        System.arraycopy(tail, 0, lastStripe, STRIPE_LENGTH - tailLength, tailLength);
+      }
+      byte[] secret = (this.secret == null) ? secretFor(seed) : this.secret;
+      accumulate(
+          acc,
+          lastStripe,
+          0,
+          secret,
+          SECRET_SIZE - STRIPE_LENGTH - SECRET_LAST_ACCUMULATOR_START);
+      if (bits == 64) {
+        return HashCode.fromLong(
+            mergeAccumulators(acc, secret, SECRET_MERGE_ACCUMULATORS_START, length * P64_1));
+      }
+      long[] result = new long[2];
+      merge128(acc, secret, length, result);
+      return fromLongs(result[0], result[1]);
+    }
+  }
+
+  private static final long serialVersionUID = 0L;
+}
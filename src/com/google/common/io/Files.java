@@ -29,8 +29,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.graph.SuccessorsFunction;
 import com.google.common.graph.Traverser;
+import com.google.common.hash.Funnels;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -43,6 +45,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -72,6 +75,12 @@ public final class Files {
   /** Maximum loop count when creating temp directories. */
   private static final int TEMP_DIR_ATTEMPTS = 10000;
 
+  /** Minimum size of a file for {@link #hashMapped} to memory-map it. */
+  private static final long MAPPED_HASH_THRESHOLD = 1 << 20;
+
+  /** Maximum number of bytes of a file that {@link #hashMapped} maps at once. */
+  private static final long MAPPED_HASH_REGION_SIZE = 1 << 26;
+
   private Files() {}
 
   /**
@@ -639,6 +648,52 @@ public final class Files {
     return asByteSource(file).hash(hashFunction);
   }
 
+  /**
+   * Computes the hash code of the {@code file} using {@code hashFunction}, like {@code
+   * asByteSource(file).hash(hashFunction)}, but passes memory-mapped regions of the file straight
+   * to {@link Hasher#putBytes(ByteBuffer)} instead of copying it through a heap buffer. Files
+   * smaller than 1MB are read as a stream.
+   *
+   * <p>Mapped regions are only released once they are garbage collected, so prefer this method for
+   * large files that are hashed occasionally. If the file is truncated while it is being hashed,
+   * the hash is computed again by reading it as a stream.
+   *
+   * @param file the file to read
+   * @param hashFunction the hash function to use to hash the data
+   * @return the {@link HashCode} of all of the bytes in the file
+   * @throws IOException if an I/O error occurs
+   * @since 32.0
+   */
+  @Beta
+  public static HashCode hashMapped(File file, HashFunction hashFunction) throws IOException {
+    checkNotNull(file);
+    checkNotNull(hashFunction);
+    Hasher hasher = hashFunction.newHasher();
+    Closer closer = Closer.create();
+    try {
+      FileInputStream in = closer.register(new FileInputStream(file));
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      if (size >= MAPPED_HASH_THRESHOLD) {
+        for (long position = 0; position < size; position += MAPPED_HASH_REGION_SIZE) {
+          long regionSize = Math.min(MAPPED_HASH_REGION_SIZE, size - position);
+          hasher.putBytes(channel.map(MapMode.READ_ONLY, position, regionSize));
+        }
+        // as when streaming, also hash anything appended since we looked at the size
+        channel.position(size);
+      }
+      ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+    } catch (InternalError e) {
+      // the JVM reports a fault on a mapped page, e.g. because the file shrank, as InternalError
+      return asByteSource(file).hash(hashFunction);
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+    return hasher.hash();
+  }
+
   /**
    * Fully maps a file read-only in to memory as per {@link
    * FileChannel#map(MapMode, long, long)}.
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2022 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link LocalCache#compute} when a second computation of a key starts while a first one is
+ * still running.
+ */
+public class LocalCacheComputeTest extends TestCase {
+  private final List<RemovalNotification<String, String>> notifications = new ArrayList<>();
+  private final CountDownLatch firstStarted = new CountDownLatch(1);
+  private final CountDownLatch firstMayFinish = new CountDownLatch(1);
+  private final CountDownLatch secondStarted = new CountDownLatch(1);
+  private final CountDownLatch secondMayFinish = new CountDownLatch(1);
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private ConcurrentMap<String, String> map;
+
+  @Override
+  protected void setUp() {
+    Cache<String, String> cache =
+        CacheBuilder.newBuilder()
+            .removalListener(
+                (RemovalListener<String, String>)
+                    notification -> {
+                      synchronized (notifications) {
+                        notifications.add(notification);
+                      }
+                    })
+            .build();
+    map = cache.asMap();
+    map.put("key", "v0");
+  }
+
+  @Override
+  protected void tearDown() {
+    executor.shutdownNow();
+  }
+
+  public void testFirstResultVisibleWhileSecondRuns() throws Exception {
+    Future<String> first = startFirst();
+    Future<String> second = startSecond((k, v) -> v + "+b");
+    firstMayFinish.countDown();
+    assertEquals("v0+a", first.get(10, SECONDS));
+    assertTrue(secondStarted.await(10, SECONDS));
+    assertEquals("v0+a", map.get("key"));
+    secondMayFinish.countDown();
+    assertEquals("v0+a+b", second.get(10, SECONDS));
+    assertEquals("v0+a+b", map.get("key"));
+  }
+
+  public void testFailedSecondComputationKeepsFirstResult() throws Exception {
+    Future<String> first = startFirst();
+    Future<String> second =
+        startSecond(
+            (k, v) -> {
+              throw new IllegalStateException();
+            });
+    firstMayFinish.countDown();
+    assertEquals("v0+a", first.get(10, SECONDS));
+    secondMayFinish.countDown();
+    try {
+      second.get(10, SECONDS);
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    }
+    assertEquals("v0+a", map.get("key"));
+  }
+
+  public void testRemovingSecondComputationNotifiesFirstResult() throws Exception {
+    Future<String> first = startFirst();
+    Future<String> second = startSecond((k, v) -> null);
+    firstMayFinish.countDown();
+    assertEquals("v0+a", first.get(10, SECONDS));
+    secondMayFinish.countDown();
+    assertNull(second.get(10, SECONDS));
+    assertNull(map.get("key"));
+    synchronized (notifications) {
+      RemovalNotification<String, String> last = notifications.get(notifications.size() - 1);
+      assertEquals("v0+a", last.getValue());
+      assertEquals(RemovalCause.EXPLICIT, last.getCause());
+    }
+  }
+
+  /** Starts a computation appending "+a", which runs until {@link #firstMayFinish}. */
+  private Future<String> startFirst() throws InterruptedException {
+    Future<String> first =
+        executor.submit(
+            () ->
+                map.compute(
+                    "key",
+                    (k, v) -> {
+                      firstStarted.countDown();
+                      awaitUninterruptibly(firstMayFinish);
+                      return v + "+a";
+                    }));
+    assertTrue(firstStarted.await(10, SECONDS));
+    return first;
+  }
+
+  /**
+   * Starts a computation of {@code function}, which runs until {@link #secondMayFinish}, and waits
+   * until it blocks on the first computation.
+   */
+  private Future<String> startSecond(BiFunction<String, String, String> function)
+      throws InterruptedException {
+    AtomicReference<Thread> thread = new AtomicReference<>();
+    Future<String> second =
+        executor.submit(
+            () -> {
+              thread.set(Thread.currentThread());
+              return map.compute(
+                  "key",
+                  (k, v) -> {
+                    secondStarted.countDown();
+                    awaitUninterruptibly(secondMayFinish);
+                    return function.apply(k, v);
+                  });
+            });
+    while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    return second;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+}